@@ -21,4 +21,326 @@ private Gmap3ApplibConstants(){}
 
 
     public static String API_KEY ="isis.viewer.wicket.gmap3.apiKey";
+
+    /**
+     * Maximum number of pooled connections held by the <tt>LocationLookupService</tt>; defaults to
+     * {@value #LOOKUP_MAX_CONNECTIONS_DEFAULT}.
+     */
+    public static String LOOKUP_MAX_CONNECTIONS ="isis.viewer.wicket.gmap3.lookup.maxConnections";
+    public static final int LOOKUP_MAX_CONNECTIONS_DEFAULT = 20;
+
+    /**
+     * Maximum number of pooled connections per route (host) held by the <tt>LocationLookupService</tt>; defaults to
+     * {@value #LOOKUP_MAX_CONNECTIONS_PER_ROUTE_DEFAULT}.
+     */
+    public static String LOOKUP_MAX_CONNECTIONS_PER_ROUTE ="isis.viewer.wicket.gmap3.lookup.maxConnectionsPerRoute";
+    public static final int LOOKUP_MAX_CONNECTIONS_PER_ROUTE_DEFAULT = 10;
+
+    /**
+     * Timeout (in milliseconds) to establish a connection; defaults to {@value #LOOKUP_TIMEOUT_MILLIS_DEFAULT}.
+     */
+    public static String LOOKUP_CONNECT_TIMEOUT_MILLIS ="isis.viewer.wicket.gmap3.lookup.connectTimeoutMillis";
+
+    /**
+     * Timeout (in milliseconds) waiting for data; defaults to {@value #LOOKUP_TIMEOUT_MILLIS_DEFAULT}.
+     */
+    public static String LOOKUP_SOCKET_TIMEOUT_MILLIS ="isis.viewer.wicket.gmap3.lookup.socketTimeoutMillis";
+
+    /**
+     * Timeout (in milliseconds) waiting for a connection to be available from the pool; defaults to
+     * {@value #LOOKUP_TIMEOUT_MILLIS_DEFAULT}.
+     */
+    public static String LOOKUP_POOL_TIMEOUT_MILLIS ="isis.viewer.wicket.gmap3.lookup.poolTimeoutMillis";
+
+    public static final int LOOKUP_TIMEOUT_MILLIS_DEFAULT = 5000;
+
+    /**
+     * Number of threads used by the <tt>LocationLookupService</tt> to look up addresses concurrently (eg for
+     * <tt>lookupAll</tt>); defaults to {@value #LOOKUP_THREADS_DEFAULT}.
+     */
+    public static String LOOKUP_THREADS ="isis.viewer.wicket.gmap3.lookup.threads";
+    public static final int LOOKUP_THREADS_DEFAULT = 10;
+
+    /**
+     * Gazetteer file (place names and postcodes to coordinates) consulted by the <tt>LocationLookupService</tt>
+     * before any remote geocoder; none if not set.
+     */
+    public static String LOOKUP_GAZETTEER_FILE ="isis.viewer.wicket.gmap3.lookup.gazetteer.file";
+
+    /**
+     * Whether the <tt>LocationLookupService</tt> uses Google's geocoding API (or the {@link #LOOKUP_PROVIDERS}
+     * configured), once other geocoders have been consulted; defaults to <tt>true</tt>.  Disable for air-gapped
+     * deployments.
+     */
+    public static String LOOKUP_GOOGLE_ENABLED ="isis.viewer.wicket.gmap3.lookup.google.enabled";
+
+    /**
+     * Comma-separated URLs of the (Google-compatible, xml mode) geocoding endpoints used by the
+     * <tt>LocationLookupService</tt>; defaults to Google's own.  If there are several, each lookup goes to the one
+     * with the best recent latency, hedging to another if it is slow to answer.
+     */
+    public static String LOOKUP_PROVIDERS ="isis.viewer.wicket.gmap3.lookup.providers";
+
+    /**
+     * Percentile (of a provider's recent latencies) after which a lookup that has not been answered is sent to
+     * another provider too, if several are configured; defaults to {@value #LOOKUP_HEDGE_PERCENTILE_DEFAULT}.
+     */
+    public static String LOOKUP_HEDGE_PERCENTILE ="isis.viewer.wicket.gmap3.lookup.hedge.percentile";
+    public static final int LOOKUP_HEDGE_PERCENTILE_DEFAULT = 95;
+
+    /**
+     * How long to wait before hedging a lookup while a provider's recent latencies are not yet known; defaults to
+     * {@value #LOOKUP_HEDGE_DELAY_MILLIS_DEFAULT}.
+     */
+    public static String LOOKUP_HEDGE_DELAY_MILLIS ="isis.viewer.wicket.gmap3.lookup.hedge.delayMillis";
+    public static final int LOOKUP_HEDGE_DELAY_MILLIS_DEFAULT = 1000;
+
+    /**
+     * Hedged lookups allowed, as a percentage of all lookups (so that hedging cannot add much load when the
+     * providers are already overloaded); defaults to {@value #LOOKUP_HEDGE_BUDGET_PERCENT_DEFAULT}.
+     */
+    public static String LOOKUP_HEDGE_BUDGET_PERCENT ="isis.viewer.wicket.gmap3.lookup.hedge.budgetPercent";
+    public static final int LOOKUP_HEDGE_BUDGET_PERCENT_DEFAULT = 5;
+
+    /**
+     * Rate (requests per second) to which the <tt>LocationLookupService</tt> limits requests to each remote
+     * geocoding provider; defaults to {@value #LOOKUP_RATE_LIMIT_PER_SECOND_DEFAULT}.
+     */
+    public static String LOOKUP_RATE_LIMIT_PER_SECOND ="isis.viewer.wicket.gmap3.lookup.rateLimit.perSecond";
+    public static final int LOOKUP_RATE_LIMIT_PER_SECOND_DEFAULT = 50;
+
+    /**
+     * Number of requests that may be made to a remote geocoding provider in a burst (ie, following a quiet period),
+     * regardless of the rate limit; defaults to {@value #LOOKUP_RATE_LIMIT_BURST_DEFAULT}.
+     */
+    public static String LOOKUP_RATE_LIMIT_BURST ="isis.viewer.wicket.gmap3.lookup.rateLimit.burst";
+    public static final int LOOKUP_RATE_LIMIT_BURST_DEFAULT = 50;
+
+    /**
+     * How long a lookup waits for the rate limit before failing; defaults to
+     * {@value #LOOKUP_RATE_LIMIT_WAIT_MILLIS_DEFAULT}.
+     */
+    public static String LOOKUP_RATE_LIMIT_WAIT_MILLIS ="isis.viewer.wicket.gmap3.lookup.rateLimit.waitMillis";
+    public static final int LOOKUP_RATE_LIMIT_WAIT_MILLIS_DEFAULT = 1000;
+
+    /**
+     * Number of consecutive failures (errors or timeouts) of a remote geocoding provider after which the
+     * <tt>LocationLookupService</tt> stops calling it (failing fast instead); defaults to
+     * {@value #LOOKUP_CIRCUIT_BREAKER_FAILURES_DEFAULT}.
+     */
+    public static String LOOKUP_CIRCUIT_BREAKER_FAILURES ="isis.viewer.wicket.gmap3.lookup.circuitBreaker.failures";
+    public static final int LOOKUP_CIRCUIT_BREAKER_FAILURES_DEFAULT = 5;
+
+    /**
+     * How long the <tt>LocationLookupService</tt> stops calling a failing geocoding provider, before probing it
+     * again; defaults to {@value #LOOKUP_CIRCUIT_BREAKER_OPEN_SECONDS_DEFAULT}.
+     */
+    public static String LOOKUP_CIRCUIT_BREAKER_OPEN_SECONDS ="isis.viewer.wicket.gmap3.lookup.circuitBreaker.openSeconds";
+    public static final int LOOKUP_CIRCUIT_BREAKER_OPEN_SECONDS_DEFAULT = 30;
+
+    /**
+     * Whether the <tt>LocationLookupService</tt> runs asynchronous lookups (<tt>lookupAsync</tt>) on virtual threads,
+     * if the runtime supports them (Java 21+); defaults to <tt>true</tt>.
+     */
+    public static String LOOKUP_ASYNC_VIRTUAL_THREADS ="isis.viewer.wicket.gmap3.lookup.async.virtualThreads";
+
+    /**
+     * Number of (platform) threads used by the <tt>LocationLookupService</tt> for asynchronous lookups, if not using
+     * virtual threads; defaults to {@value #LOOKUP_ASYNC_THREADS_DEFAULT}.
+     */
+    public static String LOOKUP_ASYNC_THREADS ="isis.viewer.wicket.gmap3.lookup.async.threads";
+    public static final int LOOKUP_ASYNC_THREADS_DEFAULT = 10;
+
+    /**
+     * Maximum number of addresses whose locations are cached by the <tt>LocationLookupService</tt>; defaults to
+     * {@value #LOOKUP_CACHE_MAX_SIZE_DEFAULT}; addresses that could not be resolved are cached separately, up to a
+     * tenth of this.  Set to <tt>0</tt> to disable caching (of both).
+     */
+    public static String LOOKUP_CACHE_MAX_SIZE ="isis.viewer.wicket.gmap3.lookup.cache.maxSize";
+    public static final int LOOKUP_CACHE_MAX_SIZE_DEFAULT = 10000;
+
+    /**
+     * How long (in seconds) a resolved address is cached for; defaults to {@value #LOOKUP_CACHE_TTL_SECONDS_DEFAULT}.
+     */
+    public static String LOOKUP_CACHE_TTL_SECONDS ="isis.viewer.wicket.gmap3.lookup.cache.ttlSeconds";
+    public static final int LOOKUP_CACHE_TTL_SECONDS_DEFAULT = 24 * 60 * 60;
+
+    /**
+     * How long (in seconds) an address that could not be resolved is cached for; defaults to
+     * {@value #LOOKUP_CACHE_NEGATIVE_TTL_SECONDS_DEFAULT}.
+     */
+    public static String LOOKUP_CACHE_NEGATIVE_TTL_SECONDS ="isis.viewer.wicket.gmap3.lookup.cache.negativeTtlSeconds";
+    public static final int LOOKUP_CACHE_NEGATIVE_TTL_SECONDS_DEFAULT = 5 * 60;
+
+    /**
+     * Decimal places to which locations are rounded for reverse lookups (so that nearby locations share a cache
+     * entry and a request); defaults to {@value #LOOKUP_REVERSE_CELL_DECIMALS_DEFAULT}, ie cells of about 11m.  The
+     * reverse lookup cache is otherwise sized as per {@link #LOOKUP_CACHE_MAX_SIZE} etc.
+     */
+    public static String LOOKUP_REVERSE_CELL_DECIMALS ="isis.viewer.wicket.gmap3.lookup.reverse.cellDecimals";
+    public static final int LOOKUP_REVERSE_CELL_DECIMALS_DEFAULT = 4;
+
+    /**
+     * File in which the <tt>LocationLookupService</tt> persists resolved addresses, so that they survive restarts;
+     * if not set then nothing is persisted.
+     */
+    public static String LOOKUP_STORE_FILE ="isis.viewer.wicket.gmap3.lookup.store.file";
+
+    /**
+     * Maximum number of addresses persisted (the oldest are dropped); defaults to
+     * {@value #LOOKUP_STORE_MAX_ENTRIES_DEFAULT}.
+     */
+    public static String LOOKUP_STORE_MAX_ENTRIES ="isis.viewer.wicket.gmap3.lookup.store.maxEntries";
+    public static final int LOOKUP_STORE_MAX_ENTRIES_DEFAULT = 100000;
+
+    /**
+     * Whether the <tt>LocationLookupService</tt> registers its metrics with the platform MBean server (as
+     * <tt>org.isisaddons.wicket.gmap3:type=LocationLookupService</tt>); defaults to <tt>true</tt>.
+     */
+    public static String LOOKUP_JMX_ENABLED ="isis.viewer.wicket.gmap3.lookup.jmx.enabled";
+
+    /**
+     * Maximum number of addresses (those looked up most often) that the <tt>LocationLookupService</tt> keeps to
+     * suggest as addresses are typed; defaults to {@value #LOOKUP_SUGGESTIONS_MAX_ENTRIES_DEFAULT}.  If <tt>0</tt>
+     * then none are kept.
+     */
+    public static String LOOKUP_SUGGESTIONS_MAX_ENTRIES ="isis.viewer.wicket.gmap3.lookup.suggestions.maxEntries";
+    public static final int LOOKUP_SUGGESTIONS_MAX_ENTRIES_DEFAULT = 10000;
+
+    /**
+     * Whether the <tt>LocationBackfillService</tt> periodically looks up the locations of entities that have none;
+     * defaults to <tt>false</tt>.
+     */
+    public static String BACKFILL_ENABLED ="isis.viewer.wicket.gmap3.backfill.enabled";
+
+    /**
+     * Delay (in minutes) between runs of the backfill job; defaults to {@value #BACKFILL_INTERVAL_MINUTES_DEFAULT}.
+     */
+    public static String BACKFILL_INTERVAL_MINUTES ="isis.viewer.wicket.gmap3.backfill.intervalMinutes";
+    public static final int BACKFILL_INTERVAL_MINUTES_DEFAULT = 60;
+
+    /**
+     * Hour of the day (local time, 0 to 23) from which the backfill job may run; defaults to
+     * {@value #BACKFILL_START_HOUR_DEFAULT}.  The window may wrap around midnight; if the start and end hours are
+     * the same then the job may run at any time.
+     */
+    public static String BACKFILL_START_HOUR ="isis.viewer.wicket.gmap3.backfill.startHour";
+    public static final int BACKFILL_START_HOUR_DEFAULT = 1;
+
+    /**
+     * Hour of the day (local time, 0 to 23) by which the backfill job stops, resuming in the next window; defaults
+     * to {@value #BACKFILL_END_HOUR_DEFAULT}.
+     */
+    public static String BACKFILL_END_HOUR ="isis.viewer.wicket.gmap3.backfill.endHour";
+    public static final int BACKFILL_END_HOUR_DEFAULT = 5;
+
+    /**
+     * Number of entities read (and looked up concurrently) at a time by the backfill job; defaults to
+     * {@value #BACKFILL_PAGE_SIZE_DEFAULT}.
+     */
+    public static String BACKFILL_PAGE_SIZE ="isis.viewer.wicket.gmap3.backfill.pageSize";
+    public static final int BACKFILL_PAGE_SIZE_DEFAULT = 100;
+
+    /**
+     * Number of entities updated per transaction by the backfill job; defaults to
+     * {@value #BACKFILL_CHUNK_SIZE_DEFAULT}.
+     */
+    public static String BACKFILL_CHUNK_SIZE ="isis.viewer.wicket.gmap3.backfill.chunkSize";
+    public static final int BACKFILL_CHUNK_SIZE_DEFAULT = 20;
+
+    /**
+     * Rate (lookups per second) to which the backfill job throttles itself, leaving the rest of the provider's quota
+     * for interactive lookups; defaults to {@value #BACKFILL_RATE_PER_SECOND_DEFAULT}.
+     */
+    public static String BACKFILL_RATE_PER_SECOND ="isis.viewer.wicket.gmap3.backfill.ratePerSecond";
+    public static final int BACKFILL_RATE_PER_SECOND_DEFAULT = 5;
+
+    /**
+     * Hours after which the backfill job looks up again an entity whose address could not be resolved (unless the
+     * address has changed in the meantime, in which case it is looked up in the next pass); defaults to
+     * {@value #BACKFILL_RETRY_UNRESOLVED_HOURS_DEFAULT}.
+     */
+    public static String BACKFILL_RETRY_UNRESOLVED_HOURS ="isis.viewer.wicket.gmap3.backfill.retryUnresolvedHours";
+    public static final int BACKFILL_RETRY_UNRESOLVED_HOURS_DEFAULT = 168;
+
+    /**
+     * File in which the backfill job records its progress, so that it resumes (rather than starts over) after a
+     * restart; if not set then progress is only held in memory.
+     */
+    public static String BACKFILL_CHECKPOINT_FILE ="isis.viewer.wicket.gmap3.backfill.checkpoint.file";
+
+    /**
+     * User that the backfill job runs as; defaults to {@value #BACKFILL_USER_DEFAULT}.
+     */
+    public static String BACKFILL_USER ="isis.viewer.wicket.gmap3.backfill.user";
+    public static final String BACKFILL_USER_DEFAULT = "gmap3-backfill";
+
+    /**
+     * Number of (distinct) addresses looked up at a time by the <tt>LocationImportService</tt>; defaults to
+     * {@value #IMPORT_BATCH_SIZE_DEFAULT}.
+     */
+    public static String IMPORT_BATCH_SIZE ="isis.viewer.wicket.gmap3.import.batchSize";
+    public static final int IMPORT_BATCH_SIZE_DEFAULT = 100;
+
+    /**
+     * Number of imported rows persisted per transaction; defaults to {@value #IMPORT_CHUNK_SIZE_DEFAULT}.
+     */
+    public static String IMPORT_CHUNK_SIZE ="isis.viewer.wicket.gmap3.import.chunkSize";
+    public static final int IMPORT_CHUNK_SIZE_DEFAULT = 500;
+
+    /**
+     * Number of rows that may be held between each stage of an import (a full stage blocking the one before it), so
+     * bounding its memory use whatever the size of the file; defaults to {@value #IMPORT_QUEUE_CAPACITY_DEFAULT}.
+     */
+    public static String IMPORT_QUEUE_CAPACITY ="isis.viewer.wicket.gmap3.import.queueCapacity";
+    public static final int IMPORT_QUEUE_CAPACITY_DEFAULT = 1000;
+
+    /**
+     * Number of the most recent (distinct) rows remembered when dropping duplicates from an import; defaults to
+     * {@value #IMPORT_DEDUPLICATE_WINDOW_DEFAULT}.  Duplicates further apart than this are imported twice.
+     */
+    public static String IMPORT_DEDUPLICATE_WINDOW ="isis.viewer.wicket.gmap3.import.deduplicateWindow";
+    public static final int IMPORT_DEDUPLICATE_WINDOW_DEFAULT = 100000;
+
+    /**
+     * Number of locations above which a collection's map clusters its markers (see {@link LocationClusterer}) rather
+     * than showing one marker per object; defaults to {@value #CLUSTER_THRESHOLD_DEFAULT}.
+     */
+    public static String CLUSTER_THRESHOLD ="isis.viewer.wicket.gmap3.cluster.threshold";
+    public static final int CLUSTER_THRESHOLD_DEFAULT = 500;
+
+    /**
+     * Width (and height) in pixels of the cells of the grid within which markers are clustered; defaults to
+     * {@value LocationClusterer#DEFAULT_GRID_SIZE_PIXELS}.
+     */
+    public static String CLUSTER_GRID_SIZE_PIXELS ="isis.viewer.wicket.gmap3.cluster.gridSizePixels";
+
+    /**
+     * How a collection's map renders its markers: <tt>markers</tt> (one overlay per object), <tt>json</tt> (all
+     * markers written as a single JSON array, created by the browser), <tt>clustered</tt> (see
+     * {@link #CLUSTER_THRESHOLD}) or <tt>viewport</tt> (the map is rendered empty, and the markers within its
+     * viewport are then requested as it is panned or zoomed).  Defaults to <tt>auto</tt>, being <tt>clustered</tt> if
+     * there are more than {@link #CLUSTER_THRESHOLD} locations, else <tt>markers</tt>.
+     */
+    public static String RENDERING ="isis.viewer.wicket.gmap3.rendering";
+
+    /**
+     * Maximum number of markers (including those of clusters) shown at a time within the viewport of a clustered or
+     * viewport map, the largest clusters (and then those nearest the centre) being kept; defaults to
+     * {@value #MAX_MARKERS_DEFAULT}.
+     */
+    public static String MAX_MARKERS ="isis.viewer.wicket.gmap3.maxMarkers";
+    public static final int MAX_MARKERS_DEFAULT = 500;
+
+    /**
+     * System property; if <tt>true</tt> then {@link Location}s are encoded (in mementos, page state, bookmarks) using
+     * the {@link LocationCodec#toCompactString(double, double) compact} form rather than as decimal text.
+     *
+     * <p>
+     *     Read as a system property (rather than from the Isis configuration) because the value's encoder is
+     *     instantiated by the metamodel without access to configuration.  Either form is always accepted when
+     *     decoding.
+     * </p>
+     */
+    public static String COMPACT_ENCODING ="isis.viewer.wicket.gmap3.compactEncoding";
 }
@@ -16,9 +16,43 @@
  */
 package org.isisaddons.wicket.gmap3.cpt.applib;
 
+import org.apache.isis.applib.annotation.Programmatic;
 
 public interface Locatable {
 
 	Location getLocation();
-	
+
+	/**
+	 * Optional primitive accessors, allowing the map (and {@link LocationBuffer}) to read coordinates without
+	 * a {@link Location} being instantiated on every call.
+	 *
+	 * <p>
+	 *     Implementations that hold their coordinates as fields should override all three of {@link #hasLocation()},
+	 *     {@link #getLatitude()} and {@link #getLongitude()}; if {@link #getLatitude()} is not overridden then
+	 *     consumers fall back to {@link #getLocation()}.
+	 * </p>
+	 */
+	@Programmatic
+	default boolean hasLocation() {
+		return getLocation() != null;
+	}
+
+	/**
+	 * @return the latitude, or {@link Double#NaN} if there is {@link #hasLocation() no location}.
+	 */
+	@Programmatic
+	default double getLatitude() {
+		final Location location = getLocation();
+		return location != null ? location.getLatitude() : Double.NaN;
+	}
+
+	/**
+	 * @return the longitude, or {@link Double#NaN} if there is {@link #hasLocation() no location}.
+	 */
+	@Programmatic
+	default double getLongitude() {
+		final Location location = getLocation();
+		return location != null ? location.getLongitude() : Double.NaN;
+	}
+
 }
@@ -38,12 +38,25 @@ public class Location implements Serializable {
 	/**
 	 * Factory method
 	 * 
+	 * <p>
+	 *     Reads the canonical form written by {@link #toString()} (see {@link LocationCodec}); falls back to trying
+	 *     a handful of locales for strings written by earlier versions using the default locale's number format.
+	 * </p>
+	 *
 	 * @see #toString()
 	 */
 	public static Location fromString(String encodedString) {
 	    if(encodedString == null) {
 	        return null;
 	    }
+	    final Location location = LocationCodec.parse(encodedString);
+	    if(location != null) {
+	        return location;
+	    }
+	    return fromLocalizedString(encodedString);
+	}
+
+	private static Location fromLocalizedString(String encodedString) {
 	    final String[] split = encodedString.split(";");
 	    if(split.length != 2) {
 	        return null;
@@ -143,18 +156,15 @@ public boolean equals(Object obj) {
 	}
 	
 	/**
-	 * See {@link #fromString(String)}
+	 * Canonical, locale-independent form; see {@link #fromString(String)} and {@link LocationCodec}.
 	 */
 	@Override
 	public String toString() {
-        NumberFormat nf = getNumberFormat(Locale.getDefault());
-        String locStr = nf.format(latitude) + ";" + nf.format(longitude);
-        
         // and not:
         //    String locStr = String.format("%6f;%6f", 123.456, -30.415);
         // because it is a different string for Arabic !!!
 
-        return locStr;
+        return LocationCodec.format(latitude, longitude);
 	}
 
     private static NumberFormat getNumberFormat(Locale locale) {
@@ -0,0 +1,279 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.applib;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Growable, columnar buffer of coordinates, held as primitive arrays rather than as one {@link Location} per point.
+ *
+ * <p>
+ *     Each point carries an <tt>int</tt> key, typically the index of the {@link Locatable} it was read from within
+ *     some source list (so that points need not be appended for those items that have no location).  The bounds of
+ *     all points are maintained as they are appended.
+ * </p>
+ *
+ * <p>
+ *     Not thread-safe.
+ * </p>
+ */
+public class LocationBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Whether a {@link Locatable} implementation overrides the default (allocating) primitive accessors.
+     */
+    private static final ClassValue<Boolean> PRIMITIVE_ACCESSORS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            try {
+                return type.getMethod("getLatitude").getDeclaringClass() != Locatable.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * Callback for {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        void visit(int key, double latitude, double longitude);
+    }
+
+    private int[] keys;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int size;
+
+    private double minLatitude = Double.POSITIVE_INFINITY;
+    private double maxLatitude = Double.NEGATIVE_INFINITY;
+    private double minLongitude = Double.POSITIVE_INFINITY;
+    private double maxLongitude = Double.NEGATIVE_INFINITY;
+
+    public LocationBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LocationBuffer(final int initialCapacity) {
+        final int capacity = Math.max(initialCapacity, 1);
+        keys = new int[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+    }
+
+    //region > append
+
+    public LocationBuffer append(final int key, final double latitude, final double longitude) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        size++;
+        extendBounds(latitude, longitude);
+        return this;
+    }
+
+    /**
+     * Appends the location, if not <tt>null</tt>.
+     */
+    public LocationBuffer append(final int key, final Location location) {
+        return location != null ? append(key, location.getLatitude(), location.getLongitude()) : this;
+    }
+
+    /**
+     * Appends the location of the {@link Locatable}, if it has one.
+     *
+     * <p>
+     *     Uses the {@link Locatable#getLatitude() primitive accessors} if the implementation provides them, otherwise
+     *     reads {@link Locatable#getLocation()} (once).
+     * </p>
+     *
+     * @return whether a location was appended.
+     */
+    public boolean append(final int key, final Locatable locatable) {
+        if(PRIMITIVE_ACCESSORS.get(locatable.getClass())) {
+            if(!locatable.hasLocation()) {
+                return false;
+            }
+            append(key, locatable.getLatitude(), locatable.getLongitude());
+            return true;
+        }
+        final Location location = locatable.getLocation();
+        if(location == null) {
+            return false;
+        }
+        append(key, location.getLatitude(), location.getLongitude());
+        return true;
+    }
+
+    /**
+     * Appends the location of each of the {@link Locatable}s that has one, keyed by its position within the
+     * provided iterable.
+     */
+    public LocationBuffer appendAll(final Iterable<? extends Locatable> locatables) {
+        int key = 0;
+        for (final Locatable locatable : locatables) {
+            append(key++, locatable);
+        }
+        return this;
+    }
+
+    /**
+     * Appends <tt>length</tt> points from parallel arrays, keyed <tt>firstKey</tt>, <tt>firstKey+1</tt>, ...
+     */
+    public LocationBuffer appendAll(
+            final int firstKey,
+            final double[] latitudes, final double[] longitudes,
+            final int offset, final int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(latitudes, offset, this.latitudes, size, length);
+        System.arraycopy(longitudes, offset, this.longitudes, size, length);
+        for (int i = 0; i < length; i++) {
+            keys[size + i] = firstKey + i;
+            extendBounds(latitudes[offset + i], longitudes[offset + i]);
+        }
+        size += length;
+        return this;
+    }
+
+    public LocationBuffer appendAll(final LocationBuffer other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.keys, 0, keys, size, other.size);
+        System.arraycopy(other.latitudes, 0, latitudes, size, other.size);
+        System.arraycopy(other.longitudes, 0, longitudes, size, other.size);
+        size += other.size;
+        if(!other.isEmpty()) {
+            extendBounds(other.minLatitude, other.minLongitude);
+            extendBounds(other.maxLatitude, other.maxLongitude);
+        }
+        return this;
+    }
+
+    public void clear() {
+        size = 0;
+        minLatitude = Double.POSITIVE_INFINITY;
+        maxLatitude = Double.NEGATIVE_INFINITY;
+        minLongitude = Double.POSITIVE_INFINITY;
+        maxLongitude = Double.NEGATIVE_INFINITY;
+    }
+
+    private void ensureCapacity(final int required) {
+        if(required <= keys.length) {
+            return;
+        }
+        final int capacity = Math.max(required, keys.length + (keys.length >> 1));
+        keys = Arrays.copyOf(keys, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+    }
+
+    private void extendBounds(final double latitude, final double longitude) {
+        if(latitude < minLatitude) minLatitude = latitude;
+        if(latitude > maxLatitude) maxLatitude = latitude;
+        if(longitude < minLongitude) minLongitude = longitude;
+        if(longitude > maxLongitude) maxLongitude = longitude;
+    }
+
+    //endregion
+
+    //region > access
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getKey(final int index) {
+        checkIndex(index);
+        return keys[index];
+    }
+
+    public double getLatitude(final int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    public double getLongitude(final int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    /**
+     * Allocates; prefer {@link #getLatitude(int)} and {@link #getLongitude(int)}.
+     */
+    public Location getLocation(final int index) {
+        checkIndex(index);
+        return new Location(latitudes[index], longitudes[index]);
+    }
+
+    public void forEach(final Visitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(keys[i], latitudes[i], longitudes[i]);
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    //endregion
+
+    //region > bounds
+
+    /**
+     * The south-west corner of the bounds of all points, or <tt>null</tt> if {@link #isEmpty() empty}.
+     */
+    public Location getSouthWest() {
+        return isEmpty() ? null : new Location(minLatitude, minLongitude);
+    }
+
+    /**
+     * The north-east corner of the bounds of all points, or <tt>null</tt> if {@link #isEmpty() empty}.
+     */
+    public Location getNorthEast() {
+        return isEmpty() ? null : new Location(maxLatitude, maxLongitude);
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    //endregion
+
+}
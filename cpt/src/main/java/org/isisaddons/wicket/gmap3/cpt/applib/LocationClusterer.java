@@ -0,0 +1,284 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.applib;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the points of a {@link LocationBuffer} into clusters for a given zoom level of the map.
+ *
+ * <p>
+ *     Points are projected (Web Mercator, as used by Google Maps) into the pixel space of the zoom level, and those
+ *     falling within the same square cell of a grid are clustered together.  Each cluster is then shown as a single
+ *     marker (with its count); zooming in halves the size of the cells relative to the world, so splitting the
+ *     clusters.  Beyond {@link #getMaxZoom() a maximum zoom level} the points are no longer clustered at all.
+ * </p>
+ *
+ * <p>
+ *     Thread-safe (holds no state other than its settings).
+ * </p>
+ */
+public class LocationClusterer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_GRID_SIZE_PIXELS = 60;
+    public static final int DEFAULT_MAX_ZOOM = 17;
+
+    private static final int TILE_SIZE = 256;
+    private static final double MAX_SIN_LATITUDE = 0.9999;
+
+    /**
+     * A cluster of one or more points.
+     */
+    public static class Cluster implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int key;
+        private int count;
+        private double latitudeSum;
+        private double longitudeSum;
+        private double minLatitude;
+        private double maxLatitude;
+        private double minLongitude;
+        private double maxLongitude;
+
+        Cluster(final int key, final double latitude, final double longitude) {
+            this.key = key;
+            this.count = 1;
+            this.latitudeSum = latitude;
+            this.longitudeSum = longitude;
+            this.minLatitude = this.maxLatitude = latitude;
+            this.minLongitude = this.maxLongitude = longitude;
+        }
+
+        void add(final double latitude, final double longitude) {
+            count++;
+            latitudeSum += latitude;
+            longitudeSum += longitude;
+            if(latitude < minLatitude) minLatitude = latitude;
+            if(latitude > maxLatitude) maxLatitude = latitude;
+            if(longitude < minLongitude) minLongitude = longitude;
+            if(longitude > maxLongitude) maxLongitude = longitude;
+        }
+
+        /**
+         * The key of the (first) point of the cluster; identifies the point if the cluster is a
+         * {@link #isSingle() single} one.
+         */
+        public int getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public boolean isSingle() {
+            return count == 1;
+        }
+
+        /**
+         * The latitude of the centroid of the cluster's points (or of its only point).
+         */
+        public double getLatitude() {
+            return latitudeSum / count;
+        }
+
+        /**
+         * The longitude of the centroid of the cluster's points (or of its only point).
+         */
+        public double getLongitude() {
+            return longitudeSum / count;
+        }
+
+        public double getMinLatitude() {
+            return minLatitude;
+        }
+
+        public double getMaxLatitude() {
+            return maxLatitude;
+        }
+
+        public double getMinLongitude() {
+            return minLongitude;
+        }
+
+        public double getMaxLongitude() {
+            return maxLongitude;
+        }
+
+        @Override
+        public String toString() {
+            return count + "@" + getLatitude() + "," + getLongitude();
+        }
+    }
+
+    private final int gridSizePixels;
+    private final int maxZoom;
+
+    public LocationClusterer() {
+        this(DEFAULT_GRID_SIZE_PIXELS, DEFAULT_MAX_ZOOM);
+    }
+
+    /**
+     * @param gridSizePixels - width (and height) of each cell of the grid, in pixels.
+     * @param maxZoom - the zoom level beyond which points are no longer clustered.
+     */
+    public LocationClusterer(final int gridSizePixels, final int maxZoom) {
+        if(gridSizePixels <= 0) {
+            throw new IllegalArgumentException("gridSizePixels must be positive: " + gridSizePixels);
+        }
+        this.gridSizePixels = gridSizePixels;
+        this.maxZoom = maxZoom;
+    }
+
+    public int getGridSizePixels() {
+        return gridSizePixels;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    /**
+     * Clusters all of the points of the buffer, for the given zoom level.
+     *
+     * @return the clusters, in order of the first point of each within the buffer.
+     */
+    public List<Cluster> cluster(final LocationBuffer locations, final int zoom) {
+        return cluster(locations, zoom, -90, -180, 90, 180);
+    }
+
+    /**
+     * Clusters those points of the buffer within the given bounds (typically, the map's viewport), for the given
+     * zoom level.
+     *
+     * <p>
+     *     If <tt>west</tt> is greater than <tt>east</tt> then the bounds are taken to span the antimeridian.
+     * </p>
+     *
+     * @return the clusters, in order of the first point of each within the buffer.
+     */
+    public List<Cluster> cluster(
+            final LocationBuffer locations, final int zoom,
+            final double south, final double west, final double north, final double east) {
+        final List<Cluster> clusters = new ArrayList<>();
+        final boolean spansAntimeridian = west > east;
+        final boolean clustering = zoom <= maxZoom;
+
+        final double worldSize = (double) TILE_SIZE * (1L << Math.min(Math.max(zoom, 0), maxZoom));
+        final long cellsPerRow = (long) Math.ceil(worldSize / gridSizePixels);
+        final Map<Long, Cluster> clusterByCell = new HashMap<>();
+        for (int i = 0; i < locations.size(); i++) {
+            final double latitude = locations.getLatitude(i);
+            final double longitude = locations.getLongitude(i);
+            if(latitude < south || latitude > north) {
+                continue;
+            }
+            if(spansAntimeridian ? longitude < west && longitude > east : longitude < west || longitude > east) {
+                continue;
+            }
+            if(!clustering) {
+                clusters.add(new Cluster(locations.getKey(i), latitude, longitude));
+                continue;
+            }
+            final long cellX = cell(projectX(longitude, worldSize), cellsPerRow);
+            final long cellY = cell(projectY(latitude, worldSize), cellsPerRow);
+            final Long cell = cellY * cellsPerRow + cellX;
+            final Cluster cluster = clusterByCell.get(cell);
+            if(cluster == null) {
+                final Cluster newCluster = new Cluster(locations.getKey(i), latitude, longitude);
+                clusterByCell.put(cell, newCluster);
+                clusters.add(newCluster);
+            } else {
+                cluster.add(latitude, longitude);
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * As {@link #cluster(LocationBuffer, int, double, double, double, double)}, but returning at most
+     * <tt>maxClusters</tt>: the largest, and of those the same size (eg single points, beyond the maximum zoom level),
+     * those nearest the centre of the bounds.
+     *
+     * @return the clusters, in order of the first point of each within the buffer if there are no more than
+     *          <tt>maxClusters</tt>, otherwise largest (then nearest) first.
+     */
+    public List<Cluster> cluster(
+            final LocationBuffer locations, final int zoom,
+            final double south, final double west, final double north, final double east,
+            final int maxClusters) {
+        final List<Cluster> clusters = cluster(locations, zoom, south, west, north, east);
+        if(clusters.size() <= maxClusters) {
+            return clusters;
+        }
+        final double centreLatitude = (south + north) / 2;
+        final double centreLongitude = west > east
+                ? normalizeLongitude((west + east + 360) / 2)
+                : (west + east) / 2;
+        final Map<Cluster, Double> distances = new IdentityHashMap<>();
+        for (final Cluster cluster : clusters) {
+            final double latitudeDelta = cluster.getLatitude() - centreLatitude;
+            final double longitudeDelta = Math.abs(cluster.getLongitude() - centreLongitude);
+            // (the shorter way round)
+            final double wrappedLongitudeDelta = Math.min(longitudeDelta, 360 - longitudeDelta);
+            distances.put(cluster,
+                    latitudeDelta * latitudeDelta + wrappedLongitudeDelta * wrappedLongitudeDelta);
+        }
+        clusters.sort(Comparator.comparingInt(Cluster::getCount).reversed()
+                .thenComparing(distances::get));
+        return new ArrayList<>(clusters.subList(0, Math.max(maxClusters, 0)));
+    }
+
+    private static double normalizeLongitude(final double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+
+    private long cell(final double pixel, final long cellsPerRow) {
+        final long cell = (long) Math.floor(pixel / gridSizePixels);
+        return Math.min(Math.max(cell, 0), cellsPerRow - 1);
+    }
+
+    //region > projection
+
+    /**
+     * The x coordinate (in pixels, from the antimeridian) of the longitude, in a world of the given size.
+     */
+    static double projectX(final double longitude, final double worldSize) {
+        return (longitude + 180) / 360 * worldSize;
+    }
+
+    /**
+     * The y coordinate (in pixels, from the top) of the latitude, in a world of the given size.
+     */
+    static double projectY(final double latitude, final double worldSize) {
+        final double sin = Math.min(Math.max(Math.sin(Math.toRadians(latitude)), -MAX_SIN_LATITUDE), MAX_SIN_LATITUDE);
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize;
+    }
+
+    //endregion
+
+}
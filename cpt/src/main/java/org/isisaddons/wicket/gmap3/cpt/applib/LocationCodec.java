@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.applib;
+
+/**
+ * Canonical, locale-independent text form of a {@link Location}: <tt>lat;lng</tt>, each formatted with a <tt>'.'</tt>
+ * decimal separator, no grouping and exactly {@value #FRACTION_DIGITS} fraction digits, eg <tt>51.477748;-0.001000</tt>.
+ *
+ * <p>
+ *     Parsing and formatting work directly against the characters; no <tt>NumberFormat</tt>, no split strings and
+ *     no exceptions for control flow.  {@link Location#fromString(String)} falls back to its (much slower)
+ *     multi-locale parsing only if this codec cannot read the string.
+ * </p>
+ */
+public final class LocationCodec {
+    private LocationCodec(){}
+
+    public static final char SEPARATOR = ';';
+    public static final int FRACTION_DIGITS = 6;
+
+    private static final long SCALE = 1000000L;
+
+    // powers of ten that are exactly representable as a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // largest mantissa that can be converted to a double without loss (2^53)
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    //region > format
+
+    public static String format(final double latitude, final double longitude) {
+        return appendTo(new StringBuilder(Location.typicalLength()), latitude, longitude).toString();
+    }
+
+    public static StringBuilder appendTo(final StringBuilder buf, final double latitude, final double longitude) {
+        appendCoordinate(buf, latitude);
+        buf.append(SEPARATOR);
+        appendCoordinate(buf, longitude);
+        return buf;
+    }
+
+    static void appendCoordinate(final StringBuilder buf, final double value) {
+        if(Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / SCALE) {
+            buf.append(value);
+            return;
+        }
+        long scaled = Math.round(value * SCALE);
+        if(scaled < 0) {
+            buf.append('-');
+            scaled = -scaled;
+        }
+        buf.append(scaled / SCALE).append('.');
+        final long fraction = scaled % SCALE;
+        for (long pad = SCALE / 10; pad > 1 && fraction < pad; pad /= 10) {
+            buf.append('0');
+        }
+        buf.append(fraction);
+    }
+
+    //endregion
+
+    //region > parse
+
+    /**
+     * @return the parsed location, or <tt>null</tt> if the text is not in canonical form.
+     */
+    public static Location parse(final CharSequence text) {
+        if(text == null) {
+            return null;
+        }
+        final int length = text.length();
+        int separator = -1;
+        for (int i = 0; i < length; i++) {
+            if(text.charAt(i) == SEPARATOR) {
+                if(separator != -1) {
+                    return null;
+                }
+                separator = i;
+            }
+        }
+        if(separator == -1) {
+            return null;
+        }
+        final double latitude = parseCoordinate(text, 0, separator);
+        if(Double.isNaN(latitude)) {
+            return null;
+        }
+        final double longitude = parseCoordinate(text, separator + 1, length);
+        if(Double.isNaN(longitude)) {
+            return null;
+        }
+        return new Location(latitude, longitude);
+    }
+
+    /**
+     * Parses a single coordinate, in degrees, as written by JavaScript (or Java), ie always with a <tt>'.'</tt>
+     * decimal separator whatever the default locale.
+     *
+     * @return the value, or the given default if the text is missing or not a finite number.
+     */
+    public static double parseDegrees(final String text, final double defaultValue) {
+        if(text == null) {
+            return defaultValue;
+        }
+        try {
+            final double value = Double.parseDouble(text);
+            return Double.isNaN(value) || Double.isInfinite(value) ? defaultValue : value;
+        } catch (final NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses <tt>[+-]digits[.digits]</tt> (surrounding whitespace permitted) from the given range.
+     *
+     * @return the value, or {@link Double#NaN} if the range is not a plain decimal number.
+     */
+    static double parseCoordinate(final CharSequence text, final int from, final int to) {
+        int start = from;
+        int end = to;
+        while(start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while(end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if(start == end) {
+            return Double.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        final char first = text.charAt(i);
+        if(first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        boolean exact = true;
+        for (; i < end; i++) {
+            final char c = text.charAt(i);
+            if(c == '.') {
+                if(seenPoint) {
+                    return Double.NaN;
+                }
+                seenPoint = true;
+                continue;
+            }
+            if(c < '0' || c > '9') {
+                return Double.NaN;
+            }
+            digits++;
+            if(!exact) {
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if(seenPoint) {
+                fractionDigits++;
+            }
+            if(mantissa >= MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+                exact = false;
+            }
+        }
+        if(digits == 0) {
+            return Double.NaN;
+        }
+        if(!exact) {
+            // more precision than a double holds; rare enough to delegate
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    //endregion
+
+    //region > compact
+
+    /**
+     * Prefix of the compact form; never appears in the decimal form.
+     */
+    public static final char COMPACT_PREFIX = '~';
+
+    private static final double E7 = 1e7;
+    private static final int COMPACT_LENGTH = 1 + 11; // prefix + ceil(64 / 6) base64url chars
+    private static final char[] BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    /**
+     * Whether the coordinates can be held in the {@link #toCompactString(double, double) compact} form.
+     */
+    public static boolean isCompactable(final double latitude, final double longitude) {
+        // NaN fails both comparisons
+        return Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
+    }
+
+    /**
+     * Fixed-point (E7, ~1cm) latitude and longitude packed into a single <tt>long</tt> and written as
+     * {@link #COMPACT_PREFIX} followed by 11 URL-safe base64 characters, eg <tt>~B6u4Yf__8Xy</tt>.
+     *
+     * <p>
+     *     Falls back to the {@link #format(double, double) decimal} form for coordinates outside of the valid range
+     *     (see {@link #isCompactable(double, double)}).
+     * </p>
+     */
+    public static String toCompactString(final double latitude, final double longitude) {
+        if(!isCompactable(latitude, longitude)) {
+            return format(latitude, longitude);
+        }
+        final long latE7 = Math.round(latitude * E7);
+        final long lonE7 = Math.round(longitude * E7);
+        final long packed = (latE7 << 32) | (lonE7 & 0xFFFFFFFFL);
+
+        final char[] chars = new char[COMPACT_LENGTH];
+        chars[0] = COMPACT_PREFIX;
+        for (int i = COMPACT_LENGTH - 1, shift = 0; i > 0; i--, shift += 6) {
+            chars[i] = BASE64_URL[(int) ((packed >>> shift) & 0x3F)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the location, or <tt>null</tt> if the text is not in compact form.
+     */
+    public static Location parseCompact(final CharSequence text) {
+        if(text == null || text.length() != COMPACT_LENGTH || text.charAt(0) != COMPACT_PREFIX) {
+            return null;
+        }
+        long packed = 0;
+        for (int i = 1; i < COMPACT_LENGTH; i++) {
+            final int sextet = base64UrlValue(text.charAt(i));
+            // the leading character carries only the top 4 bits
+            if(sextet < 0 || (i == 1 && sextet > 0x0F)) {
+                return null;
+            }
+            packed = (packed << 6) | sextet;
+        }
+        final int latE7 = (int) (packed >> 32);
+        final int lonE7 = (int) packed;
+        return new Location(latE7 / E7, lonE7 / E7);
+    }
+
+    private static int base64UrlValue(final char c) {
+        if(c >= 'A' && c <= 'Z') return c - 'A';
+        if(c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if(c >= '0' && c <= '9') return c - '0' + 52;
+        if(c == '-') return 62;
+        if(c == '_') return 63;
+        return -1;
+    }
+
+    //endregion
+
+}
@@ -16,6 +16,9 @@
  */
 package org.isisaddons.wicket.gmap3.cpt.applib;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.isis.applib.annotation.Programmatic;
 
 /**
@@ -30,4 +33,25 @@
 public interface LocationDereferencingService {
     @Programmatic
 	Object dereference(final Object locatable);
+
+    /**
+     * Dereferences each of the provided {@link Locatable}s, as per {@link #dereference(Object)}; called once for all
+     * of the markers of a map.
+     *
+     * <p>
+     *     The default implementation calls {@link #dereference(Object)} for each in turn; override (eg to resolve all
+     *     of the owners with a single query) if that would be expensive.
+     * </p>
+     *
+     * @return the dereferenced objects, in the same order (and so of the same size) as the locatables; an element is
+     *          <tt>null</tt> if its locatable is not dereferenced.
+     */
+    @Programmatic
+    default List<Object> dereferenceAll(final List<Object> locatables) {
+        final List<Object> dereferenced = new ArrayList<>(locatables.size());
+        for (final Object locatable : locatables) {
+            dereferenced.add(dereference(locatable));
+        }
+        return dereferenced;
+    }
 }
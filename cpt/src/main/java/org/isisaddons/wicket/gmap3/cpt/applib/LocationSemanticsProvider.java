@@ -26,6 +26,8 @@
  */
 public class LocationSemanticsProvider implements ValueSemanticsProvider<Location> {
 
+	private final boolean compactEncoding = Boolean.getBoolean(Gmap3ApplibConstants.COMPACT_ENCODING);
+
 	public DefaultsProvider<Location> getDefaultsProvider() {
 		return new DefaultsProvider<Location>() {
 
@@ -39,11 +41,14 @@ public EncoderDecoder<Location> getEncoderDecoder() {
 		return new EncoderDecoder<Location>() {
 
 			public Location fromEncodedString(String encodedString) {
-				return Location.fromString(encodedString);
+				final Location location = LocationCodec.parseCompact(encodedString);
+				return location != null ? location : Location.fromString(encodedString);
 			}
 
 			public String toEncodedString(Location locationToEncode) {
-				return locationToEncode.toString();
+				return compactEncoding
+						? LocationCodec.toCompactString(locationToEncode.getLatitude(), locationToEncode.getLongitude())
+						: locationToEncode.toString();
 			}
 		};
 	}
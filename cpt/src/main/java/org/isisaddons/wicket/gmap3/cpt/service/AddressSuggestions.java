@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Addresses resolved before, ranked by how often each has been looked up; used by the {@link LocationLookupService}
+ * to {@link #suggest(String, int) suggest} addresses as they are typed, and to resolve those addresses again without
+ * consulting a geocoder.
+ *
+ * <p>
+ *     Lookups are {@link #record(String, Location) recorded} in a concurrent map (by
+ *     {@link LocationLookupCache#normalize(String) normalized} address).  Suggestions are answered from an immutable
+ *     snapshot: a {@link GazetteerIndex} (so a prefix query walks at most one trie node per character), and the
+ *     frequencies in the same order.  The snapshot is rebuilt in the background (at most once per rebuild interval)
+ *     once there have been new lookups, and so lags them slightly; rebuilding also evicts the least frequently
+ *     looked up addresses beyond the maximum number of entries.  Until then, new addresses are not recorded once the
+ *     map holds twice that number, so that memory is bounded.
+ * </p>
+ *
+ * <p>
+ *     The counts decay, being halved (when rebuilding) for every hour that has passed, so that they reflect recent
+ *     lookups more than old ones; otherwise an address that was popular long ago would never make way for one that
+ *     is popular now.
+ * </p>
+ */
+public class AddressSuggestions {
+
+    private static final class Entry {
+        private final String address;
+        private final Location location;
+        private final AtomicLong count = new AtomicLong();
+
+        private Entry(final String address, final Location location) {
+            this.address = address;
+            this.location = location;
+        }
+    }
+
+    private static final class Snapshot {
+        private final GazetteerIndex index;
+        // by entry of the index
+        private final long[] counts;
+
+        private Snapshot(final GazetteerIndex index, final long[] counts) {
+            this.index = index;
+            this.counts = counts;
+        }
+    }
+
+    private static final long HALF_LIFE_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final int maxEntries;
+    private final long rebuildIntervalNanos;
+    private final Executor executor;
+    private final Ticker ticker;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile long lastRebuildNanos;
+    // (only read and written when rebuilding)
+    private long lastDecayNanos;
+    private volatile Snapshot snapshot = new Snapshot(GazetteerIndex.builder().build(), new long[0]);
+
+    /**
+     * @param executor - on which the snapshot is rebuilt.
+     */
+    public AddressSuggestions(final int maxEntries, final long rebuildIntervalMillis, final Executor executor) {
+        this(maxEntries, rebuildIntervalMillis, executor, Ticker.systemTicker());
+    }
+
+    public AddressSuggestions(
+            final int maxEntries, final long rebuildIntervalMillis, final Executor executor, final Ticker ticker) {
+        this.maxEntries = Math.max(maxEntries, 0);
+        this.rebuildIntervalNanos = TimeUnit.MILLISECONDS.toNanos(rebuildIntervalMillis);
+        this.executor = executor;
+        this.ticker = ticker;
+        this.lastRebuildNanos = ticker.read() - rebuildIntervalNanos;
+        this.lastDecayNanos = ticker.read();
+    }
+
+    /**
+     * Records that the address was looked up, and resolved to the location.
+     */
+    public void record(final String address, final Location location) {
+        if(address == null || location == null || maxEntries == 0) {
+            return;
+        }
+        final String key = LocationLookupCache.normalize(address);
+        if(key.isEmpty()) {
+            return;
+        }
+        Entry entry = entries.get(key);
+        if(entry == null) {
+            if(entries.size() >= 2 * maxEntries) {
+                // until the next rebuild evicts the least frequent
+                rebuildIfDue();
+                return;
+            }
+            final Entry existing = entries.putIfAbsent(key, entry = new Entry(address.trim(), location));
+            if(existing != null) {
+                entry = existing;
+            }
+        }
+        entry.count.incrementAndGet();
+        dirty.set(true);
+        rebuildIfDue();
+    }
+
+    /**
+     * @return the location to which the address resolved before, else <tt>null</tt>.
+     */
+    public Location get(final String address) {
+        if(address == null) {
+            return null;
+        }
+        final Entry entry = entries.get(LocationLookupCache.normalize(address));
+        return entry != null ? entry.location : null;
+    }
+
+    /**
+     * @return (up to <tt>limit</tt>) addresses that start with the prefix (once normalized), most frequently looked
+     *          up first (and otherwise in address order).
+     */
+    public List<String> suggest(final String prefix, final int limit) {
+        rebuildIfDue();
+        final Snapshot current = snapshot;
+        if(prefix == null || limit <= 0 || current.index.size() == 0) {
+            return Collections.emptyList();
+        }
+        final int[] matches = current.index.withPrefix(prefix, current.index.size());
+
+        // the top 'limit' by count, by insertion into a small sorted array (limit being small)
+        final int[] top = new int[Math.min(limit, matches.length)];
+        int size = 0;
+        for (final int match : matches) {
+            final long count = current.counts[match];
+            if(size == top.length && count <= current.counts[top[size - 1]]) {
+                continue;
+            }
+            int i = size == top.length ? size - 1 : size++;
+            while(i > 0 && current.counts[top[i - 1]] < count) {
+                top[i] = top[i - 1];
+                i--;
+            }
+            top[i] = match;
+        }
+
+        final List<String> suggestions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            suggestions.add(current.index.getName(top[i]));
+        }
+        return suggestions;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    //region > rebuild
+
+    private void rebuildIfDue() {
+        if(!dirty.get() || ticker.read() - lastRebuildNanos < rebuildIntervalNanos) {
+            return;
+        }
+        if(!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // eg the executor has been shut down
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuild() {
+        lastRebuildNanos = ticker.read();
+        dirty.set(false);
+
+        decay(lastRebuildNanos);
+
+        if(entries.size() > maxEntries) {
+            final List<Map.Entry<String, Entry>> byCount = new ArrayList<>(entries.entrySet());
+            byCount.sort(Comparator.comparingLong(e -> e.getValue().count.get()));
+            for (final Map.Entry<String, Entry> evicted : byCount.subList(0, byCount.size() - maxEntries)) {
+                entries.remove(evicted.getKey(), evicted.getValue());
+            }
+        }
+
+        final GazetteerIndex.Builder builder = GazetteerIndex.builder();
+        for (final Entry entry : entries.values()) {
+            builder.add(entry.address, entry.location.getLatitude(), entry.location.getLongitude());
+        }
+        final GazetteerIndex index = builder.build();
+        final long[] counts = new long[index.size()];
+        for (int i = 0; i < counts.length; i++) {
+            final Entry entry = entries.get(LocationLookupCache.normalize(index.getName(i)));
+            counts[i] = entry != null ? entry.count.get() : 0;
+        }
+        snapshot = new Snapshot(index, counts);
+    }
+
+    private void decay(final long nowNanos) {
+        final long halvings = (nowNanos - lastDecayNanos) / HALF_LIFE_NANOS;
+        if(halvings <= 0) {
+            return;
+        }
+        lastDecayNanos += halvings * HALF_LIFE_NANOS;
+        final int shift = (int) Math.min(halvings, 63);
+        for (final Entry entry : entries.values()) {
+            // (atomically, since lookups are still being counted)
+            entry.count.updateAndGet(count -> count >> shift);
+        }
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.function.BiConsumer;
+
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.core.runtime.sessiontemplate.AbstractIsisSessionTemplate;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Applies a (looked up) {@link Location} to a domain object from a background thread, in its own Isis session and
+ * transaction.  The domain object is identified by {@link Bookmark}, and re-resolved within that session.
+ */
+class ApplyLocationSessionTemplate<T> extends AbstractIsisSessionTemplate {
+
+    private final BookmarkService bookmarkService;
+    private final Bookmark bookmark;
+    private final BiConsumer<T, Location> applier;
+
+    ApplyLocationSessionTemplate(
+            final BookmarkService bookmarkService,
+            final Bookmark bookmark,
+            final BiConsumer<T, Location> applier) {
+        this.bookmarkService = bookmarkService;
+        this.bookmark = bookmark;
+        this.applier = applier;
+    }
+
+    @Override
+    protected void doExecuteWithTransaction(final Object context) {
+        @SuppressWarnings("unchecked")
+        final T domainObject = (T) bookmarkService.lookup(bookmark);
+        if(domainObject == null) {
+            // deleted in the meantime
+            return;
+        }
+        applier.accept(domainObject, (Location) context);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+/**
+ * Handle by which a lookup that is no longer wanted (eg a {@link HedgingGeocoder hedged} request that another
+ * provider has already answered) is cancelled.
+ *
+ * <p>
+ *     A {@link Geocoder} that makes a blocking request registers how to {@link #onCancel(Runnable) abort} it (as
+ *     {@link GoogleGeocoder} aborts its HTTP request, releasing the connection); interrupting the thread would not be
+ *     enough to unblock it.  A lookup that fails because it was cancelled is not a failure of its provider (see
+ *     {@link GuardedGeocoder}).
+ * </p>
+ */
+public class Cancellation {
+
+    private Runnable abort;
+    private boolean cancelled;
+
+    /**
+     * Cancels the lookup, aborting its request if in flight.
+     */
+    public void cancel() {
+        final Runnable toRun;
+        synchronized (this) {
+            if(cancelled) {
+                return;
+            }
+            cancelled = true;
+            toRun = abort;
+            abort = null;
+        }
+        if(toRun != null) {
+            toRun.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registers how to abort the request now in flight (replacing any registered before); run at once if already
+     * cancelled.
+     */
+    public void onCancel(final Runnable abort) {
+        synchronized (this) {
+            if(!cancelled) {
+                this.abort = abort;
+                return;
+            }
+        }
+        abort.run();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Circuit breaker, used by {@link GuardedGeocoder} to fail fast while a geocoding provider is down (rather than each
+ * lookup waiting out the timeouts).
+ *
+ * <p>
+ *     The circuit opens after a number of consecutive failures (errors or timeouts), rejecting calls.  Once it has
+ *     been open for a while, it half-opens, letting a single probe call through: if that succeeds the circuit closes
+ *     again, otherwise it re-opens.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /**
+         * Calls are permitted.
+         */
+        CLOSED,
+        /**
+         * Calls are rejected.
+         */
+        OPEN,
+        /**
+         * A single probe call is permitted (or in progress).
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openedCount = new AtomicLong();
+
+    public CircuitBreaker(final int failureThreshold, final long openMillis) {
+        this(failureThreshold, openMillis, Ticker.systemTicker());
+    }
+
+    public CircuitBreaker(final int failureThreshold, final long openMillis, final Ticker ticker) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return whether the call may proceed; if so, it must be followed by {@link #onSuccess()},
+     *          {@link #onFailure()} or (if it was not made after all) {@link #onCancelled()}.
+     */
+    public synchronized boolean tryAcquire() {
+        if(state == State.OPEN && ticker.read() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        switch (state) {
+        case CLOSED:
+            return true;
+        case HALF_OPEN:
+            if(!probing) {
+                probing = true;
+                return true;
+            }
+            // fall through
+        default:
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if(state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probing = false;
+        }
+    }
+
+    public synchronized void onFailure() {
+        failureCount.incrementAndGet();
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = ticker.read();
+            probing = false;
+            openedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The permitted call was not made after all (so, if it was to be the probe, another may be).
+     */
+    public synchronized void onCancelled() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Calls rejected because the circuit was open (or a probe already in progress).
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * How many times the circuit has opened.
+     */
+    public long getOpenedCount() {
+        return openedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "state=" + getState() + ", failures=" + getFailureCount() + ", rejected=" + getRejectedCount()
+                + ", opened=" + getOpenedCount();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma-separated values (as per RFC 4180) a record at a time, so that files of any size can be streamed.
+ *
+ * <p>
+ *     Fields may be quoted (with <tt>"</tt>), in which case they may contain commas, line breaks and (doubled)
+ *     quotes.  Records may end with <tt>\n</tt> or <tt>\r\n</tt>; blank lines are skipped.  The reader should be
+ *     buffered.
+ * </p>
+ */
+public class CsvRecordReader {
+
+    private final Reader reader;
+    private long lineNumber = 1;
+    private long recordLineNumber;
+    private int pending = -2;
+
+    public CsvRecordReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the fields of the next record, or <tt>null</tt> at the end of the input.
+     * @throws IOException - also if the input ends within a quoted field.
+     */
+    public List<String> next() throws IOException {
+        int c = read();
+        while(c == '\r' || c == '\n') {
+            skipLineBreak(c);
+            c = read();
+        }
+        if(c == -1) {
+            return null;
+        }
+        recordLineNumber = lineNumber;
+
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while(true) {
+            if(quoted) {
+                if(c == -1) {
+                    throw new IOException("Unterminated quoted field, starting on line " + recordLineNumber);
+                }
+                if(c == '"') {
+                    c = read();
+                    if(c == '"') {
+                        field.append('"');
+                        c = read();
+                    } else {
+                        quoted = false;
+                    }
+                    continue;
+                }
+                if(c == '\n') {
+                    lineNumber++;
+                }
+                field.append((char) c);
+                c = read();
+                continue;
+            }
+            if(c == '"' && field.length() == 0) {
+                quoted = true;
+                c = read();
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+                c = read();
+            } else if(c == '\r' || c == '\n' || c == -1) {
+                fields.add(field.toString());
+                if(c != -1) {
+                    skipLineBreak(c);
+                }
+                return fields;
+            } else {
+                field.append((char) c);
+                c = read();
+            }
+        }
+    }
+
+    /**
+     * The line on which the record most recently {@link #next() read} started (from 1).
+     */
+    public long getLineNumber() {
+        return recordLineNumber;
+    }
+
+    /**
+     * Consumes the rest of the line break, of which the character is the first.
+     */
+    private void skipLineBreak(final int c) throws IOException {
+        lineNumber++;
+        if(c == '\r') {
+            final int next = read();
+            if(next != '\n') {
+                pending = next;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if(pending != -2) {
+            final int c = pending;
+            pending = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+}
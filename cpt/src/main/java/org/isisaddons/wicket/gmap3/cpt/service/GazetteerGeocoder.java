@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * {@link Geocoder} that resolves place names and postcodes from a local gazetteer, without any network access
+ * (eg for air-gapped deployments, or to resolve commonly used places without a round-trip).
+ *
+ * <p>
+ *     The gazetteer file is UTF-8 text, one place per line: <tt>name&lt;TAB&gt;latitude&lt;TAB&gt;longitude</tt>,
+ *     for example <tt>SW1A 2AA&nbsp;&nbsp;51.503364&nbsp;&nbsp;-0.127625</tt>.  Blank lines and lines starting with
+ *     <tt>#</tt> are ignored.  Names are matched as a whole, once {@link LocationLookupCache#normalize(String)
+ *     normalized}.
+ * </p>
+ */
+public class GazetteerGeocoder implements Geocoder {
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private final GazetteerIndex index;
+
+    public GazetteerGeocoder(final GazetteerIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * @throws IOException if the file cannot be read, or a line is malformed.
+     */
+    public static GazetteerGeocoder load(final Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new GazetteerGeocoder(read(reader, file.toString()));
+        }
+    }
+
+    static GazetteerIndex read(final BufferedReader reader, final String source) throws IOException {
+        final GazetteerIndex.Builder builder = GazetteerIndex.builder();
+        int lineNumber = 0;
+        String line;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            if(line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final int first = line.indexOf(FIELD_SEPARATOR);
+            final int second = first < 0 ? -1 : line.indexOf(FIELD_SEPARATOR, first + 1);
+            if(first <= 0 || second < 0) {
+                throw malformed(source, lineNumber, "expected name, latitude and longitude separated by tabs");
+            }
+            final double latitude;
+            final double longitude;
+            try {
+                latitude = Double.parseDouble(line.substring(first + 1, second).trim());
+                longitude = Double.parseDouble(line.substring(second + 1).trim());
+            } catch (NumberFormatException ex) {
+                throw malformed(source, lineNumber, ex.getMessage());
+            }
+            if(!(Math.abs(latitude) <= 90.0 && Math.abs(longitude) <= 180.0)) {
+                throw malformed(source, lineNumber, "coordinates out of range");
+            }
+            builder.add(line.substring(0, first), latitude, longitude);
+        }
+        return builder.build();
+    }
+
+    private static IOException malformed(final String source, final int lineNumber, final String reason) {
+        return new IOException(source + ", line " + lineNumber + ": " + reason);
+    }
+
+    public GazetteerIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public Location geocode(final String address) {
+        return index.get(address);
+    }
+
+    @Override
+    public String toString() {
+        return "gazetteer (" + index.size() + " places)";
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Immutable index of place names (and postcodes) to coordinates, used by {@link GazetteerGeocoder}.
+ *
+ * <p>
+ *     Names are {@link LocationLookupCache#normalize(String) normalized}, and held in a compact radix (prefix) trie
+ *     flattened into a handful of arrays: the children of each node are contiguous and sorted, and each node knows
+ *     the range of (sorted) entries beneath it.  So both exact lookups and prefix queries walk at most one node per
+ *     edge of the key, without allocating (other than normalizing the key).  Coordinates are held as primitive
+ *     columns, in key order.
+ * </p>
+ */
+public final class GazetteerIndex {
+
+    //region > Builder
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private double[] latitudes = new double[16];
+        private double[] longitudes = new double[16];
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a place; if the (normalized) name has already been added, this one replaces it.
+         */
+        public Builder add(final String name, final double latitude, final double longitude) {
+            final int i = names.size();
+            if(i == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, i * 2);
+                longitudes = Arrays.copyOf(longitudes, i * 2);
+            }
+            names.add(name);
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+            return this;
+        }
+
+        public GazetteerIndex build() {
+            final String[] keys = new String[names.size()];
+            final List<Integer> order = new ArrayList<>(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = LocationLookupCache.normalize(names.get(i));
+                if(!keys[i].isEmpty()) {
+                    order.add(i);
+                }
+            }
+            // stable, so that of equal keys, the one added last ends up last
+            order.sort(Comparator.comparing(i -> keys[i]));
+
+            final List<Integer> distinct = new ArrayList<>(order.size());
+            for (int i = 0; i < order.size(); i++) {
+                if(i + 1 < order.size() && keys[order.get(i)].equals(keys[order.get(i + 1)])) {
+                    continue;
+                }
+                distinct.add(order.get(i));
+            }
+
+            final int size = distinct.size();
+            final String[] sortedKeys = new String[size];
+            final String[] sortedNames = new String[size];
+            final double[] sortedLatitudes = new double[size];
+            final double[] sortedLongitudes = new double[size];
+            for (int i = 0; i < size; i++) {
+                final int original = distinct.get(i);
+                sortedKeys[i] = keys[original];
+                sortedNames[i] = names.get(original);
+                sortedLatitudes[i] = latitudes[original];
+                sortedLongitudes[i] = longitudes[original];
+            }
+            return new GazetteerIndex(sortedKeys, sortedNames, sortedLatitudes, sortedLongitudes);
+        }
+    }
+
+    //endregion
+
+    private static final int[] NONE = new int[0];
+
+    // entries, in key order
+    private final String[] names;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    // trie nodes; node 0 is the root (with an empty label)
+    private final char[] labels;
+    private final int[] labelStart;
+    private final int[] labelLength;
+    private final int[] firstChild;
+    private final int[] childCount;
+    // entries whose keys start with the node's string are [from, to); if terminal, entry 'from' is the node's string
+    private final int[] from;
+    private final int[] to;
+    private final boolean[] terminal;
+    private final int nodeCount;
+
+    private GazetteerIndex(
+            final String[] keys, final String[] names, final double[] latitudes, final double[] longitudes) {
+        this.names = names;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+
+        // a radix trie has fewer than two nodes per key, plus the root
+        final int maxNodes = 2 * keys.length + 1;
+        labelStart = new int[maxNodes];
+        labelLength = new int[maxNodes];
+        firstChild = new int[maxNodes];
+        childCount = new int[maxNodes];
+        from = new int[maxNodes];
+        to = new int[maxNodes];
+        terminal = new boolean[maxNodes];
+        final int[] depth = new int[maxNodes];
+        final StringBuilder labelBuf = new StringBuilder();
+
+        // breadth first, so that the children of each node are allocated contiguously
+        int count = 1;
+        to[0] = keys.length;
+        for (int node = 0; node < count; node++) {
+            final int nodeDepth = depth[node];
+            final int hi = to[node];
+            int i = from[node];
+            terminal[node] = i < hi && keys[i].length() == nodeDepth;
+            if(terminal[node]) {
+                i++;
+            }
+            firstChild[node] = count;
+            while(i < hi) {
+                final char c = keys[i].charAt(nodeDepth);
+                int j = i + 1;
+                while(j < hi && keys[j].charAt(nodeDepth) == c) {
+                    j++;
+                }
+                // keys are sorted, so the first and last of the group share the group's common prefix
+                final int childDepth = commonPrefixLength(keys[i], keys[j - 1]);
+                final int child = count++;
+                depth[child] = childDepth;
+                from[child] = i;
+                to[child] = j;
+                labelStart[child] = labelBuf.length();
+                labelLength[child] = childDepth - nodeDepth;
+                labelBuf.append(keys[i], nodeDepth, childDepth);
+                i = j;
+            }
+            childCount[node] = count - firstChild[node];
+        }
+        nodeCount = count;
+        labels = labelBuf.toString().toCharArray();
+    }
+
+    private static int commonPrefixLength(final String a, final String b) {
+        final int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while(i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    //region > queries
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the entry whose normalized name is that of the provided name, else <tt>-1</tt>.
+     */
+    public int indexOf(final String name) {
+        final int node = locate(LocationLookupCache.normalize(name), false);
+        return node >= 0 && terminal[node] ? from[node] : -1;
+    }
+
+    /**
+     * @return the location of the named place, else <tt>null</tt>.
+     */
+    public Location get(final String name) {
+        final int i = indexOf(name);
+        return i >= 0 ? getLocation(i) : null;
+    }
+
+    /**
+     * @return (up to <tt>limit</tt>) entries whose normalized name starts with the normalized prefix, in name order.
+     */
+    public int[] withPrefix(final String prefix, final int limit) {
+        final int node = locate(LocationLookupCache.normalize(prefix), true);
+        if(node < 0 || limit <= 0) {
+            return NONE;
+        }
+        final int start = from[node];
+        final int end = Math.min(to[node], start + limit);
+        final int[] entries = new int[end - start];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = start + i;
+        }
+        return entries;
+    }
+
+    /**
+     * @param prefix - whether the key may end part way along a node's label (returning that node).
+     * @return the node whose string is (or, for a prefix, starts with) the key, else <tt>-1</tt>.
+     */
+    private int locate(final String key, final boolean prefix) {
+        int node = 0;
+        int pos = 0;
+        while(pos < key.length()) {
+            final int child = findChild(node, key.charAt(pos));
+            if(child < 0) {
+                return -1;
+            }
+            final int start = labelStart[child];
+            final int length = labelLength[child];
+            final int compare = Math.min(length, key.length() - pos);
+            for (int k = 0; k < compare; k++) {
+                if(labels[start + k] != key.charAt(pos + k)) {
+                    return -1;
+                }
+            }
+            if(compare < length) {
+                return prefix ? child : -1;
+            }
+            pos += length;
+            node = child;
+        }
+        return node;
+    }
+
+    private int findChild(final int node, final char c) {
+        int lo = firstChild[node];
+        int hi = lo + childCount[node] - 1;
+        while(lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final char midChar = labels[labelStart[mid]];
+            if(midChar < c) {
+                lo = mid + 1;
+            } else if(midChar > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    //endregion
+
+    //region > entries
+
+    /**
+     * The name as provided (not normalized).
+     */
+    public String getName(final int i) {
+        return names[i];
+    }
+
+    public double getLatitude(final int i) {
+        return latitudes[i];
+    }
+
+    public double getLongitude(final int i) {
+        return longitudes[i];
+    }
+
+    public Location getLocation(final int i) {
+        return new Location(latitudes[i], longitudes[i]);
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "GazetteerIndex[entries=" + names.length + ", nodes=" + nodeCount + "]";
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Extracts the {@link Location} from a geocoding API (xml mode) response, or (for a reverse geocoding response) the
+ * address, using a StAX pull parser.
+ *
+ * <p>
+ *     The response is read straight from the stream, and parsing stops as soon as the
+ *     <tt>/GeocodeResponse/result/geometry/location</tt> (or <tt>/GeocodeResponse/result/formatted_address</tt>) of
+ *     the first result has been read; nothing else (address components, viewport, further results) is materialized.
+ * </p>
+ *
+ * <p>
+ *     A <tt>status</tt> indicating that the provider refused the request (eg <tt>OVER_QUERY_LIMIT</tt>) is reported
+ *     as a {@link GeocoderUnavailableException}, rather than as the address not being resolvable.
+ * </p>
+ */
+public final class GeocodeResponseParser {
+
+    // path to the coordinates, by element depth (1-based)
+    private static final String[] LOCATION_PATH = { "GeocodeResponse", "result", "geometry", "location" };
+    private static final int COORDINATE_DEPTH = LOCATION_PATH.length + 1;
+    // path to the address (of a reverse geocoding response)
+    private static final String[] ADDRESS_PATH = { "GeocodeResponse", "result", "formatted_address" };
+
+    // any other status means the request was refused (OVER_QUERY_LIMIT, REQUEST_DENIED, UNKNOWN_ERROR etc)
+    private static final Set<String> ACCEPTED_STATUSES =
+            new HashSet<>(Arrays.asList("OK", "ZERO_RESULTS", "INVALID_REQUEST"));
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    private static XMLInputFactory newFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private GeocodeResponseParser() {
+    }
+
+    /**
+     * @return the location of the first result, or <tt>null</tt> if there is none (eg <tt>ZERO_RESULTS</tt>).
+     * @throws XMLStreamException if the response is not well-formed, or a coordinate is not a number.
+     * @throws GeocoderUnavailableException if the provider refused the request.
+     */
+    public static Location parse(final InputStream in) throws XMLStreamException, GeocoderUnavailableException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the <tt>formatted_address</tt> of the first result, or <tt>null</tt> if there is none (eg
+     *          <tt>ZERO_RESULTS</tt>).
+     * @throws XMLStreamException if the response is not well-formed.
+     * @throws GeocoderUnavailableException if the provider refused the request.
+     */
+    public static String parseAddress(final InputStream in) throws XMLStreamException, GeocoderUnavailableException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            return parseAddress(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String parseAddress(final XMLStreamReader reader)
+            throws XMLStreamException, GeocoderUnavailableException {
+        int depth = 0;
+        // the depth up to which the current path matches ADDRESS_PATH
+        int matched = 0;
+
+        while(reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                if(matched == 1 && depth == 2 && "status".equals(reader.getLocalName())) {
+                    checkStatus(reader);
+                    depth--;
+                } else if(matched == depth - 1 && ADDRESS_PATH[depth - 1].equals(reader.getLocalName())) {
+                    if(depth == ADDRESS_PATH.length) {
+                        final String address = reader.getElementText().trim();
+                        depth--;
+                        if(!address.isEmpty()) {
+                            return address;
+                        }
+                    } else {
+                        matched = depth;
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if(matched == depth) {
+                    matched--;
+                }
+                depth--;
+                break;
+            default:
+                break;
+            }
+        }
+        return null;
+    }
+
+    private static Location parse(final XMLStreamReader reader)
+            throws XMLStreamException, GeocoderUnavailableException {
+        int depth = 0;
+        // the depth up to which the current path matches LOCATION_PATH
+        int matched = 0;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+
+        while(reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                depth++;
+                if(matched == depth - 1 && depth <= LOCATION_PATH.length
+                        && LOCATION_PATH[depth - 1].equals(reader.getLocalName())) {
+                    matched = depth;
+                } else if(matched == 1 && depth == 2 && "status".equals(reader.getLocalName())) {
+                    checkStatus(reader);
+                    depth--;
+                } else if(matched == LOCATION_PATH.length && depth == COORDINATE_DEPTH) {
+                    final String name = reader.getLocalName();
+                    if("lat".equals(name)) {
+                        latitude = parseCoordinate(reader);
+                        depth--;
+                    } else if("lng".equals(name)) {
+                        longitude = parseCoordinate(reader);
+                        depth--;
+                    }
+                    if(!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+                        return new Location(latitude, longitude);
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if(matched == depth) {
+                    matched--;
+                    if(matched < LOCATION_PATH.length) {
+                        // a location missing a coordinate; try the next
+                        latitude = longitude = Double.NaN;
+                    }
+                }
+                depth--;
+                break;
+            default:
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the <tt>status</tt> element's text, leaving the reader on its end tag.
+     */
+    private static void checkStatus(final XMLStreamReader reader)
+            throws XMLStreamException, GeocoderUnavailableException {
+        final String status = reader.getElementText().trim();
+        if(!ACCEPTED_STATUSES.contains(status)) {
+            throw new GeocoderUnavailableException("Geocoding request refused: " + status);
+        }
+    }
+
+    /**
+     * Reads the element's text, leaving the reader on its end tag.
+     */
+    private static double parseCoordinate(final XMLStreamReader reader) throws XMLStreamException {
+        final String text = reader.getElementText().trim();
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException("Not a coordinate: '" + text + "'", reader.getLocation(), ex);
+        }
+    }
+
+}
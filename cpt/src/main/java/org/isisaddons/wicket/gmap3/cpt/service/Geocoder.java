@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * SPI for resolving an address to a {@link Location}, as consulted (in turn) by {@link LocationLookupService}.
+ *
+ * <p>
+ *     Besides the provided {@link GazetteerGeocoder} and {@link GoogleGeocoder}, further implementations can be
+ *     registered using the standard {@link java.util.ServiceLoader} mechanism (a
+ *     <tt>META-INF/services/org.isisaddons.wicket.gmap3.cpt.service.Geocoder</tt> file); they need a public no-arg
+ *     constructor.
+ * </p>
+ *
+ * <p>
+ *     Implementations must be thread-safe.  There is no need for them to cache results; the service does that.
+ * </p>
+ */
+public interface Geocoder {
+
+    /**
+     * @return the location, or <tt>null</tt> if the address could not be resolved (so that the next geocoder is
+     *          consulted).
+     * @throws Exception if the lookup itself failed (the next geocoder is still consulted).
+     */
+    Location geocode(String address) throws Exception;
+
+    /**
+     * As {@link #geocode(String)}, but abandoned (throwing) if {@link Cancellation#cancel() cancelled}.
+     *
+     * <p>
+     *     By default, just calls {@link #geocode(String)}, which is then left to run its course.
+     * </p>
+     */
+    default Location geocode(String address, Cancellation cancellation) throws Exception {
+        return geocode(address);
+    }
+
+}
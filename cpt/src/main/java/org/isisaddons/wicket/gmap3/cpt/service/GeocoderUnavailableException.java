@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link Geocoder} that did not attempt the lookup, eg because its provider's quota has been used up or
+ * it has been failing (see {@link GuardedGeocoder}), or that the provider refused.
+ */
+public class GeocoderUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public GeocoderUnavailableException(final String message) {
+        super(message);
+    }
+}
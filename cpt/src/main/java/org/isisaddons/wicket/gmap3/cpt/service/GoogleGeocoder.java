@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * {@link Geocoder} (and {@link ReverseGeocoder}) using Google's geocoding API (xml mode), or any other endpoint that
+ * is compatible with it; the response is parsed by {@link GeocodeResponseParser}.
+ */
+public class GoogleGeocoder implements Geocoder, ReverseGeocoder {
+
+    private interface ResponseParser<T> {
+        T parse(InputStream in) throws Exception;
+    }
+
+    public static final String DEFAULT_URL = "http://maps.googleapis.com/maps/api/geocode/xml";
+
+    private final CloseableHttpClient httpClient;
+    private final String url;
+
+    /**
+     * @param httpClient - shared (pooled); not closed by this geocoder.
+     */
+    public GoogleGeocoder(final CloseableHttpClient httpClient) {
+        this(httpClient, DEFAULT_URL);
+    }
+
+    /**
+     * @param httpClient - shared (pooled); not closed by this geocoder.
+     * @param url - of the endpoint (to which the <tt>address</tt> or <tt>latlng</tt> query parameter is added).
+     */
+    public GoogleGeocoder(final CloseableHttpClient httpClient, final String url) {
+        this.httpClient = httpClient;
+        this.url = url;
+    }
+
+    @Override
+    public Location geocode(final String address) throws Exception {
+        return geocode(address, new Cancellation());
+    }
+
+    @Override
+    public Location geocode(final String address, final Cancellation cancellation) throws Exception {
+        return get("address=" + URLEncoder.encode(address, "UTF-8"), GeocodeResponseParser::parse, cancellation);
+    }
+
+    @Override
+    public String reverseGeocode(final Location location) throws Exception {
+        return reverseGeocode(location, new Cancellation());
+    }
+
+    @Override
+    public String reverseGeocode(final Location location, final Cancellation cancellation) throws Exception {
+        // (plain, since Double#toString uses scientific notation for small values)
+        return get("latlng=" + BigDecimal.valueOf(location.getLatitude()).toPlainString()
+                        + "," + BigDecimal.valueOf(location.getLongitude()).toPlainString(),
+                GeocodeResponseParser::parseAddress,
+                cancellation);
+    }
+
+    private <T> T get(
+            final String query,
+            final ResponseParser<T> parser,
+            final Cancellation cancellation) throws Exception {
+        String uri = url + "?" + query + "&sensor=false";
+        HttpGet httpGet = new HttpGet(uri);
+        // unblocks the request (connecting, or reading the response) and releases its connection
+        cancellation.onCancel(httpGet::abort);
+        CloseableHttpResponse response = httpClient.execute(httpGet);
+
+        try {
+            final HttpEntity entity = response.getEntity();
+            if(entity == null) {
+                throw new IOException("No response body: " + response.getStatusLine());
+            }
+            try {
+                return parser.parse(entity.getContent());
+            } finally {
+                // read (and close) whatever the parser skipped, so that the connection can be reused
+                EntityUtils.consumeQuietly(entity);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Decorates a (remote) {@link Geocoder} with a {@link CircuitBreaker} and a {@link TokenBucket rate limiter}.
+ *
+ * <p>
+ *     Reverse lookups (if the delegate is also a {@link ReverseGeocoder}) are guarded by the same circuit breaker and
+ *     rate limiter, since they go to the same provider.
+ * </p>
+ *
+ * <p>
+ *     A lookup is rejected with a {@link GeocoderUnavailableException}, without calling the delegate, if the circuit
+ *     is open or no token becomes available in time.  Any exception from the delegate counts as a failure for the
+ *     circuit breaker (as does an {@link Error}); an address that could not be resolved does not, nor does a
+ *     lookup that was {@link Cancellation cancelled}.
+ * </p>
+ */
+public class GuardedGeocoder implements Geocoder, ReverseGeocoder {
+
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private final Geocoder delegate;
+    private final TokenBucket rateLimiter;
+    private final long rateLimitWaitNanos;
+    private final CircuitBreaker circuitBreaker;
+
+    public GuardedGeocoder(
+            final Geocoder delegate,
+            final TokenBucket rateLimiter,
+            final long rateLimitWaitMillis,
+            final CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+        this.rateLimitWaitNanos = TimeUnit.MILLISECONDS.toNanos(rateLimitWaitMillis);
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Location geocode(final String address) throws Exception {
+        return geocode(address, new Cancellation());
+    }
+
+    @Override
+    public Location geocode(final String address, final Cancellation cancellation) throws Exception {
+        return guarded(() -> delegate.geocode(address, cancellation), cancellation);
+    }
+
+    /**
+     * @return <tt>null</tt> (without calling anything) if the delegate is not a {@link ReverseGeocoder}.
+     */
+    @Override
+    public String reverseGeocode(final Location location) throws Exception {
+        return reverseGeocode(location, new Cancellation());
+    }
+
+    @Override
+    public String reverseGeocode(final Location location, final Cancellation cancellation) throws Exception {
+        if(!(delegate instanceof ReverseGeocoder)) {
+            return null;
+        }
+        return guarded(() -> ((ReverseGeocoder) delegate).reverseGeocode(location, cancellation), cancellation);
+    }
+
+    private <T> T guarded(final Call<T> call, final Cancellation cancellation) throws Exception {
+        if(!circuitBreaker.tryAcquire()) {
+            throw new GeocoderUnavailableException(delegate + ": circuit open");
+        }
+        boolean acquired = false;
+        try {
+            acquired = rateLimiter.tryAcquire(rateLimitWaitNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            // (including if interrupted)
+            if(!acquired) {
+                circuitBreaker.onCancelled();
+            }
+        }
+        if(!acquired) {
+            throw new GeocoderUnavailableException(delegate + ": rate limit exceeded");
+        }
+        // an outcome is always recorded, even for an Error, else a half-open circuit would wait on its probe forever
+        boolean succeeded = false;
+        try {
+            final T result = call.call();
+            succeeded = true;
+            return result;
+        } finally {
+            if(succeeded) {
+                circuitBreaker.onSuccess();
+            } else if(cancellation.isCancelled()) {
+                // abandoned (eg another provider answered first), so says nothing about this one
+                circuitBreaker.onCancelled();
+            } else {
+                circuitBreaker.onFailure();
+            }
+        }
+    }
+
+    public Geocoder getDelegate() {
+        return delegate;
+    }
+
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
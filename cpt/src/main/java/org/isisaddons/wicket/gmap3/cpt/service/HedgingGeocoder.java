@@ -0,0 +1,326 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * {@link Geocoder} that spreads lookups over several (equivalent) providers, to cut tail latency.
+ *
+ * <p>
+ *     Each lookup goes first to the provider with the best recent median latency.  If it has not answered by the
+ *     time that provider usually has (a configurable percentile of its recent latencies), a hedged duplicate
+ *     request goes to the next provider, and so on; the first answer wins, and the other requests are {@link Cancellation cancelled} (aborting them, so that they
+ *     release their connections, and without counting as failures of their providers).  A
+ *     provider that fails is immediately replaced by the next, and is penalized in the ordering for a while.
+ * </p>
+ *
+ * <p>
+ *     Hedging is bounded, so that it does not add load when the providers (or the executor) are already overloaded:
+ *     each lookup earns a fraction (the hedge budget) of a hedge, up to a small burst, and each hedge spends one; and
+ *     a request still waiting for the executor (rather than for its provider) is not hedged at all.
+ * </p>
+ *
+ * <p>
+ *     An answer that the address could not be resolved is still an answer (it is not retried elsewhere).
+ * </p>
+ *
+ * <p>
+ *     Reverse lookups are hedged in the same way (and their latencies tracked together with those of forward
+ *     lookups); providers that are not {@link ReverseGeocoder}s are skipped.
+ * </p>
+ */
+public class HedgingGeocoder implements Geocoder, ReverseGeocoder {
+
+    private interface Call<T> {
+        T call(Geocoder geocoder, Cancellation cancellation) throws Exception;
+    }
+
+    // recent latencies to keep, per provider
+    private static final int WINDOW = 100;
+    // before this many, a provider's percentiles are not trusted for the hedge delay
+    private static final int MIN_SAMPLES = 5;
+    // hedges that can be saved up
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    public static class Provider {
+        private final Geocoder geocoder;
+        private final LatencyTracker latencies = new LatencyTracker(WINDOW);
+
+        Provider(final Geocoder geocoder) {
+            this.geocoder = geocoder;
+        }
+
+        public Geocoder getGeocoder() {
+            return geocoder;
+        }
+
+        public LatencyTracker getLatencies() {
+            return latencies;
+        }
+
+        @Override
+        public String toString() {
+            return geocoder + " (p50=" + TimeUnit.NANOSECONDS.toMillis(latencies.percentile(50)) + "ms)";
+        }
+    }
+
+    private final List<Provider> providers;
+    private final Executor executor;
+    private final double hedgePercentile;
+    private final long defaultHedgeDelayNanos;
+    private final long failurePenaltyNanos;
+    private final double hedgeTokensPerLookup;
+
+    private double hedgeTokens = MAX_HEDGE_TOKENS;
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeSkippedCount = new AtomicLong();
+
+    private static class Request<T> {
+        private final Cancellation cancellation = new Cancellation();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private Future<T> future;
+    }
+
+    public HedgingGeocoder(
+            final List<? extends Geocoder> geocoders,
+            final Executor executor,
+            final double hedgePercentile,
+            final long defaultHedgeDelayMillis,
+            final long failurePenaltyMillis) {
+        this(geocoders, executor, hedgePercentile, defaultHedgeDelayMillis, failurePenaltyMillis,
+                Gmap3ApplibConstants.LOOKUP_HEDGE_BUDGET_PERCENT_DEFAULT);
+    }
+
+    /**
+     * @param executor - runs the requests; should not be bounded more tightly than the HTTP connection pool.
+     * @param hedgePercentile - percentile (0 to 100) of a provider's recent latencies after which to hedge.
+     * @param defaultHedgeDelayMillis - after which to hedge, while a provider has too few recent latencies.
+     * @param failurePenaltyMillis - latency recorded against a provider for a failed request.
+     * @param hedgeBudgetPercent - hedges allowed, as a percentage of lookups (over time).
+     */
+    public HedgingGeocoder(
+            final List<? extends Geocoder> geocoders,
+            final Executor executor,
+            final double hedgePercentile,
+            final long defaultHedgeDelayMillis,
+            final long failurePenaltyMillis,
+            final double hedgeBudgetPercent) {
+        if(geocoders.isEmpty()) {
+            throw new IllegalArgumentException("No geocoders");
+        }
+        final List<Provider> providers = new ArrayList<>();
+        for (final Geocoder geocoder : geocoders) {
+            providers.add(new Provider(geocoder));
+        }
+        this.providers = Collections.unmodifiableList(providers);
+        this.executor = executor;
+        this.hedgePercentile = hedgePercentile;
+        this.defaultHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(defaultHedgeDelayMillis);
+        this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(failurePenaltyMillis);
+        this.hedgeTokensPerLookup = Math.max(hedgeBudgetPercent, 0) / 100;
+    }
+
+    @Override
+    public Location geocode(final String address) throws Exception {
+        return hedged(byMedianLatency(providers), (geocoder, cancellation) -> geocoder.geocode(address, cancellation));
+    }
+
+    /**
+     * @return <tt>null</tt> (without calling anything) if none of the providers is a {@link ReverseGeocoder}.
+     */
+    @Override
+    public String reverseGeocode(final Location location) throws Exception {
+        final List<Provider> reverseProviders = new ArrayList<>();
+        for (final Provider provider : providers) {
+            if(canReverseGeocode(provider.geocoder)) {
+                reverseProviders.add(provider);
+            }
+        }
+        if(reverseProviders.isEmpty()) {
+            return null;
+        }
+        return hedged(byMedianLatency(reverseProviders),
+                (geocoder, cancellation) -> ((ReverseGeocoder) geocoder).reverseGeocode(location, cancellation));
+    }
+
+    private static boolean canReverseGeocode(final Geocoder geocoder) {
+        if(geocoder instanceof GuardedGeocoder) {
+            // which always implements ReverseGeocoder, but answers null unless its delegate does too
+            return canReverseGeocode(((GuardedGeocoder) geocoder).getDelegate());
+        }
+        return geocoder instanceof ReverseGeocoder;
+    }
+
+    private <T> T hedged(final List<Provider> ordered, final Call<T> call) throws Exception {
+        earnHedge();
+        final CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        final List<Request<T>> requests = new ArrayList<>(ordered.size());
+        try {
+            submit(completionService, ordered.get(0), call, requests);
+            int inFlight = 1;
+            boolean mayHedge = true;
+            Exception failure = null;
+            while(inFlight > 0) {
+                final boolean canHedge = mayHedge && requests.size() < ordered.size();
+                final Future<T> answered = canHedge
+                        ? completionService.poll(hedgeDelayNanos(ordered.get(requests.size() - 1)), TimeUnit.NANOSECONDS)
+                        : completionService.take();
+                if(answered == null) {
+                    if(!requests.get(requests.size() - 1).started.get()) {
+                        // still waiting for the executor (which is saturated); a duplicate would only queue behind it
+                        continue;
+                    }
+                    if(!spendHedge()) {
+                        // over budget; wait for the request in flight instead
+                        hedgeSkippedCount.incrementAndGet();
+                        mayHedge = false;
+                        continue;
+                    }
+                    // too slow; hedge
+                    hedgeCount.incrementAndGet();
+                    submit(completionService, ordered.get(requests.size()), call, requests);
+                    inFlight++;
+                    continue;
+                }
+                inFlight--;
+                try {
+                    return answered.get();
+                } catch (ExecutionException ex) {
+                    if(failure == null) {
+                        failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    }
+                    if(requests.size() < ordered.size()) {
+                        // (a replacement rather than a duplicate, so not counted against the hedge budget)
+                        submit(completionService, ordered.get(requests.size()), call, requests);
+                        inFlight++;
+                    }
+                }
+            }
+            throw failure;
+        } finally {
+            // (no-ops for those that have completed)
+            for (final Request<T> request : requests) {
+                // aborts any request in flight; interrupting the thread would not unblock its read
+                request.cancellation.cancel();
+            }
+            for (final Request<T> request : requests) {
+                // (not yet started, or still waiting on the rate limiter)
+                request.future.cancel(true);
+            }
+        }
+    }
+
+    private <T> void submit(
+            final CompletionService<T> completionService,
+            final Provider provider,
+            final Call<T> call,
+            final List<Request<T>> requests) {
+        final Request<T> request = new Request<>();
+        requests.add(request);
+        request.future = completionService.submit(() -> {
+            request.started.set(true);
+            return call(provider, call, request.cancellation);
+        });
+    }
+
+    private synchronized void earnHedge() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeTokensPerLookup);
+    }
+
+    private synchronized boolean spendHedge() {
+        if(hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens -= 1;
+        return true;
+    }
+
+    private <T> T call(final Provider provider, final Call<T> call, final Cancellation cancellation) throws Exception {
+        final long start = System.nanoTime();
+        try {
+            final T result = call.call(provider.geocoder, cancellation);
+            provider.latencies.record(System.nanoTime() - start);
+            return result;
+        } catch (Exception ex) {
+            if(cancellation.isCancelled()) {
+                // another provider answered first; this one would have taken at least as long
+                provider.latencies.record(System.nanoTime() - start);
+            } else {
+                provider.latencies.record(Math.max(System.nanoTime() - start, failurePenaltyNanos));
+            }
+            throw ex;
+        }
+    }
+
+    private static List<Provider> byMedianLatency(final List<Provider> providers) {
+        // snapshot, since latencies are recorded concurrently
+        final Map<Provider, Long> medians = new IdentityHashMap<>();
+        for (final Provider provider : providers) {
+            medians.put(provider, provider.latencies.percentile(50));
+        }
+        final List<Provider> ordered = new ArrayList<>(providers);
+        // providers not yet called (-1) come first, so that every provider gets measured
+        ordered.sort(Comparator.comparing(medians::get));
+        return ordered;
+    }
+
+    private long hedgeDelayNanos(final Provider provider) {
+        return provider.latencies.getSampleCount() >= MIN_SAMPLES
+                ? provider.latencies.percentile(hedgePercentile)
+                : defaultHedgeDelayNanos;
+    }
+
+    public List<Provider> getProviders() {
+        return providers;
+    }
+
+    /**
+     * Hedged (duplicate) requests sent.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Lookups that would have been hedged, but for the hedge budget.
+     */
+    public long getHedgeSkippedCount() {
+        return hedgeSkippedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hedging " + providers + " (hedged=" + getHedgeCount() + ", skipped=" + getHedgeSkippedCount() + ")";
+    }
+}
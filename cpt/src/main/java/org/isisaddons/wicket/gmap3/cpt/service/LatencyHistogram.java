@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies (since startup), in fixed buckets from 1ms to 30s on a roughly logarithmic (1-2-5) scale,
+ * plus one for anything slower.  Recording is lock-free; percentiles are estimated as the upper bound of the bucket
+ * in which they fall (so err on the high side).
+ *
+ * <p>
+ *     Unlike {@link LatencyTracker} (a window of recent latencies, used to make decisions), this is for reporting.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKET_BOUNDS_MILLIS =
+            { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(final long nanos) {
+        counts.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucketOf(final long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if(millis < BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile - between 0 and 100; eg 99 for the 99th percentile.
+     * @return the upper bound (in millis) of the bucket in which the percentile falls (or the maximum, if the
+     *          slowest), or <tt>0</tt> if nothing recorded yet.
+     */
+    public long getPercentileMillis(final double percentile) {
+        final long[] snapshot = getBucketCounts();
+        long count = 0;
+        for (final long bucketCount : snapshot) {
+            count += bucketCount;
+        }
+        if(count == 0) {
+            return 0;
+        }
+        final long rank = Math.max((long) Math.ceil(percentile / 100.0 * count), 1);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            cumulative += snapshot[i];
+            if(cumulative >= rank) {
+                return Math.min(BUCKET_BOUNDS_MILLIS[i], getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public long getMaxMillis() {
+        // rounded up, so never less than the percentiles
+        return (maxNanos.get() + TimeUnit.MILLISECONDS.toNanos(1) - 1) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Upper (exclusive) bounds of each bucket but the last (which is unbounded).
+     */
+    public static long[] getBucketBoundsMillis() {
+        return BUCKET_BOUNDS_MILLIS.clone();
+    }
+
+    public long[] getBucketCounts() {
+        final long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+}
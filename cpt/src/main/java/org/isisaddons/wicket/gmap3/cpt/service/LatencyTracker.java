@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of the most recent calls to a geocoding provider (a sliding window), used by {@link HedgingGeocoder}.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    public LatencyTracker(final int window) {
+        samples = new long[Math.max(window, 1)];
+    }
+
+    public synchronized void record(final long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if(count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * @param percentile - between 0 and 100; eg 50 for the median.
+     * @return the latency (in nanos) at that percentile of the window, or <tt>-1</tt> if nothing recorded yet.
+     */
+    public synchronized long percentile(final double percentile) {
+        if(count == 0) {
+            return -1;
+        }
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.min(Math.max(rank, 0), count - 1)];
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+}
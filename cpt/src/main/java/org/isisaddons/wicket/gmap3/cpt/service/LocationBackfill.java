@@ -0,0 +1,268 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * One pass of the {@link LocationBackfillService background job} through a {@link LocationBackfillSource}, looking up
+ * the locations of its entities that have none.
+ *
+ * <p>
+ *     The entities are read a page at a time (each page in its own transaction), their addresses looked up in bulk
+ *     (outside of any transaction, throttled by a {@link TokenBucket}), and the locations found written back in
+ *     chunks (each chunk in its own transaction, the entities being re-resolved by id).  Entities that could not be
+ *     resolved remain in the source, so are skipped over; the number skipped is the offset recorded in the
+ *     {@link LocationBackfillCheckpoint checkpoint} after each page, from which a later pass resumes.  The
+ *     checkpoint also records the entities that could not be resolved, so that later passes do not look them up
+ *     again (for a while, or until their address changes).
+ * </p>
+ *
+ * <p>
+ *     A pass stops early (keeping its checkpoint) if told to, or if none of a page's lookups succeeded because they
+ *     all failed (eg the geocoding provider is unavailable).
+ * </p>
+ */
+public class LocationBackfill {
+
+    /**
+     * How the backfill interacts with the persistence layer; implemented using Isis sessions and bookmarks by the
+     * {@link LocationBackfillService}.
+     */
+    public interface Transactions {
+
+        /**
+         * Runs the work in a new session and transaction.
+         */
+        void execute(Runnable work);
+
+        /**
+         * An id of the entity by which it can be {@link #resolve(Object) re-resolved} in a later transaction.
+         */
+        Object idOf(Object entity);
+
+        /**
+         * @return the entity, or <tt>null</tt> if it has since been deleted.
+         */
+        Object resolve(Object id);
+    }
+
+    /**
+     * Counts for the pass.
+     */
+    public static class Statistics {
+        private final AtomicLong resolvedCount = new AtomicLong();
+        private final AtomicLong unresolvedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong skippedCount = new AtomicLong();
+
+        /**
+         * Entities whose location was looked up and applied.
+         */
+        public long getResolvedCount() {
+            return resolvedCount.get();
+        }
+
+        /**
+         * Entities whose address could not be resolved.
+         */
+        public long getUnresolvedCount() {
+            return unresolvedCount.get();
+        }
+
+        /**
+         * Entities whose lookup failed.
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        /**
+         * Entities without an address, or whose address could not be resolved by an earlier pass (as recorded in the
+         * {@link LocationBackfillCheckpoint checkpoint}).
+         */
+        public long getSkippedCount() {
+            return skippedCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "resolved=" + getResolvedCount() + ", unresolved=" + getUnresolvedCount()
+                    + ", failed=" + getFailedCount() + ", skipped=" + getSkippedCount();
+        }
+    }
+
+    private final String sourceId;
+    private final LocationBackfillSource<Locatable> source;
+    private final Function<Collection<String>, Map<String, LocationLookupResult>> lookup;
+    private final Transactions transactions;
+    private final LocationBackfillCheckpoint checkpoint;
+    private final TokenBucket throttle;
+    private final int pageSize;
+    private final int chunkSize;
+
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * @param lookup - looks up addresses in bulk, eg {@link LocationLookupService#lookupAll(Collection)}.
+     * @param throttle - one token is taken per address looked up.
+     */
+    @SuppressWarnings("unchecked")
+    public LocationBackfill(
+            final LocationBackfillSource<?> source,
+            final Function<Collection<String>, Map<String, LocationLookupResult>> lookup,
+            final Transactions transactions,
+            final LocationBackfillCheckpoint checkpoint,
+            final TokenBucket throttle,
+            final int pageSize,
+            final int chunkSize) {
+        this.sourceId = source.getClass().getName();
+        this.source = (LocationBackfillSource<Locatable>) source;
+        this.lookup = lookup;
+        this.transactions = transactions;
+        this.checkpoint = checkpoint;
+        this.throttle = throttle;
+        this.pageSize = Math.max(pageSize, 1);
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * @param keepGoing - checked before each page and chunk; the pass stops (keeping its checkpoint) once false.
+     * @return whether the pass completed (in which case the checkpoint is reset, for the next pass).
+     */
+    public boolean run(final BooleanSupplier keepGoing) throws IOException, InterruptedException {
+        int offset = checkpoint.getOffset(sourceId);
+        while(keepGoing.getAsBoolean()) {
+            // id -> address, in the source's order
+            final Map<Object, String> page = readPage(offset);
+            if(page.isEmpty()) {
+                checkpoint.reset(sourceId);
+                return true;
+            }
+
+            // id -> address, of those to look up
+            final Map<Object, String> toLookUp = new LinkedHashMap<>();
+            final List<String> addresses = new ArrayList<>();
+            for (final Map.Entry<Object, String> entry : page.entrySet()) {
+                final String address = entry.getValue();
+                if(address == null || checkpoint.isUnresolved(sourceId, String.valueOf(entry.getKey()), address)) {
+                    statistics.skippedCount.incrementAndGet();
+                    continue;
+                }
+                throttle.tryAcquire(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                toLookUp.put(entry.getKey(), address);
+                addresses.add(address);
+            }
+            final Map<String, LocationLookupResult> results = lookup.apply(addresses);
+
+            final Map<Object, Location> resolved = new LinkedHashMap<>();
+            int failed = 0;
+            for (final Map.Entry<Object, String> entry : toLookUp.entrySet()) {
+                final LocationLookupResult result = results.get(entry.getValue());
+                if(result == null) {
+                    continue;
+                }
+                switch (result.getStatus()) {
+                case RESOLVED:
+                    resolved.put(entry.getKey(), result.getLocation());
+                    break;
+                case UNRESOLVED:
+                    statistics.unresolvedCount.incrementAndGet();
+                    // so not looked up again by every pass
+                    checkpoint.addUnresolved(sourceId, String.valueOf(entry.getKey()), entry.getValue());
+                    break;
+                default:
+                    statistics.failedCount.incrementAndGet();
+                    failed++;
+                    break;
+                }
+            }
+            if(failed > 0 && failed == addresses.size()) {
+                // the provider is most likely unavailable; try again later rather than skipping them all
+                return false;
+            }
+
+            if(!apply(resolved, keepGoing)) {
+                return false;
+            }
+            // the entities resolved have dropped out of the source; the rest are skipped over from now on
+            offset += page.size() - resolved.size();
+            checkpoint.setOffset(sourceId, offset);
+        }
+        return false;
+    }
+
+    private Map<Object, String> readPage(final int offset) {
+        final Map<Object, String> page = new LinkedHashMap<>();
+        transactions.execute(() -> {
+            for (final Locatable entity : source.findMissingLocation(offset, pageSize)) {
+                page.put(transactions.idOf(entity), source.addressOf(entity));
+            }
+        });
+        return page;
+    }
+
+    /**
+     * @return whether all were applied.
+     */
+    private boolean apply(final Map<Object, Location> resolved, final BooleanSupplier keepGoing) {
+        final List<Map.Entry<Object, Location>> entries = new ArrayList<>(resolved.entrySet());
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            if(!keepGoing.getAsBoolean()) {
+                // those already applied have dropped out; the rest will be looked up again (most likely cached)
+                return false;
+            }
+            final List<Map.Entry<Object, Location>> chunk =
+                    entries.subList(from, Math.min(from + chunkSize, entries.size()));
+            final AtomicInteger applied = new AtomicInteger();
+            transactions.execute(() -> {
+                for (final Map.Entry<Object, Location> entry : chunk) {
+                    final Locatable entity = (Locatable) transactions.resolve(entry.getKey());
+                    if(entity != null && !entity.hasLocation()) {
+                        source.applyLocation(entity, entry.getValue());
+                        applied.incrementAndGet();
+                    }
+                }
+            });
+            // (not those deleted, or located otherwise, in the meantime)
+            statistics.resolvedCount.addAndGet(applied.get());
+        }
+        return true;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+}
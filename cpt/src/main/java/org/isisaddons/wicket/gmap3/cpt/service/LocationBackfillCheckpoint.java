@@ -0,0 +1,218 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
+
+/**
+ * Progress of the {@link LocationBackfill} through each {@link LocationBackfillSource}, so that it can resume after a
+ * restart: the offset into the source's entities that still have no location, ie the number skipped so far in the
+ * current pass (because they could not be resolved).
+ *
+ * <p>
+ *     Also records which entities' addresses could not be resolved (and when), so that later passes skip them,
+ *     rather than looking them up again every time, until either the address changes or the retry period has passed.
+ *     At most {@value #MAX_UNRESOLVED} are recorded, the oldest being forgotten.
+ * </p>
+ *
+ * <p>
+ *     If a file is provided then it is read when created, and rewritten (to a temporary file which then atomically
+ *     replaces it) on every change; the file has one <tt>source&lt;TAB&gt;offset</tt> line per source in progress,
+ *     and one <tt>source&lt;TAB&gt;entity&lt;TAB&gt;address hash&lt;TAB&gt;time</tt> line per unresolved entity.
+ *     Otherwise progress is only held in memory.
+ * </p>
+ */
+public class LocationBackfillCheckpoint {
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private static final int MAX_UNRESOLVED = 100000;
+
+    private static class Unresolved {
+        private final int addressHash;
+        private final long timeMillis;
+
+        Unresolved(final int addressHash, final long timeMillis) {
+            this.addressHash = addressHash;
+            this.timeMillis = timeMillis;
+        }
+    }
+
+    private final Path file;
+    private final long retryUnresolvedMillis;
+    private final Map<String, Integer> offsets = new TreeMap<>();
+    // source + entity -> unresolved, oldest first
+    private final LinkedHashMap<String, Unresolved> unresolved = new LinkedHashMap<>();
+    // unresolved recorded since last saved
+    private boolean dirty;
+
+    public LocationBackfillCheckpoint() {
+        this(TimeUnit.HOURS.toMillis(Gmap3ApplibConstants.BACKFILL_RETRY_UNRESOLVED_HOURS_DEFAULT));
+    }
+
+    /**
+     * @param retryUnresolvedMillis - after which an entity whose address could not be resolved is looked up again.
+     */
+    public LocationBackfillCheckpoint(final long retryUnresolvedMillis) {
+        this.file = null;
+        this.retryUnresolvedMillis = retryUnresolvedMillis;
+    }
+
+    public LocationBackfillCheckpoint(final Path file) throws IOException {
+        this(file, TimeUnit.HOURS.toMillis(Gmap3ApplibConstants.BACKFILL_RETRY_UNRESOLVED_HOURS_DEFAULT));
+    }
+
+    /**
+     * @param retryUnresolvedMillis - after which an entity whose address could not be resolved is looked up again.
+     */
+    public LocationBackfillCheckpoint(final Path file, final long retryUnresolvedMillis) throws IOException {
+        this.file = file;
+        this.retryUnresolvedMillis = retryUnresolvedMillis;
+        if(Files.exists(file)) {
+            load();
+        } else {
+            final Path parent = file.toAbsolutePath().getParent();
+            if(parent != null) {
+                Files.createDirectories(parent);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                final String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+                try {
+                    if(fields.length == 2 && !fields[0].isEmpty()) {
+                        final int offset = Integer.parseInt(fields[1].trim());
+                        if(offset > 0) {
+                            offsets.put(fields[0], offset);
+                        }
+                    } else if(fields.length == 4 && !fields[0].isEmpty()) {
+                        unresolved.put(keyOf(fields[0], fields[1]),
+                                new Unresolved(Integer.parseInt(fields[2].trim()), Long.parseLong(fields[3].trim())));
+                    }
+                } catch (NumberFormatException ignored) {
+                    // start that source (or entity) afresh
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the offset to resume from, <tt>0</tt> if none recorded.
+     */
+    public synchronized int getOffset(final String source) {
+        final Integer offset = offsets.get(source);
+        return offset != null ? offset : 0;
+    }
+
+    public synchronized void setOffset(final String source, final int offset) throws IOException {
+        final Integer previous = offset > 0 ? offsets.put(source, offset) : offsets.remove(source);
+        if(dirty || (previous == null ? offset > 0 : previous != offset)) {
+            save();
+        }
+    }
+
+    /**
+     * The pass through the source is complete; the next starts from the beginning.
+     */
+    public void reset(final String source) throws IOException {
+        setOffset(source, 0);
+    }
+
+    /**
+     * Whether the entity's address was recorded as {@link #addUnresolved(String, String, String) unresolved}, within
+     * the retry period.
+     */
+    public synchronized boolean isUnresolved(final String source, final String entity, final String address) {
+        final String key = keyOf(source, entity);
+        final Unresolved recorded = unresolved.get(key);
+        if(recorded == null) {
+            return false;
+        }
+        if(recorded.addressHash != address.hashCode()
+                || System.currentTimeMillis() - recorded.timeMillis >= retryUnresolvedMillis) {
+            // changed since, or due to be retried
+            unresolved.remove(key);
+            dirty = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the entity's address could not be resolved; saved with the next {@link #setOffset(String, int)}.
+     */
+    public synchronized void addUnresolved(final String source, final String entity, final String address) {
+        final String key = keyOf(source, entity);
+        // (re-added, so as the newest)
+        unresolved.remove(key);
+        unresolved.put(key, new Unresolved(address.hashCode(), System.currentTimeMillis()));
+        final Iterator<String> oldest = unresolved.keySet().iterator();
+        while(unresolved.size() > MAX_UNRESOLVED) {
+            oldest.next();
+            oldest.remove();
+        }
+        dirty = true;
+    }
+
+    /**
+     * The number of entities recorded as unresolved, over all sources.
+     */
+    public synchronized int getUnresolvedCount() {
+        return unresolved.size();
+    }
+
+    private static String keyOf(final String source, final String entity) {
+        // (neither may contain the field separator, or line breaks)
+        return source + FIELD_SEPARATOR + entity.replace(FIELD_SEPARATOR, ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private void save() throws IOException {
+        dirty = false;
+        if(file == null) {
+            return;
+        }
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (final Map.Entry<String, Integer> entry : offsets.entrySet()) {
+                writer.write(entry.getKey() + FIELD_SEPARATOR + entry.getValue() + "\n");
+            }
+            for (final Map.Entry<String, Unresolved> entry : unresolved.entrySet()) {
+                writer.write(entry.getKey() + FIELD_SEPARATOR + entry.getValue().addressHash
+                        + FIELD_SEPARATOR + entry.getValue().timeMillis + "\n");
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
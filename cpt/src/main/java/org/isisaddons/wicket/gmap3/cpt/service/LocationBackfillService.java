@@ -0,0 +1,235 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.core.commons.authentication.AuthenticationSession;
+import org.apache.isis.core.runtime.authentication.standard.SimpleSession;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
+
+/**
+ * Background job that looks up the locations of entities that have none (eg following an import), so that this
+ * happens neither in interactive requests nor at peak times.
+ *
+ * <p>
+ *     Entities are found through the {@link LocationBackfillSource}s registered as domain services.  When enabled
+ *     (see {@link Gmap3ApplibConstants#BACKFILL_ENABLED} and related keys), the job runs periodically within an
+ *     off-peak window, making a {@link LocationBackfill pass} through each source in turn: pages of entities are
+ *     looked up in bulk (with the concurrency of {@link LocationLookupService#lookupAll(java.util.Collection)}, and
+ *     throttled to a rate of its own), and the locations written back in chunked transactions.  Progress is
+ *     checkpointed (optionally to a file), so that a pass interrupted by the end of the window or by a restart
+ *     resumes where it left off.
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class LocationBackfillService {
+
+    private ScheduledExecutorService scheduler;
+    private LocationBackfillCheckpoint checkpoint;
+    private TokenBucket throttle;
+    private AuthenticationSession authenticationSession;
+    private int startHour;
+    private int endHour;
+    private int pageSize;
+    private int chunkSize;
+
+    private volatile boolean running;
+    // of the most recent pass through each source
+    private final Map<String, LocationBackfill.Statistics> statistics =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+
+    //region > init, shutdown
+
+    @PostConstruct
+    @Programmatic
+    public synchronized void init(final Map<String, String> properties) {
+        if(scheduler != null) {
+            return;
+        }
+        checkpoint = openCheckpoint(properties);
+        throttle = new TokenBucket(
+                LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_RATE_PER_SECOND,
+                        Gmap3ApplibConstants.BACKFILL_RATE_PER_SECOND_DEFAULT),
+                1);
+        final String user = properties.get(Gmap3ApplibConstants.BACKFILL_USER);
+        authenticationSession = new SimpleSession(
+                user != null ? user.trim() : Gmap3ApplibConstants.BACKFILL_USER_DEFAULT, new String[0]);
+        startHour = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_START_HOUR,
+                Gmap3ApplibConstants.BACKFILL_START_HOUR_DEFAULT);
+        endHour = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_END_HOUR,
+                Gmap3ApplibConstants.BACKFILL_END_HOUR_DEFAULT);
+        pageSize = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_PAGE_SIZE,
+                Gmap3ApplibConstants.BACKFILL_PAGE_SIZE_DEFAULT);
+        chunkSize = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_CHUNK_SIZE,
+                Gmap3ApplibConstants.BACKFILL_CHUNK_SIZE_DEFAULT);
+
+        // a single thread, so that passes never overlap
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("gmap3-backfill-%d").setDaemon(true).build());
+        running = true;
+
+        if(LocationLookupService.booleanProperty(properties, Gmap3ApplibConstants.BACKFILL_ENABLED, false)) {
+            final long intervalMinutes = Math.max(
+                    LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_INTERVAL_MINUTES,
+                            Gmap3ApplibConstants.BACKFILL_INTERVAL_MINUTES_DEFAULT), 1);
+            scheduler.scheduleWithFixedDelay(
+                    () -> runAll(true), intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    @Programmatic
+    public synchronized void shutdown() {
+        if(scheduler == null) {
+            return;
+        }
+        // the current pass stops at its next page or chunk, having checkpointed
+        running = false;
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private static LocationBackfillCheckpoint openCheckpoint(final Map<String, String> properties) {
+        final long retryUnresolvedMillis = TimeUnit.HOURS.toMillis(
+                LocationLookupService.intProperty(properties, Gmap3ApplibConstants.BACKFILL_RETRY_UNRESOLVED_HOURS,
+                        Gmap3ApplibConstants.BACKFILL_RETRY_UNRESOLVED_HOURS_DEFAULT));
+        final String file = properties.get(Gmap3ApplibConstants.BACKFILL_CHECKPOINT_FILE);
+        if(file != null && !file.trim().isEmpty()) {
+            try {
+                return new LocationBackfillCheckpoint(Paths.get(file.trim()), retryUnresolvedMillis);
+            } catch (IOException e) {
+                // carry on, starting over after a restart
+            }
+        }
+        return new LocationBackfillCheckpoint(retryUnresolvedMillis);
+    }
+
+    //endregion
+
+    /**
+     * Runs a pass through each source now (on the job's thread, so not concurrently with a scheduled pass),
+     * regardless of the off-peak window.
+     *
+     * @return completed at once (having done nothing) if the service has not been initialized, or has been shut down.
+     */
+    @Programmatic
+    public synchronized Future<?> runNow() {
+        if(scheduler == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return scheduler.submit(() -> runAll(false));
+    }
+
+    private void runAll(final boolean offPeakOnly) {
+        if(sources == null) {
+            return;
+        }
+        for (final LocationBackfillSource<?> source : sources) {
+            if(offPeakOnly && !isOffPeak()) {
+                return;
+            }
+            final LocationBackfill backfill = new LocationBackfill(
+                    source, locationLookupService::lookupAll, transactions, checkpoint, throttle,
+                    pageSize, chunkSize);
+            statistics.put(backfill.getSourceId(), backfill.getStatistics());
+            try {
+                backfill.run(() -> running && !Thread.currentThread().isInterrupted()
+                        && (!offPeakOnly || isOffPeak()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                // (eg could not checkpoint, or the source failed); carry on with the next source
+            }
+        }
+    }
+
+    boolean isOffPeak() {
+        final int hour = LocalTime.now().getHour();
+        if(startHour == endHour) {
+            return true;
+        }
+        return startHour < endHour
+                ? hour >= startHour && hour < endHour
+                : hour >= startHour || hour < endHour;
+    }
+
+    /**
+     * Counts for the most recent pass through each source (by class name).
+     */
+    @Programmatic
+    public Map<String, LocationBackfill.Statistics> getStatistics() {
+        synchronized (statistics) {
+            return new LinkedHashMap<>(statistics);
+        }
+    }
+
+    private final LocationBackfill.Transactions transactions = new LocationBackfill.Transactions() {
+        @Override
+        public void execute(final Runnable work) {
+            new TransactionalSessionTemplate().execute(authenticationSession, work);
+        }
+
+        @Override
+        public Object idOf(final Object entity) {
+            return bookmarkService.bookmarkFor(entity);
+        }
+
+        @Override
+        public Object resolve(final Object id) {
+            return bookmarkService.lookup((Bookmark) id);
+        }
+    };
+
+    //region > injected services
+
+    @javax.inject.Inject
+    List<LocationBackfillSource<?>> sources;
+
+    @javax.inject.Inject
+    LocationLookupService locationLookupService;
+
+    @javax.inject.Inject
+    BookmarkService bookmarkService;
+
+    //endregion
+}
@@ -0,0 +1,51 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.List;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * SPI, implemented by a domain service, through which the {@link LocationBackfillService} finds (and updates)
+ * {@link Locatable} entities that have no location yet.
+ *
+ * <p>
+ *     All methods are called within an Isis session and transaction, started by the backfill job.
+ * </p>
+ */
+public interface LocationBackfillSource<T extends Locatable> {
+
+    /**
+     * A page of the entities that have no location.
+     *
+     * <p>
+     *     The order must be stable (eg by id), since the job resumes from an offset into it; entities are expected to
+     *     drop out of it once their location has been {@link #applyLocation(Locatable, Location) applied}.
+     * </p>
+     */
+    List<T> findMissingLocation(int start, int count);
+
+    /**
+     * @return the address to look up, or <tt>null</tt> if there is none (the entity is skipped).
+     */
+    String addressOf(T entity);
+
+    void applyLocation(T entity, Location location);
+
+}
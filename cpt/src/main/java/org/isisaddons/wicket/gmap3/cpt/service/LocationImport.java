@@ -0,0 +1,479 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * One import, by the {@link LocationImportService}, of rows of a description and an address from a CSV file: each
+ * row's address is looked up, and the row (with its location, if found) then persisted.
+ *
+ * <p>
+ *     The import runs as a pipeline of stages, each on its own thread and connected by bounded queues; a stage that
+ *     falls behind blocks the one before it, so that the rows held in memory are bounded however large the file:
+ * </p>
+ * <ol>
+ *     <li>parse: the file is {@link CsvRecordReader streamed} a row at a time, skipping a header row (if its first
+ *     field is <tt>description</tt>) and any rows without a description;</li>
+ *     <li>de-duplicate: rows the same (once {@link LocationLookupCache#normalize(String) normalized}) as one of
+ *     the most recent are dropped;</li>
+ *     <li>geocode: the addresses of a batch of rows are looked up in bulk (concurrently, and each distinct address
+ *     only once);</li>
+ *     <li>persist: the rows are handed to the {@link Sink} in chunks, each chunk in its own transaction.</li>
+ * </ol>
+ *
+ * <p>
+ *     Rows whose address could not be resolved (or whose lookup failed) are persisted without a location, for a
+ *     {@link LocationBackfillService backfill} to retry later.  If any stage fails then the import stops; the
+ *     chunks already persisted remain so.
+ * </p>
+ */
+public class LocationImport {
+
+    /**
+     * A row of the file, and (once geocoded) the outcome of looking up its address.
+     */
+    public static class Row {
+        private final long lineNumber;
+        private final String description;
+        private final String address;
+        private LocationLookupResult result;
+
+        Row(final long lineNumber, final String description, final String address) {
+            this.lineNumber = lineNumber;
+            this.description = description;
+            this.address = address;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * @return the address, or <tt>null</tt> if none given.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return the location, or <tt>null</tt> if there is no address or it could not be resolved.
+         */
+        public Location getLocation() {
+            return result != null ? result.getLocation() : null;
+        }
+
+        @Override
+        public String toString() {
+            return lineNumber + ": " + description + " @ " + address;
+        }
+    }
+
+    /**
+     * Persists the imported rows, eg as entities.
+     */
+    public interface Sink {
+
+        /**
+         * Called within a transaction, for each row of a chunk in turn.
+         */
+        void persist(Row row);
+    }
+
+    /**
+     * Runs each chunk in its own transaction; implemented using Isis sessions by the {@link LocationImportService}.
+     */
+    public interface Transactions {
+        void execute(Runnable work);
+    }
+
+    /**
+     * Counts for the import.
+     */
+    public static class Statistics {
+        private final AtomicLong readCount = new AtomicLong();
+        private final AtomicLong invalidCount = new AtomicLong();
+        private final AtomicLong duplicateCount = new AtomicLong();
+        private final AtomicLong resolvedCount = new AtomicLong();
+        private final AtomicLong unresolvedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private final AtomicLong persistedCount = new AtomicLong();
+
+        /**
+         * Rows read (excluding any header).
+         */
+        public long getReadCount() {
+            return readCount.get();
+        }
+
+        /**
+         * Rows without a description, so skipped.
+         */
+        public long getInvalidCount() {
+            return invalidCount.get();
+        }
+
+        public long getDuplicateCount() {
+            return duplicateCount.get();
+        }
+
+        /**
+         * Rows whose address was resolved.
+         */
+        public long getResolvedCount() {
+            return resolvedCount.get();
+        }
+
+        /**
+         * Rows without an address, or whose address could not be resolved.
+         */
+        public long getUnresolvedCount() {
+            return unresolvedCount.get();
+        }
+
+        /**
+         * Rows whose lookup failed.
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        public long getPersistedCount() {
+            return persistedCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "read=" + getReadCount() + ", invalid=" + getInvalidCount()
+                    + ", duplicates=" + getDuplicateCount() + ", resolved=" + getResolvedCount()
+                    + ", unresolved=" + getUnresolvedCount() + ", failed=" + getFailedCount()
+                    + ", persisted=" + getPersistedCount();
+        }
+    }
+
+    // marks the end of the rows on a queue
+    private static final List<Row> END = Collections.emptyList();
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Function<Collection<String>, Map<String, LocationLookupResult>> lookup;
+    private final Transactions transactions;
+    private final Sink sink;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int chunkSize;
+    private final int deduplicateWindow;
+
+    // each queue holds batches (of up to batchSize rows), bounded to the capacity in rows
+    private final BlockingQueue<List<Row>> parsed;
+    private final BlockingQueue<List<Row>> geocoded;
+
+    private final Statistics statistics = new Statistics();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile boolean aborted;
+    private volatile Future<Statistics> started;
+
+    /**
+     * @param lookup - looks up addresses in bulk, eg {@link LocationLookupService#lookupAll(Collection)}.
+     * @param executor - runs the geocode and persist stages (the file is parsed on the calling thread, unless
+     *                 {@link #start(Reader) started} in the background).
+     * @param queueCapacity - rows held between stages.
+     */
+    public LocationImport(
+            final Function<Collection<String>, Map<String, LocationLookupResult>> lookup,
+            final Transactions transactions,
+            final Sink sink,
+            final ExecutorService executor,
+            final int batchSize,
+            final int chunkSize,
+            final int queueCapacity,
+            final int deduplicateWindow) {
+        this.lookup = lookup;
+        this.transactions = transactions;
+        this.sink = sink;
+        this.executor = executor;
+        this.batchSize = Math.max(batchSize, 1);
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.deduplicateWindow = Math.max(deduplicateWindow, 0);
+        final int batches = Math.max(queueCapacity / this.batchSize, 1);
+        this.parsed = new ArrayBlockingQueue<>(batches);
+        this.geocoded = new ArrayBlockingQueue<>(batches);
+    }
+
+    /**
+     * Imports the rows, returning once all have been persisted.
+     *
+     * @param csv - of a description and an (optional) address per row; not closed.
+     * @throws IOException - if the file could not be read or parsed.
+     * @throws ExecutionException - if the rows could not be geocoded or persisted.
+     */
+    public Statistics run(final Reader csv) throws IOException, InterruptedException, ExecutionException {
+        final Future<?> geocoding = executor.submit(stage(this::geocode));
+        final Future<?> persisting = executor.submit(stage(this::persist));
+        try {
+            parse(csv);
+            awaitQuietly(geocoding);
+            awaitQuietly(persisting);
+        } catch (InterruptedException e) {
+            if(failure.get() == null) {
+                abort(e, geocoding, persisting);
+                throw e;
+            }
+            // a later stage failed, so parsing gave up; reported below
+        } catch (IOException | RuntimeException e) {
+            abort(e, geocoding, persisting);
+            throw e;
+        }
+        final Throwable cause = failure.get();
+        if(cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return statistics;
+    }
+
+    /**
+     * As {@link #run(Reader)}, but with the file parsed on a thread of the executor too, so returns at once; the
+     * {@link #getStatistics() statistics} show the progress made.
+     *
+     * @param csv - of a description and an (optional) address per row; not closed.
+     */
+    public synchronized Future<Statistics> start(final Reader csv) {
+        if(started != null) {
+            throw new IllegalStateException("Already started");
+        }
+        started = executor.submit(() -> run(csv));
+        return started;
+    }
+
+    /**
+     * Whether an import {@link #start(Reader) started} in the background has finished (whether or not it succeeded).
+     */
+    public boolean isDone() {
+        final Future<Statistics> started = this.started;
+        return started != null && started.isDone();
+    }
+
+    /**
+     * @return why the import stopped, or <tt>null</tt> if it has not (yet) failed.
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private Callable<Void> stage(final Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (Exception | Error e) {
+                // the first failure is reported; the other stages then give up
+                failure.compareAndSet(null, e);
+                aborted = true;
+            }
+            return null;
+        };
+    }
+
+    private void abort(final Throwable cause, final Future<?>... stages) {
+        failure.compareAndSet(null, cause);
+        aborted = true;
+        for (final Future<?> stage : stages) {
+            stage.cancel(true);
+        }
+    }
+
+    private static void awaitQuietly(final Future<?> stage) throws InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException ignored) {
+            // (stages report their failures themselves)
+        }
+    }
+
+    //region > stages
+
+    private void parse(final Reader csv) throws IOException, InterruptedException {
+        final CsvRecordReader reader = new CsvRecordReader(csv);
+        final Set<String> recent = newRecentSet();
+        List<Row> batch = new ArrayList<>(batchSize);
+        for (List<String> record = reader.next(); record != null; record = reader.next()) {
+            final String description = field(record, 0);
+            if(reader.getLineNumber() == 1 && "description".equals(lower(description))) {
+                continue;
+            }
+            statistics.readCount.incrementAndGet();
+            if(description == null) {
+                statistics.invalidCount.incrementAndGet();
+                continue;
+            }
+            final String address = field(record, 1);
+            if(deduplicateWindow > 0) {
+                final String key = LocationLookupCache.normalize(description) + "\n"
+                        + (address != null ? LocationLookupCache.normalize(address) : "");
+                if(!recent.add(key)) {
+                    statistics.duplicateCount.incrementAndGet();
+                    continue;
+                }
+            }
+            batch.add(new Row(reader.getLineNumber(), description, address));
+            if(batch.size() == batchSize) {
+                put(parsed, batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if(!batch.isEmpty()) {
+            put(parsed, batch);
+        }
+        put(parsed, END);
+    }
+
+    private void geocode() throws InterruptedException {
+        for (List<Row> batch = take(parsed); batch != END; batch = take(parsed)) {
+            final Set<String> addresses = new LinkedHashSet<>();
+            for (final Row row : batch) {
+                if(row.address != null) {
+                    addresses.add(row.address);
+                }
+            }
+            final Map<String, LocationLookupResult> results = lookup.apply(addresses);
+            for (final Row row : batch) {
+                row.result = row.address != null ? results.get(row.address) : null;
+                if(row.result == null || row.result.getStatus() == LocationLookupResult.Status.UNRESOLVED) {
+                    statistics.unresolvedCount.incrementAndGet();
+                } else if(row.result.isResolved()) {
+                    statistics.resolvedCount.incrementAndGet();
+                } else {
+                    statistics.failedCount.incrementAndGet();
+                }
+            }
+            put(geocoded, batch);
+        }
+        put(geocoded, END);
+    }
+
+    private void persist() throws InterruptedException {
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        for (List<Row> batch = take(geocoded); batch != END; batch = take(geocoded)) {
+            for (final Row row : batch) {
+                chunk.add(row);
+                if(chunk.size() == chunkSize) {
+                    persistChunk(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+        if(!chunk.isEmpty()) {
+            persistChunk(chunk);
+        }
+    }
+
+    private void persistChunk(final List<Row> chunk) {
+        transactions.execute(() -> {
+            for (final Row row : chunk) {
+                sink.persist(row);
+            }
+        });
+        statistics.persistedCount.addAndGet(chunk.size());
+    }
+
+    //endregion
+
+    //region > helpers
+
+    /**
+     * Remembers (only) the most recent rows, so that de-duplicating does not hold on to the whole file.
+     */
+    private Set<String> newRecentSet() {
+        return Collections.newSetFromMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > deduplicateWindow;
+            }
+        });
+    }
+
+    private <T> void put(final BlockingQueue<T> queue, final T item) throws InterruptedException {
+        // (polling, so that a stage blocked on a stage that has failed gives up)
+        while(!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkAborted();
+        }
+    }
+
+    private <T> T take(final BlockingQueue<T> queue) throws InterruptedException {
+        T item;
+        while((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            checkAborted();
+        }
+        return item;
+    }
+
+    private void checkAborted() throws InterruptedException {
+        if(aborted) {
+            throw new InterruptedException("Import aborted");
+        }
+    }
+
+    private static String field(final List<String> record, final int index) {
+        if(index >= record.size()) {
+            return null;
+        }
+        final String field = record.get(index).trim();
+        return field.isEmpty() ? null : field;
+    }
+
+    private static String lower(final String text) {
+        return text != null ? text.toLowerCase(Locale.ROOT) : null;
+    }
+
+    //endregion
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.core.commons.authentication.AuthenticationSession;
+import org.apache.isis.core.runtime.system.context.IsisContext;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
+
+/**
+ * Imports (potentially very large) CSV files of descriptions and addresses, looking up the location of each and
+ * persisting them in bulk; see {@link LocationImport} for how.
+ *
+ * <p>
+ *     The batch and chunk sizes, and the number of rows held between stages, can be configured (see
+ *     {@link Gmap3ApplibConstants#IMPORT_BATCH_SIZE} and related keys).
+ * </p>
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class LocationImportService {
+
+    private ExecutorService executor;
+    private int batchSize;
+    private int chunkSize;
+    private int queueCapacity;
+    private int deduplicateWindow;
+
+    //region > init, shutdown
+
+    @PostConstruct
+    @Programmatic
+    public synchronized void init(final Map<String, String> properties) {
+        if(executor != null) {
+            return;
+        }
+        batchSize = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.IMPORT_BATCH_SIZE,
+                Gmap3ApplibConstants.IMPORT_BATCH_SIZE_DEFAULT);
+        chunkSize = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.IMPORT_CHUNK_SIZE,
+                Gmap3ApplibConstants.IMPORT_CHUNK_SIZE_DEFAULT);
+        queueCapacity = LocationLookupService.intProperty(properties, Gmap3ApplibConstants.IMPORT_QUEUE_CAPACITY,
+                Gmap3ApplibConstants.IMPORT_QUEUE_CAPACITY_DEFAULT);
+        deduplicateWindow = LocationLookupService.intProperty(properties,
+                Gmap3ApplibConstants.IMPORT_DEDUPLICATE_WINDOW,
+                Gmap3ApplibConstants.IMPORT_DEDUPLICATE_WINDOW_DEFAULT);
+        // two threads (geocode, persist) per concurrent import, and a third (parse) if in the background
+        executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("gmap3-import-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    @Programmatic
+    public synchronized void shutdown() {
+        if(executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    //endregion
+
+    /**
+     * Imports the rows of the file, persisting them (as the current user, each chunk in a new session and
+     * transaction) through the sink; returns once all have been persisted.
+     *
+     * @param csv - of a description and an (optional) address per row, optionally preceded by a header row; not
+     *            closed.
+     * @throws IOException - if the file could not be read or parsed.
+     * @throws ExecutionException - if the rows could not be geocoded or persisted (those persisted by then remain
+     *            so).
+     */
+    @Programmatic
+    public LocationImport.Statistics importCsv(final Reader csv, final LocationImport.Sink sink)
+            throws IOException, InterruptedException, ExecutionException {
+        return newImport(sink).run(csv);
+    }
+
+    /**
+     * As {@link #importCsv(Reader, LocationImport.Sink)}, but in the background, so returns at once (eg so that a
+     * large file does not hold up the request uploading it).
+     *
+     * @param csv - read (and parsed) in the background; not closed.
+     * @return the import, whose {@link LocationImport#getStatistics() statistics} show its progress.
+     */
+    @Programmatic
+    public LocationImport importCsvInBackground(final Reader csv, final LocationImport.Sink sink) {
+        final LocationImport locationImport = newImport(sink);
+        locationImport.start(csv);
+        return locationImport;
+    }
+
+    private LocationImport newImport(final LocationImport.Sink sink) {
+        // (of the current request, so captured here rather than in the background)
+        final AuthenticationSession authenticationSession =
+                IsisContext.getSessionFactory().getCurrentSession().getAuthenticationSession();
+        return new LocationImport(
+                locationLookupService::lookupAll,
+                work -> new TransactionalSessionTemplate().execute(authenticationSession, work),
+                sink,
+                executor,
+                batchSize,
+                chunkSize,
+                queueCapacity,
+                deduplicateWindow);
+    }
+
+    //region > injected services
+
+    @javax.inject.Inject
+    LocationLookupService locationLookupService;
+
+    //endregion
+}
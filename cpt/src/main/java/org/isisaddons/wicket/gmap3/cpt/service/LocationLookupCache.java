@@ -0,0 +1,283 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Bounded (LRU) cache of geocoded addresses, used by {@link LocationLookupService}.
+ *
+ * <p>
+ *     Addresses that could not be resolved are also cached ("negative" entries), but held in a separate cache with
+ *     a (typically much shorter) time-to-live so that they are retried reasonably soon.  Keys are
+ *     {@link #normalize(String) normalized}, so that trivially different spellings of an address share an entry.
+ * </p>
+ *
+ * <p>
+ *     Concurrent misses for the same (normalized) address are coalesced: only the first caller delegates the
+ *     lookup, the others wait for and share its result (or its exception).
+ * </p>
+ */
+public class LocationLookupCache {
+
+    /**
+     * Snapshot of the cache's statistics.
+     */
+    public static class Statistics {
+        private final long hitCount;
+        private final long negativeHitCount;
+        private final long missCount;
+        private final long coalescedCount;
+        private final long evictionCount;
+        private final long size;
+
+        Statistics(
+                final long hitCount, final long negativeHitCount, final long missCount, final long coalescedCount,
+                final long evictionCount, final long size) {
+            this.hitCount = hitCount;
+            this.negativeHitCount = negativeHitCount;
+            this.missCount = missCount;
+            this.coalescedCount = coalescedCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        /**
+         * Lookups answered with a cached location.
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Lookups answered from the cache of addresses that could not be resolved.
+         */
+        public long getNegativeHitCount() {
+            return negativeHitCount;
+        }
+
+        /**
+         * Lookups that were not cached, and so were delegated.
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Lookups that were not cached, but shared the result of a lookup of the same address already in progress.
+         */
+        public long getCoalescedCount() {
+            return coalescedCount;
+        }
+
+        /**
+         * Entries evicted because of size (not because they expired).
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            final long requestCount = hitCount + negativeHitCount + missCount + coalescedCount;
+            return requestCount == 0 ? 1.0 : (double) (hitCount + negativeHitCount) / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + ", negativeHits=" + negativeHitCount + ", misses=" + missCount
+                    + ", coalesced=" + coalescedCount + ", evictions=" + evictionCount + ", size=" + size;
+        }
+    }
+
+    // sentinel, compared by identity
+    private static final Location NOT_CACHED = new Location();
+
+    private final Cache<String, Location> locations;
+    private final Cache<String, Boolean> unresolved;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    // lookups in progress, by normalized address
+    private final ConcurrentMap<String, CompletableFuture<Location>> inFlight = new ConcurrentHashMap<>();
+
+    public LocationLookupCache(final long maximumSize, final long ttlMillis, final long negativeTtlMillis) {
+        this(maximumSize, ttlMillis, negativeTtlMillis, Ticker.systemTicker());
+    }
+
+    /**
+     * @param maximumSize - of the cache of resolved addresses; that of unresolved addresses is a tenth of this.  If
+     *                    <tt>0</tt> then nothing is cached (lookups of the same address are still coalesced).
+     */
+    public LocationLookupCache(
+            final long maximumSize, final long ttlMillis, final long negativeTtlMillis, final Ticker ticker) {
+        locations = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        unresolved = CacheBuilder.newBuilder()
+                // unresolved addresses should never crowd out resolved ones (nor be cached if nothing else is)
+                .maximumSize(maximumSize > 0 ? Math.max(maximumSize / 10, 1) : 0)
+                .expireAfterWrite(negativeTtlMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached location for the address, else delegates to the provided lookup and caches its result
+     * (including a <tt>null</tt> result, as a negative entry).
+     *
+     * <p>
+     *     If the same address is already being looked up by another thread, waits for that lookup instead.  An
+     *     exception thrown by the lookup is not cached, but is rethrown to every caller waiting on it.
+     * </p>
+     */
+    public Location get(final String address, final Function<String, Location> lookup) {
+        final String key = normalize(address);
+        final Location cached = getCached(key);
+        if(cached != NOT_CACHED) {
+            return cached;
+        }
+
+        final CompletableFuture<Location> flight = new CompletableFuture<>();
+        final CompletableFuture<Location> existing = inFlight.putIfAbsent(key, flight);
+        if(existing != null) {
+            coalescedCount.incrementAndGet();
+            return await(existing);
+        }
+        try {
+            // a lookup for this address may have completed (and been cached) since we checked
+            final Location cachedSince = getCached(key);
+            if(cachedSince != NOT_CACHED) {
+                flight.complete(cachedSince);
+                return cachedSince;
+            }
+            missCount.incrementAndGet();
+            final Location location = lookup.apply(address);
+            // cache before completing, so that later callers find it cached rather than in flight
+            put(address, location);
+            flight.complete(location);
+            return location;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * The cached location, <tt>null</tt> if cached as unresolved, else {@link #NOT_CACHED}.
+     */
+    private Location getCached(final String key) {
+        final Location cached = locations.getIfPresent(key);
+        if(cached != null) {
+            hitCount.incrementAndGet();
+            return cached;
+        }
+        if(unresolved.getIfPresent(key) != null) {
+            negativeHitCount.incrementAndGet();
+            return null;
+        }
+        return NOT_CACHED;
+    }
+
+    private static Location await(final CompletableFuture<Location> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            final Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    public void put(final String address, final Location location) {
+        final String key = normalize(address);
+        if(location != null) {
+            locations.put(key, location);
+            unresolved.invalidate(key);
+        } else {
+            unresolved.put(key, Boolean.TRUE);
+        }
+    }
+
+    public void invalidateAll() {
+        locations.invalidateAll();
+        unresolved.invalidateAll();
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(
+                hitCount.get(), negativeHitCount.get(), missCount.get(), coalescedCount.get(),
+                locations.stats().evictionCount() + unresolved.stats().evictionCount(),
+                locations.size() + unresolved.size());
+    }
+
+    /**
+     * Lower-cases (independent of locale), trims and collapses whitespace, and removes whitespace around commas;
+     * eg <tt>" 10  Downing Street , London"</tt> becomes <tt>"10 downing street,london"</tt>.
+     */
+    public static String normalize(final String address) {
+        final String lowerCase = address.toLowerCase(Locale.ROOT);
+        final StringBuilder buf = new StringBuilder(lowerCase.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < lowerCase.length(); i++) {
+            final char c = lowerCase.charAt(i);
+            if(Character.isWhitespace(c)) {
+                pendingSpace = buf.length() > 0;
+                continue;
+            }
+            if(c == ',') {
+                pendingSpace = false;
+            } else if(pendingSpace && buf.charAt(buf.length() - 1) != ',') {
+                buf.append(' ');
+            }
+            pendingSpace = false;
+            buf.append(c);
+        }
+        return buf.toString();
+    }
+
+}
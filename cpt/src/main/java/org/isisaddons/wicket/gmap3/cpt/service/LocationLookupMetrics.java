@@ -0,0 +1,175 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Metrics of the {@link LocationLookupService}: request counts and outcomes, latencies and concurrency (see
+ * {@link OperationMetrics}), cache statistics and HTTP connection pool usage.
+ *
+ * <p>
+ *     Available from {@link LocationLookupService#getMetrics()}, through JMX (see
+ *     {@link LocationLookupMetricsMXBean}), and to administrators through the <tt>LocationLookupMetricsMenu</tt>.
+ * </p>
+ */
+public class LocationLookupMetrics implements LocationLookupMetricsMXBean {
+
+    public static final String OBJECT_NAME = "org.isisaddons.wicket.gmap3:type=LocationLookupService";
+
+    private final OperationMetrics lookups = new OperationMetrics();
+    private final OperationMetrics reverseLookups = new OperationMetrics();
+    private final OperationMetrics fetches = new OperationMetrics();
+
+    private final Supplier<LocationLookupCache.Statistics> cacheStatistics;
+    private final Supplier<LocationLookupCache.Statistics> reverseCacheStatistics;
+    private final Supplier<PoolStats> poolStats;
+
+    /**
+     * @param cacheStatistics - may supply <tt>null</tt>, eg if the service has been shut down; likewise the others.
+     */
+    public LocationLookupMetrics(
+            final Supplier<LocationLookupCache.Statistics> cacheStatistics,
+            final Supplier<LocationLookupCache.Statistics> reverseCacheStatistics,
+            final Supplier<PoolStats> poolStats) {
+        this.cacheStatistics = cacheStatistics;
+        this.reverseCacheStatistics = reverseCacheStatistics;
+        this.poolStats = poolStats;
+    }
+
+    //region > operations
+
+    OperationMetrics lookups() {
+        return lookups;
+    }
+
+    OperationMetrics reverseLookups() {
+        return reverseLookups;
+    }
+
+    OperationMetrics fetches() {
+        return fetches;
+    }
+
+    @Override
+    public OperationMetrics.Statistics getLookups() {
+        return lookups.getStatistics();
+    }
+
+    @Override
+    public OperationMetrics.Statistics getReverseLookups() {
+        return reverseLookups.getStatistics();
+    }
+
+    @Override
+    public OperationMetrics.Statistics getFetches() {
+        return fetches.getStatistics();
+    }
+
+    @Override
+    public long[] getLatencyBucketBoundsMillis() {
+        return LatencyHistogram.getBucketBoundsMillis();
+    }
+
+    //endregion
+
+    //region > caches, connection pool
+
+    @Override
+    public LocationLookupCache.Statistics getCache() {
+        return cacheStatistics.get();
+    }
+
+    @Override
+    public LocationLookupCache.Statistics getReverseCache() {
+        return reverseCacheStatistics.get();
+    }
+
+    @Override
+    public int getConnectionsLeased() {
+        final PoolStats stats = poolStats.get();
+        return stats != null ? stats.getLeased() : 0;
+    }
+
+    @Override
+    public int getConnectionsPending() {
+        final PoolStats stats = poolStats.get();
+        return stats != null ? stats.getPending() : 0;
+    }
+
+    @Override
+    public int getConnectionsAvailable() {
+        final PoolStats stats = poolStats.get();
+        return stats != null ? stats.getAvailable() : 0;
+    }
+
+    @Override
+    public int getConnectionsMax() {
+        final PoolStats stats = poolStats.get();
+        return stats != null ? stats.getMax() : 0;
+    }
+
+    //endregion
+
+    //region > register, unregister
+
+    /**
+     * Registers with the platform MBean server.
+     *
+     * @return the name registered under, or <tt>null</tt> if it could not be (eg because another application in the
+     *          same JVM already has).
+     */
+    ObjectName register() {
+        try {
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException | RuntimeException e) {
+            // metrics are still available from the service
+            return null;
+        }
+    }
+
+    static void unregister(final ObjectName name) {
+        if(name == null) {
+            return;
+        }
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException | RuntimeException ignored) {
+            // unregistering anyway
+        }
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return "lookups: " + getLookups() + "; reverseLookups: " + getReverseLookups() + "; fetches: " + getFetches()
+                + "; cache: " + getCache() + "; reverseCache: " + getReverseCache()
+                + "; connections: leased=" + getConnectionsLeased() + ", pending=" + getConnectionsPending()
+                + ", available=" + getConnectionsAvailable() + ", max=" + getConnectionsMax();
+    }
+}
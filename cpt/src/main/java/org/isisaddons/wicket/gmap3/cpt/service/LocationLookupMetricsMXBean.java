@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+/**
+ * JMX view of the {@link LocationLookupMetrics}, registered (as
+ * <tt>org.isisaddons.wicket.gmap3:type=LocationLookupService</tt>) by the {@link LocationLookupService}.
+ *
+ * <p>
+ *     Being an MXBean, the statistics are exposed as open types (composite and tabular data), so that any JMX client
+ *     (eg jconsole) can read them without this module on its classpath.
+ * </p>
+ */
+public interface LocationLookupMetricsMXBean {
+
+    /**
+     * Lookups (of an address), whether answered from the cache or not.
+     */
+    OperationMetrics.Statistics getLookups();
+
+    /**
+     * Reverse lookups (of a location), whether answered from the cache or not.
+     */
+    OperationMetrics.Statistics getReverseLookups();
+
+    /**
+     * Lookups not answered by the cache (or store), so delegated to the geocoders.
+     */
+    OperationMetrics.Statistics getFetches();
+
+    LocationLookupCache.Statistics getCache();
+
+    LocationLookupCache.Statistics getReverseCache();
+
+    /**
+     * Pooled HTTP connections in use.
+     */
+    int getConnectionsLeased();
+
+    /**
+     * Requests waiting for a pooled HTTP connection.
+     */
+    int getConnectionsPending();
+
+    /**
+     * Pooled HTTP connections kept alive, but idle.
+     */
+    int getConnectionsAvailable();
+
+    int getConnectionsMax();
+
+    /**
+     * Upper (exclusive) bounds of the latency buckets (the last bucket being unbounded).
+     */
+    long[] getLatencyBucketBoundsMillis();
+
+}
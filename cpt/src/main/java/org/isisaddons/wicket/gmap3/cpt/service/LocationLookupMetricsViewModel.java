@@ -0,0 +1,216 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import org.apache.isis.applib.AbstractViewModel;
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.DomainObjectLayout;
+import org.apache.isis.applib.annotation.MemberOrder;
+import org.apache.isis.applib.annotation.Nature;
+import org.apache.isis.applib.annotation.PropertyLayout;
+
+/**
+ * The {@link LocationLookupMetrics} (as of when rendered), as shown to administrators by the
+ * {@link LocationLookupMetricsMenu}.
+ */
+@DomainObject(
+        nature = Nature.VIEW_MODEL
+)
+@DomainObjectLayout(
+        named = "Geocoding Metrics"
+)
+public class LocationLookupMetricsViewModel extends AbstractViewModel {
+
+    //region > title
+
+    public String title() {
+        return "Geocoding Metrics";
+    }
+
+    //endregion
+
+    //region > Viewmodel contract
+
+    @Override
+    public String viewModelMemento() {
+        return "metrics";
+    }
+
+    @Override
+    public void viewModelInit(final String memento) {
+        // nothing to do; always current
+    }
+
+    //endregion
+
+    //region > lookups
+
+    @MemberOrder(name = "Lookups", sequence = "1")
+    public long getLookupRequests() {
+        return lookups().getRequestCount();
+    }
+
+    @MemberOrder(name = "Lookups", sequence = "2")
+    public long getLookupsResolved() {
+        return lookups().getResolvedCount();
+    }
+
+    @MemberOrder(name = "Lookups", sequence = "3")
+    public long getLookupsUnresolved() {
+        return lookups().getUnresolvedCount();
+    }
+
+    @MemberOrder(name = "Lookups", sequence = "4")
+    public long getLookupsFailed() {
+        return lookups().getFailedCount();
+    }
+
+    @MemberOrder(name = "Lookups", sequence = "5")
+    @PropertyLayout(named = "In Flight (Peak)")
+    public String getLookupsInFlight() {
+        return inFlight(lookups());
+    }
+
+    @MemberOrder(name = "Lookups", sequence = "6")
+    @PropertyLayout(named = "Latency p50/p90/p99/max", typicalLength = 30)
+    public String getLookupLatency() {
+        return latency(lookups());
+    }
+
+    private OperationMetrics.Statistics lookups() {
+        return locationLookupService.getMetrics().getLookups();
+    }
+
+    //endregion
+
+    //region > fetches
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "1")
+    public long getFetchRequests() {
+        return fetches().getRequestCount();
+    }
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "2")
+    public long getFetchesFailed() {
+        return fetches().getFailedCount();
+    }
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "3")
+    @PropertyLayout(named = "In Flight (Peak)")
+    public String getFetchesInFlight() {
+        return inFlight(fetches());
+    }
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "4")
+    @PropertyLayout(named = "Latency p50/p90/p99/max", typicalLength = 30)
+    public String getFetchLatency() {
+        return latency(fetches());
+    }
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "5")
+    @PropertyLayout(multiLine = 3, typicalLength = 80)
+    public String getFailures() {
+        return fetches().getFailureCounts().toString();
+    }
+
+    @MemberOrder(name = "Geocoder Requests", sequence = "6")
+    @PropertyLayout(multiLine = 3, typicalLength = 80)
+    public String getLastFailure() {
+        return fetches().getLastFailure();
+    }
+
+    private OperationMetrics.Statistics fetches() {
+        return locationLookupService.getMetrics().getFetches();
+    }
+
+    //endregion
+
+    //region > reverse lookups
+
+    @MemberOrder(name = "Reverse Lookups", sequence = "1")
+    public long getReverseLookupRequests() {
+        return reverseLookups().getRequestCount();
+    }
+
+    @MemberOrder(name = "Reverse Lookups", sequence = "2")
+    public long getReverseLookupsFailed() {
+        return reverseLookups().getFailedCount();
+    }
+
+    @MemberOrder(name = "Reverse Lookups", sequence = "3")
+    @PropertyLayout(named = "Latency p50/p90/p99/max", typicalLength = 30)
+    public String getReverseLookupLatency() {
+        return latency(reverseLookups());
+    }
+
+    private OperationMetrics.Statistics reverseLookups() {
+        return locationLookupService.getMetrics().getReverseLookups();
+    }
+
+    //endregion
+
+    //region > caches, connections
+
+    @MemberOrder(name = "Resources", sequence = "1")
+    @PropertyLayout(multiLine = 2, typicalLength = 80)
+    public String getCache() {
+        return cache(locationLookupService.getMetrics().getCache());
+    }
+
+    @MemberOrder(name = "Resources", sequence = "2")
+    @PropertyLayout(multiLine = 2, typicalLength = 80)
+    public String getReverseCache() {
+        return cache(locationLookupService.getMetrics().getReverseCache());
+    }
+
+    @MemberOrder(name = "Resources", sequence = "3")
+    @PropertyLayout(named = "Connections leased/pending/available/max", typicalLength = 30)
+    public String getConnections() {
+        final LocationLookupMetrics metrics = locationLookupService.getMetrics();
+        return metrics.getConnectionsLeased() + " / " + metrics.getConnectionsPending()
+                + " / " + metrics.getConnectionsAvailable() + " / " + metrics.getConnectionsMax();
+    }
+
+    //endregion
+
+    //region > helpers
+
+    private static String inFlight(final OperationMetrics.Statistics statistics) {
+        return statistics.getInFlight() + " (" + statistics.getPeakInFlight() + ")";
+    }
+
+    private static String latency(final OperationMetrics.Statistics statistics) {
+        return statistics.getLatencyP50Millis() + " / " + statistics.getLatencyP90Millis()
+                + " / " + statistics.getLatencyP99Millis() + " / " + statistics.getLatencyMaxMillis() + " ms";
+    }
+
+    private static String cache(final LocationLookupCache.Statistics statistics) {
+        return statistics != null
+                ? String.format("hit rate %.1f%%; %s", statistics.getHitRate() * 100, statistics)
+                : "(not initialized)";
+    }
+
+    //endregion
+
+    //region > injected services
+
+    @javax.inject.Inject
+    LocationLookupService locationLookupService;
+
+    //endregion
+
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Outcome of looking up a single address, as returned by {@link LocationLookupService#lookupAll(java.util.Collection)}.
+ */
+public class LocationLookupResult {
+
+    public enum Status {
+        /**
+         * The address was resolved to a {@link #getLocation() location}.
+         */
+        RESOLVED,
+        /**
+         * The address could not be resolved (or was recently found not to be resolvable).
+         */
+        UNRESOLVED,
+        /**
+         * The lookup failed, eg the provider could not be reached; see {@link #getFailure()}.
+         */
+        FAILED
+    }
+
+    public static LocationLookupResult resolved(final String address, final Location location) {
+        return new LocationLookupResult(address, Status.RESOLVED, location, null);
+    }
+
+    public static LocationLookupResult unresolved(final String address) {
+        return new LocationLookupResult(address, Status.UNRESOLVED, null, null);
+    }
+
+    public static LocationLookupResult failed(final String address, final Throwable failure) {
+        return new LocationLookupResult(address, Status.FAILED, null, failure);
+    }
+
+    public static LocationLookupResult of(final String address, final Location location) {
+        return location != null ? resolved(address, location) : unresolved(address);
+    }
+
+    private final String address;
+    private final Status status;
+    private final Location location;
+    private final Throwable failure;
+
+    private LocationLookupResult(
+            final String address, final Status status, final Location location, final Throwable failure) {
+        this.address = address;
+        this.status = status;
+        this.location = location;
+        this.failure = failure;
+    }
+
+    /**
+     * The same outcome, for a different spelling of the address.
+     */
+    LocationLookupResult forAddress(final String address) {
+        return address.equals(this.address) ? this : new LocationLookupResult(address, status, location, failure);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isResolved() {
+        return status == Status.RESOLVED;
+    }
+
+    /**
+     * The location, or <tt>null</tt> unless {@link Status#RESOLVED resolved}.
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * The cause, or <tt>null</tt> unless {@link Status#FAILED failed}.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return address + ": " + status
+                + (location != null ? " " + location : "")
+                + (failure != null ? " (" + failure + ")" : "");
+    }
+}
@@ -17,71 +17,789 @@
 package org.isisaddons.wicket.gmap3.cpt.service;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.net.URLEncoder;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.ObjectName;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 
 import org.apache.isis.applib.annotation.DomainService;
 import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
+import org.apache.isis.core.commons.authentication.AuthenticationSession;
+import org.apache.isis.core.runtime.system.context.IsisContext;
 
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
 import org.isisaddons.wicket.gmap3.cpt.applib.Location;
 
+/**
+ * Looks up the {@link Location} of an address, consulting each of its {@link Geocoder}s in turn: a local
+ * {@link GazetteerGeocoder gazetteer} (if configured), any registered using {@link ServiceLoader}, and then
+ * {@link GoogleGeocoder Google's geocoding API} (unless disabled).
+ *
+ * <p>
+ *     Requests share a single pooled (keep-alive) HTTP client, created when the service is initialized and closed
+ *     when it is shut down.  The pool size and timeouts can be configured using the
+ *     <tt>isis.viewer.wicket.gmap3.lookup.*</tt> keys defined in {@link Gmap3ApplibConstants}.
+ * </p>
+ *
+ * <p>
+ *     Results (including addresses that could not be resolved) are held in a bounded {@link LocationLookupCache}.
+ *     Optionally, resolved addresses are also persisted to a {@link LocationLookupStore}, so that they survive
+ *     restarts.
+ * </p>
+ *
+ * <p>
+ *     Several (Google-compatible) endpoints can be configured, in which case lookups are
+ *     {@link HedgingGeocoder hedged} across them.  Calls to each are rate limited, and guarded by a circuit breaker
+ *     so that lookups fail fast (rather than waiting out the timeouts) while it is unavailable; see
+ *     {@link GuardedGeocoder}.
+ * </p>
+ *
+ * <p>
+ *     Request counts, outcomes and latencies (and cache and connection pool statistics) are available as
+ *     {@link #getMetrics() metrics}, also through JMX.
+ * </p>
+ *
+ * <p>
+ *     Concurrent lookups of the same address (eg from a bulk action, or many users) share a single request to the
+ *     geocoder.
+ * </p>
+ *
+ * <p>
+ *     Lookups can also be performed in the background, using {@link #lookupAsync(String)}, or in bulk, using
+ *     {@link #lookupAll(java.util.Collection)}.  Locations can be resolved back to addresses using
+ *     {@link #reverseLookup(Location)}, and addresses resolved before can be
+ *     {@link #suggestAddresses(String, int) suggested} as they are typed.
+ * </p>
+ */
 @DomainService
 public class LocationLookupService {
 
     // Greenwich Royal Observatory (unused)
     private static final Location DEFAULT_VALUE = new Location(51.4777479, 0.0d);
 
-    private static final String BASEURL = "http://maps.googleapis.com/maps/api/geocode/";
-    private static final String MODE = "xml";
-    private static final int TIMEOUT_SECONDS = 5;
+    // idle keep-alive connections are closed after this long
+    private static final long IDLE_CONNECTION_SECONDS = 30;
+
+    // new lookups show up in the suggestions after at most this long
+    private static final long SUGGESTIONS_REBUILD_MILLIS = 1000;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private volatile CloseableHttpClient httpClient;
+    private LocationLookupCache cache;
+    private ReverseLookupCache reverseCache;
+    private AddressSuggestions suggestions;
+    private LocationLookupStore store;
+    private ExecutorService executor;
+    private ExecutorService asyncExecutor;
+    private ExecutorService hedgeExecutor;
+    private List<Geocoder> geocoders;
+    private List<ReverseGeocoder> reverseGeocoders;
+    private ObjectName metricsName;
+    // (guarded by this)
+    private boolean initialized;
+
+    // kept across restarts (init after shutdown), as are the counts
+    private final LocationLookupMetrics metrics = new LocationLookupMetrics(
+            () -> httpClient != null ? cache.getStatistics() : null,
+            () -> httpClient != null ? reverseCache.getStatistics() : null,
+            this::poolStats);
 
+    //region > init, shutdown
+
+    @PostConstruct
     @Programmatic
-    public Location lookup(final String description) {
+    public synchronized void init(final Map<String, String> properties) {
+        if(httpClient != null) {
+            return;
+        }
 
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setSocketTimeout(TIMEOUT_SECONDS * 1000)
-                .setConnectTimeout(TIMEOUT_SECONDS * 1000)
+        // first, since this may fail
+        final GazetteerGeocoder gazetteer = loadGazetteer(properties);
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS,
+                        Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS_DEFAULT));
+        connectionManager.setDefaultMaxPerRoute(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS_PER_ROUTE,
+                        Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS_PER_ROUTE_DEFAULT));
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CONNECT_TIMEOUT_MILLIS,
+                                Gmap3ApplibConstants.LOOKUP_TIMEOUT_MILLIS_DEFAULT))
+                .setSocketTimeout(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_SOCKET_TIMEOUT_MILLIS,
+                                Gmap3ApplibConstants.LOOKUP_TIMEOUT_MILLIS_DEFAULT))
+                .setConnectionRequestTimeout(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_POOL_TIMEOUT_MILLIS,
+                                Gmap3ApplibConstants.LOOKUP_TIMEOUT_MILLIS_DEFAULT))
                 .build();
 
-        CloseableHttpClient httpClient = HttpClientBuilder.create()
+        cache = new LocationLookupCache(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_MAX_SIZE,
+                        Gmap3ApplibConstants.LOOKUP_CACHE_MAX_SIZE_DEFAULT),
+                TimeUnit.SECONDS.toMillis(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_TTL_SECONDS,
+                                Gmap3ApplibConstants.LOOKUP_CACHE_TTL_SECONDS_DEFAULT)),
+                TimeUnit.SECONDS.toMillis(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_NEGATIVE_TTL_SECONDS,
+                                Gmap3ApplibConstants.LOOKUP_CACHE_NEGATIVE_TTL_SECONDS_DEFAULT)));
+
+        reverseCache = new ReverseLookupCache(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_REVERSE_CELL_DECIMALS,
+                        Gmap3ApplibConstants.LOOKUP_REVERSE_CELL_DECIMALS_DEFAULT),
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_MAX_SIZE,
+                        Gmap3ApplibConstants.LOOKUP_CACHE_MAX_SIZE_DEFAULT),
+                TimeUnit.SECONDS.toMillis(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_TTL_SECONDS,
+                                Gmap3ApplibConstants.LOOKUP_CACHE_TTL_SECONDS_DEFAULT)),
+                TimeUnit.SECONDS.toMillis(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CACHE_NEGATIVE_TTL_SECONDS,
+                                Gmap3ApplibConstants.LOOKUP_CACHE_NEGATIVE_TTL_SECONDS_DEFAULT)));
+
+        store = openStore(properties);
+
+        executor = Executors.newFixedThreadPool(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_THREADS,
+                        Gmap3ApplibConstants.LOOKUP_THREADS_DEFAULT),
+                new ThreadFactoryBuilder().setNameFormat("gmap3-lookup-%d").setDaemon(true).build());
+
+        asyncExecutor = newAsyncExecutor(properties);
+
+        suggestions = new AddressSuggestions(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_SUGGESTIONS_MAX_ENTRIES,
+                        Gmap3ApplibConstants.LOOKUP_SUGGESTIONS_MAX_ENTRIES_DEFAULT),
+                SUGGESTIONS_REBUILD_MILLIS,
+                executor);
+
+        final CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
                 .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
                 .useSystemProperties()
                 .build();
 
+        hedgeExecutor = newHedgeExecutor(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS,
+                        Gmap3ApplibConstants.LOOKUP_MAX_CONNECTIONS_DEFAULT));
+
+        geocoders = newGeocoders(properties, gazetteer, client, hedgeExecutor);
+        reverseGeocoders = reverseGeocodersOf(geocoders);
+
+        if(booleanProperty(properties, Gmap3ApplibConstants.LOOKUP_JMX_ENABLED, true)) {
+            metricsName = metrics.register();
+        }
+
+        // last, since (being volatile) it publishes the rest
+        httpClient = client;
+        initialized = true;
+    }
+
+    @PreDestroy
+    @Programmatic
+    public synchronized void shutdown() {
+        if(httpClient == null) {
+            return;
+        }
+        try {
+            httpClient.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        } finally {
+            connectionManager.shutdown();
+            executor.shutdownNow();
+            asyncExecutor.shutdownNow();
+            hedgeExecutor.shutdownNow();
+            LocationLookupMetrics.unregister(metricsName);
+            httpClient = null;
+            metricsName = null;
+            connectionManager = null;
+            executor = null;
+            asyncExecutor = null;
+            hedgeExecutor = null;
+            geocoders = null;
+            reverseGeocoders = null;
+            closeStore();
+        }
+    }
+
+    private PoolStats poolStats() {
+        // (the volatile read first, so that the connection manager is visible)
+        if(httpClient == null) {
+            return null;
+        }
+        // read once, since (not holding the lock) this may race with shutdown, which clears it
+        final PoolingHttpClientConnectionManager manager = connectionManager;
+        return manager != null ? manager.getTotalStats() : null;
+    }
+
+    private static ExecutorService newAsyncExecutor(final Map<String, String> properties) {
+        if(booleanProperty(properties, Gmap3ApplibConstants.LOOKUP_ASYNC_VIRTUAL_THREADS, true)) {
+            try {
+                // Java 21+; looked up reflectively since we compile against earlier versions
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // not supported; fall through
+            }
+        }
+        return Executors.newFixedThreadPool(
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_ASYNC_THREADS,
+                        Gmap3ApplibConstants.LOOKUP_ASYNC_THREADS_DEFAULT),
+                new ThreadFactoryBuilder().setNameFormat("gmap3-lookup-async-%d").setDaemon(true).build());
+    }
+
+    private static ExecutorService newHedgeExecutor(final int maxConnections) {
+        final int threads = Math.max(maxConnections, 1);
+        // each request holds a connection, so no more threads than that; any further requests queue (as they would
+        // for a connection), and idle threads are let go
+        final ThreadPoolExecutor hedgeExecutor = new ThreadPoolExecutor(
+                threads, threads,
+                IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("gmap3-lookup-hedge-%d").setDaemon(true).build());
+        hedgeExecutor.allowCoreThreadTimeOut(true);
+        return hedgeExecutor;
+    }
+
+    private static GazetteerGeocoder loadGazetteer(final Map<String, String> properties) {
+        final String file = properties.get(Gmap3ApplibConstants.LOOKUP_GAZETTEER_FILE);
+        if(file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return GazetteerGeocoder.load(Paths.get(file.trim()));
+        } catch (IOException e) {
+            // unlike the store, this is a source of locations (perhaps the only one), so fail fast
+            throw new IllegalStateException("Could not load gazetteer " + file, e);
+        }
+    }
+
+    private static List<Geocoder> newGeocoders(
+            final Map<String, String> properties,
+            final GazetteerGeocoder gazetteer,
+            final CloseableHttpClient client,
+            final ExecutorService hedgeExecutor) {
+        final List<Geocoder> geocoders = new ArrayList<>();
+        if(gazetteer != null) {
+            geocoders.add(gazetteer);
+        }
+        for (final Geocoder geocoder : ServiceLoader.load(Geocoder.class)) {
+            geocoders.add(geocoder);
+        }
+        if(booleanProperty(properties, Gmap3ApplibConstants.LOOKUP_GOOGLE_ENABLED, true)) {
+            geocoders.add(newRemoteGeocoder(properties, client, hedgeExecutor));
+        }
+        return Collections.unmodifiableList(geocoders);
+    }
+
+    private static Geocoder newRemoteGeocoder(
+            final Map<String, String> properties,
+            final CloseableHttpClient client,
+            final ExecutorService hedgeExecutor) {
+        final List<GuardedGeocoder> providers = new ArrayList<>();
+        final String urls = properties.get(Gmap3ApplibConstants.LOOKUP_PROVIDERS);
+        for (final String url : Splitter.on(',').trimResults().omitEmptyStrings().split(Strings.nullToEmpty(urls))) {
+            providers.add(guard(new GoogleGeocoder(client, url), properties));
+        }
+        if(providers.isEmpty()) {
+            return guard(new GoogleGeocoder(client), properties);
+        }
+        if(providers.size() == 1) {
+            return providers.get(0);
+        }
+        return new HedgingGeocoder(
+                providers,
+                hedgeExecutor,
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_HEDGE_PERCENTILE,
+                        Gmap3ApplibConstants.LOOKUP_HEDGE_PERCENTILE_DEFAULT),
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_HEDGE_DELAY_MILLIS,
+                        Gmap3ApplibConstants.LOOKUP_HEDGE_DELAY_MILLIS_DEFAULT),
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_SOCKET_TIMEOUT_MILLIS,
+                        Gmap3ApplibConstants.LOOKUP_TIMEOUT_MILLIS_DEFAULT),
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_HEDGE_BUDGET_PERCENT,
+                        Gmap3ApplibConstants.LOOKUP_HEDGE_BUDGET_PERCENT_DEFAULT));
+    }
+
+    private static List<ReverseGeocoder> reverseGeocodersOf(final List<Geocoder> geocoders) {
+        final List<ReverseGeocoder> reverseGeocoders = new ArrayList<>();
+        for (final Geocoder geocoder : geocoders) {
+            if(geocoder instanceof ReverseGeocoder) {
+                reverseGeocoders.add((ReverseGeocoder) geocoder);
+            }
+        }
+        return Collections.unmodifiableList(reverseGeocoders);
+    }
+
+    private static GuardedGeocoder guard(final Geocoder geocoder, final Map<String, String> properties) {
+        return new GuardedGeocoder(
+                geocoder,
+                new TokenBucket(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_PER_SECOND,
+                                Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_PER_SECOND_DEFAULT),
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_BURST,
+                                Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_BURST_DEFAULT)),
+                intProperty(properties, Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_WAIT_MILLIS,
+                        Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_WAIT_MILLIS_DEFAULT),
+                new CircuitBreaker(
+                        intProperty(properties, Gmap3ApplibConstants.LOOKUP_CIRCUIT_BREAKER_FAILURES,
+                                Gmap3ApplibConstants.LOOKUP_CIRCUIT_BREAKER_FAILURES_DEFAULT),
+                        TimeUnit.SECONDS.toMillis(
+                                intProperty(properties, Gmap3ApplibConstants.LOOKUP_CIRCUIT_BREAKER_OPEN_SECONDS,
+                                        Gmap3ApplibConstants.LOOKUP_CIRCUIT_BREAKER_OPEN_SECONDS_DEFAULT))));
+    }
+
+    private static LocationLookupStore openStore(final Map<String, String> properties) {
+        final String file = properties.get(Gmap3ApplibConstants.LOOKUP_STORE_FILE);
+        if(file == null || file.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new LocationLookupStore(
+                    Paths.get(file.trim()),
+                    intProperty(properties, Gmap3ApplibConstants.LOOKUP_STORE_MAX_ENTRIES,
+                            Gmap3ApplibConstants.LOOKUP_STORE_MAX_ENTRIES_DEFAULT));
+        } catch (IOException e) {
+            // carry on without persisting
+            return null;
+        }
+    }
+
+    private void closeStore() {
+        if(store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        } finally {
+            store = null;
+        }
+    }
+
+    private CloseableHttpClient getHttpClient() {
+        final CloseableHttpClient client = httpClient;
+        return client != null ? client : initWithDefaults();
+    }
+
+    private void ensureInitialized() {
+        getHttpClient();
+    }
+
+    /**
+     * If used outside of Isis (eg in tests), where {@link #init(Map)} has not been called.
+     *
+     * @throws IllegalStateException if it has been called, but the service has since been {@link #shutdown() shut
+     *          down} (rather than starting it again, with default configuration and resources that nothing would ever
+     *          release).
+     */
+    private synchronized CloseableHttpClient initWithDefaults() {
+        if(httpClient == null && initialized) {
+            throw new IllegalStateException("LocationLookupService has been shut down");
+        }
+        init(Collections.<String, String>emptyMap());
+        return httpClient;
+    }
+
+    static int intProperty(final Map<String, String> properties, final String key, final int defaultValue) {
+        final String value = properties.get(key);
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    static boolean booleanProperty(
+            final Map<String, String> properties, final String key, final boolean defaultValue) {
+        final String value = properties.get(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    //endregion
+
+    /**
+     * @return the location, or <tt>null</tt> if the address could not be resolved, or the lookup failed (eg the
+     *          provider could not be reached, or is {@link GuardedGeocoder rejecting calls}); use
+     *          {@link #lookupAll(Collection)} to distinguish these.
+     */
+    @Programmatic
+    public Location lookup(final String description) {
+        if(description == null) {
+            return null;
+        }
+        ensureInitialized();
+        return lookupResult(description).getLocation();
+    }
+
+    @Programmatic
+    public LocationLookupCache.Statistics getCacheStatistics() {
+        ensureInitialized();
+        return cache.getStatistics();
+    }
+
+    /**
+     * Request counts and outcomes, latencies, concurrency, cache statistics etc; also available through JMX.
+     */
+    @Programmatic
+    public LocationLookupMetrics getMetrics() {
+        return metrics;
+    }
+
+    //region > suggestAddresses
+
+    /**
+     * Addresses resolved before that start with the prefix, those looked up most often first; eg to suggest as an
+     * address is typed (in an <tt>autoComplete</tt> supporting method).
+     *
+     * <p>
+     *     Answered from an in-memory index (bounded by {@link Gmap3ApplibConstants#LOOKUP_SUGGESTIONS_MAX_ENTRIES}),
+     *     without consulting the geocoders; and looking up an address suggested does not consult them either.
+     * </p>
+     */
+    @Programmatic
+    public List<String> suggestAddresses(final String prefix, final int limit) {
+        ensureInitialized();
+        return suggestions.suggest(prefix, limit);
+    }
+
+    //endregion
+
+    //region > lookupAsync
+
+    /**
+     * As {@link #lookup(String)}, but without blocking the calling thread; the lookup runs on a dedicated executor
+     * (using virtual threads if available, see {@link Gmap3ApplibConstants#LOOKUP_ASYNC_VIRTUAL_THREADS}).
+     *
+     * <p>
+     *     The future completes with <tt>null</tt> if the address could not be resolved.
+     * </p>
+     */
+    @Programmatic
+    public CompletableFuture<Location> lookupAsync(final String description) {
+        if(description == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ensureInitialized();
+        return CompletableFuture.supplyAsync(() -> lookup(description), asyncExecutor);
+    }
+
+    /**
+     * As {@link #lookupAsync(String)}, then passes the location (<tt>null</tt> if unresolved) to the consumer.
+     *
+     * <p>
+     *     The consumer always runs on the dedicated executor, never on the calling thread; not even if the lookup has
+     *     already completed (eg answered from the cache) by the time it is attached.
+     * </p>
+     *
+     * @return a future that completes once the consumer has returned.
+     */
+    @Programmatic
+    public CompletableFuture<Location> lookupAsync(final String description, final Consumer<Location> consumer) {
+        final CompletableFuture<Location> lookup = lookupAsync(description);
+        return lookup.thenApplyAsync(location -> {
+            consumer.accept(location);
+            return location;
+        }, asyncExecutor);
+    }
+
+    /**
+     * As {@link #lookupAsync(String)}, then applies the location to the (persistent) domain object, eg calling its
+     * <tt>setLocation(...)</tt>.
+     *
+     * <p>
+     *     Because the lookup completes after the current interaction has ended, the location is applied in a new
+     *     Isis session and transaction (running as the current user), in which the domain object is re-resolved from
+     *     its {@link Bookmark}.  The applier is not called if the domain object has since been deleted.
+     * </p>
+     *
+     * @return a future that completes once the location has been applied.
+     */
+    @Programmatic
+    public <T> CompletableFuture<Location> lookupAsync(
+            final String description,
+            final T domainObject,
+            final BiConsumer<T, Location> applier) {
+        final Bookmark bookmark = bookmarkService.bookmarkFor(domainObject);
+        final AuthenticationSession authenticationSession =
+                IsisContext.getSessionFactory().getCurrentSession().getAuthenticationSession();
+        // (in the background, since the calling thread may already have a session of its own)
+        return lookupAsync(description, location -> new ApplyLocationSessionTemplate<>(bookmarkService, bookmark, applier)
+                .execute(authenticationSession, location));
+    }
+
+    //endregion
+
+    //region > lookupAll
+
+    /**
+     * Looks up many addresses, concurrently (bounded by
+     * {@link Gmap3ApplibConstants#LOOKUP_THREADS}) and sharing the pooled HTTP client.
+     *
+     * <p>
+     *     Addresses that are the same once {@link LocationLookupCache#normalize(String) normalized} are looked up
+     *     only once.  A lookup that fails is reported as such in its {@link LocationLookupResult result}, without
+     *     affecting the others.
+     * </p>
+     *
+     * @return the result for each (distinct, non-<tt>null</tt>) address, in the order provided.
+     */
+    @Programmatic
+    public Map<String, LocationLookupResult> lookupAll(final Collection<String> addresses) {
+        ensureInitialized();
+
+        final Map<String, String> keyByAddress = new LinkedHashMap<>();
+        final Map<String, Future<LocationLookupResult>> resultByKey = new HashMap<>();
+        for (final String address : addresses) {
+            if(address == null || keyByAddress.containsKey(address)) {
+                continue;
+            }
+            final String key = LocationLookupCache.normalize(address);
+            keyByAddress.put(address, key);
+            if(!resultByKey.containsKey(key)) {
+                resultByKey.put(key, executor.submit(() -> lookupResult(address)));
+            }
+        }
+
+        final Map<String, LocationLookupResult> results = new LinkedHashMap<>();
+        for (final Map.Entry<String, String> entry : keyByAddress.entrySet()) {
+            final String address = entry.getKey();
+            results.put(address, await(address, resultByKey.get(entry.getValue())));
+        }
+        return results;
+    }
+
+    private static LocationLookupResult await(final String address, final Future<LocationLookupResult> future) {
         try {
-            String uri = BASEURL + MODE + "?address=" + URLEncoder.encode(description, "UTF-8") + "&sensor=false";
-            HttpGet httpGet = new HttpGet(uri);
-            CloseableHttpResponse response = httpClient.execute(httpGet);
+            return future.get().forAddress(address);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return LocationLookupResult.failed(address, e);
+        } catch (ExecutionException e) {
+            return LocationLookupResult.failed(address, e.getCause());
+        }
+    }
+
+    private LocationLookupResult lookupResult(final String address) {
+        final OperationMetrics lookups = metrics.lookups();
+        final long start = lookups.start();
+        try {
+            final Location location = cache.get(address, description -> {
+                try {
+                    return lookupStoredOrFetch(description);
+                } catch (Exception ex) {
+                    // not cached, and rethrown to any concurrent lookups of the same address
+                    throw new LookupFailedException(ex);
+                }
+            });
+            if(location != null) {
+                suggestions.record(address, location);
+                lookups.resolved(start);
+            } else {
+                lookups.unresolved(start);
+            }
+            return LocationLookupResult.of(address, location);
+        } catch (LookupFailedException ex) {
+            lookups.failed(start, ex.getCause());
+            return LocationLookupResult.failed(address, ex.getCause());
+        } catch (RuntimeException | Error ex) {
+            lookups.failed(start, ex);
+            throw ex;
+        }
+    }
+
+    private static class LookupFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LookupFailedException(final Exception cause) {
+            super(cause);
+        }
+    }
 
+    //endregion
+
+    private Location lookupStoredOrFetch(final String description) throws Exception {
+        // eg picked from the suggestions, but no longer cached
+        final Location suggested = suggestions.get(description);
+        if(suggested != null) {
+            return suggested;
+        }
+        final LocationLookupStore store = this.store;
+        if(store == null) {
+            return fetch(description);
+        }
+        final Location stored = store.get(description);
+        if(stored != null) {
+            return stored;
+        }
+        final Location location = fetch(description);
+        if(location != null) {
             try {
-                HttpEntity entity = response.getEntity();
-                return extractLocation(EntityUtils.toString(entity, "UTF-8"));
-            } finally {
-                response.close();
+                store.put(description, location);
+            } catch (IOException ignored) {
+                // still have the result
+            }
+        }
+        return location;
+    }
+
+    /**
+     * @return the location from the first geocoder to resolve the address, or <tt>null</tt> if none could.
+     * @throws Exception if none could, and (at least) one of them failed.
+     */
+    private Location fetch(final String description) throws Exception {
+        final OperationMetrics fetches = metrics.fetches();
+        final long start = fetches.start();
+        Exception failure = null;
+        for (final Geocoder geocoder : geocoders) {
+            try {
+                final Location location = geocoder.geocode(description);
+                if(location != null) {
+                    fetches.resolved(start);
+                    return location;
+                }
+            } catch (Exception ex) {
+                fetches.recordFailure(ex);
+                if(failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if(failure != null) {
+            fetches.failed(start, null);
+            throw failure;
+        }
+        fetches.unresolved(start);
+        return null;
+    }
+
+    //region > reverseLookup
+
+    /**
+     * The (human-readable) address of the location, eg to show alongside it.
+     *
+     * <p>
+     *     Uses those {@link #getGeocoders() geocoders} that are also {@link ReverseGeocoder}s, sharing the pooled
+     *     HTTP client (and timeouts, rate limits etc) with forward lookups.  Results are cached by
+     *     {@link ReverseLookupCache cell} (see {@link Gmap3ApplibConstants#LOOKUP_REVERSE_CELL_DECIMALS}), so that
+     *     rendering the same (or nearby) locations repeatedly, eg in a table, does not result in repeated requests.
+     * </p>
+     *
+     * @return the address, or <tt>null</tt> if the location could not be resolved, or the lookup failed.
+     */
+    @Programmatic
+    public String reverseLookup(final Location location) {
+        if(location == null) {
+            return null;
+        }
+        ensureInitialized();
+        final OperationMetrics reverseLookups = metrics.reverseLookups();
+        final long start = reverseLookups.start();
+        try {
+            final String address = reverseCache.get(location, cellCentre -> {
+                try {
+                    return reverseFetch(cellCentre);
+                } catch (Exception ex) {
+                    // not cached, and rethrown to any concurrent lookups of the same cell
+                    throw new LookupFailedException(ex);
+                }
+            });
+            if(address != null) {
+                reverseLookups.resolved(start);
+            } else {
+                reverseLookups.unresolved(start);
             }
-        } catch (Exception ex) {
+            return address;
+        } catch (LookupFailedException ex) {
+            // (already recorded, by reverseFetch)
+            reverseLookups.failed(start, null);
             return null;
+        } catch (RuntimeException | Error ex) {
+            reverseLookups.failed(start, ex);
+            throw ex;
+        }
+    }
+
+    @Programmatic
+    public LocationLookupCache.Statistics getReverseCacheStatistics() {
+        ensureInitialized();
+        return reverseCache.getStatistics();
+    }
+
+    /**
+     * @return the address from the first reverse geocoder to resolve the location, or <tt>null</tt> if none could.
+     * @throws Exception if none could, and (at least) one of them failed.
+     */
+    private String reverseFetch(final Location location) throws Exception {
+        Exception failure = null;
+        for (final ReverseGeocoder reverseGeocoder : reverseGeocoders) {
+            try {
+                final String address = reverseGeocoder.reverseGeocode(location);
+                if(address != null) {
+                    return address;
+                }
+            } catch (Exception ex) {
+                metrics.reverseLookups().recordFailure(ex);
+                if(failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if(failure != null) {
+            throw failure;
         }
+        return null;
     }
 
-    private Location extractLocation(final String xml) throws JDOMException, IOException {
-        final SAXBuilder builder = new SAXBuilder();
-        Document doc = builder.build(new StringReader(xml));
-        Element root = doc.getRootElement();
-        String lat = root.getChild("result").getChild("geometry").getChild("location").getChildTextTrim("lat");
-        String lon = root.getChild("result").getChild("geometry").getChild("location").getChildTextTrim("lng");
-        return Location.fromString(lat + ";" + lon);
+    //endregion
+
+    @Programmatic
+    public List<Geocoder> getGeocoders() {
+        ensureInitialized();
+        return geocoders;
     }
+
+    //region > injected services
+
+    @javax.inject.Inject
+    BookmarkService bookmarkService;
+
+    //endregion
 }
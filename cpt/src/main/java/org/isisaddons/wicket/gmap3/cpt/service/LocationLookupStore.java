@@ -0,0 +1,227 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationCodec;
+
+/**
+ * Disk-backed store of geocoded addresses, so that they survive restarts; used by {@link LocationLookupService}
+ * behind its in-memory {@link LocationLookupCache}.
+ *
+ * <p>
+ *     The file is an append-only log of <tt>address&lt;TAB&gt;location</tt> lines (addresses
+ *     {@link LocationLookupCache#normalize(String) normalized}, locations in {@link LocationCodec canonical} form).
+ *     An in-memory index is rebuilt from the log when the store is opened; later lines win, and unreadable lines
+ *     are skipped, as is a partial last line (eg following a crash mid-write).
+ * </p>
+ *
+ * <p>
+ *     The store is capped at a maximum number of entries, the oldest being dropped first.  Once the log holds more
+ *     than twice as many lines as there are live entries, it is compacted: the index is written to a temporary file
+ *     which then atomically replaces the log.
+ * </p>
+ */
+public class LocationLookupStore implements Closeable {
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private final Path file;
+    private final int maxEntries;
+
+    // insertion-ordered, so the eldest entry is the first to be dropped
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>();
+    private int lineCount;
+    private Writer writer;
+
+    public LocationLookupStore(final Path file, final int maxEntries) throws IOException {
+        this.file = file;
+        this.maxEntries = Math.max(maxEntries, 1);
+        final boolean endsWithPartialLine = endsWithPartialLine();
+        load(endsWithPartialLine);
+        if(needsCompaction() || endsWithPartialLine) {
+            compact();
+        } else {
+            openWriter();
+        }
+    }
+
+    //region > load
+
+    private void load(final boolean skipLastLine) throws IOException {
+        if(!Files.exists(file)) {
+            final Path parent = file.toAbsolutePath().getParent();
+            if(parent != null) {
+                Files.createDirectories(parent);
+            }
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            // each line is processed only once the next has been read, so that the last can be skipped
+            String pending = reader.readLine();
+            String line;
+            while(pending != null) {
+                line = reader.readLine();
+                if(line == null && skipLastLine) {
+                    break;
+                }
+                lineCount++;
+                load(pending);
+                pending = line;
+            }
+        }
+    }
+
+    private void load(final String line) {
+        final int separator = line.indexOf(FIELD_SEPARATOR);
+        if(separator <= 0) {
+            return;
+        }
+        final Location location = LocationCodec.parse(line.substring(separator + 1));
+        if(location == null) {
+            return;
+        }
+        putInIndex(line.substring(0, separator), location);
+    }
+
+    /**
+     * A partial last line (from a crash mid-write) would otherwise be joined to the next line appended.
+     */
+    private boolean endsWithPartialLine() throws IOException {
+        if(!Files.exists(file)) {
+            return false;
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if(size == 0) {
+                return false;
+            }
+            final ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.position(size - 1);
+            channel.read(lastByte);
+            return lastByte.get(0) != '\n';
+        }
+    }
+
+    //endregion
+
+    //region > get, put
+
+    public synchronized Location get(final String address) {
+        return index.get(LocationLookupCache.normalize(address));
+    }
+
+    public synchronized void put(final String address, final Location location) throws IOException {
+        final String key = LocationLookupCache.normalize(address);
+        if(writer == null || key.isEmpty() || location.equals(index.get(key))) {
+            return;
+        }
+        putInIndex(key, location);
+
+        final StringBuilder buf = new StringBuilder(key.length() + Location.typicalLength() + 2);
+        buf.append(key).append(FIELD_SEPARATOR);
+        LocationCodec.appendTo(buf, location.getLatitude(), location.getLongitude()).append('\n');
+        writer.write(buf.toString());
+        writer.flush();
+        lineCount++;
+
+        if(needsCompaction()) {
+            compact();
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private void putInIndex(final String key, final Location location) {
+        // re-inserting moves the entry to the end (most recent)
+        index.remove(key);
+        index.put(key, location);
+        final Iterator<String> eldest = index.keySet().iterator();
+        while(index.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    //endregion
+
+    //region > compaction
+
+    private boolean needsCompaction() {
+        return lineCount > 2 * Math.max(index.size(), 1) && lineCount > 16;
+    }
+
+    public synchronized void compact() throws IOException {
+        closeWriter();
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".compact");
+        try (BufferedWriter compacted = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            final StringBuilder buf = new StringBuilder();
+            for (final Map.Entry<String, Location> entry : index.entrySet()) {
+                buf.setLength(0);
+                buf.append(entry.getKey()).append(FIELD_SEPARATOR);
+                final Location location = entry.getValue();
+                LocationCodec.appendTo(buf, location.getLatitude(), location.getLongitude()).append('\n');
+                compacted.write(buf.toString());
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lineCount = index.size();
+        openWriter();
+    }
+
+    //endregion
+
+    //region > open, close
+
+    private void openWriter() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    private void closeWriter() throws IOException {
+        if(writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeWriter();
+    }
+
+    //endregion
+
+}
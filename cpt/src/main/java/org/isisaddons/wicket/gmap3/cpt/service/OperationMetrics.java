@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts, outcomes, concurrency and latencies of an operation (eg lookups) performed by the
+ * {@link LocationLookupService}; see {@link LocationLookupMetrics}.
+ *
+ * <p>
+ *     Each operation is {@link #start() started}, then ends as {@link #resolved(long) resolved},
+ *     {@link #unresolved(long) unresolved} or {@link #failed(long, Throwable) failed}.
+ * </p>
+ */
+public class OperationMetrics {
+
+    /**
+     * Snapshot of the metrics.
+     */
+    public static class Statistics {
+        private final long requestCount;
+        private final long resolvedCount;
+        private final long unresolvedCount;
+        private final long failedCount;
+        private final int inFlight;
+        private final int peakInFlight;
+        private final long latencyP50Millis;
+        private final long latencyP90Millis;
+        private final long latencyP99Millis;
+        private final long latencyMaxMillis;
+        private final long[] latencyBucketCounts;
+        private final Map<String, Long> failureCounts;
+        private final String lastFailure;
+
+        Statistics(final OperationMetrics metrics) {
+            requestCount = metrics.requestCount.get();
+            resolvedCount = metrics.resolvedCount.get();
+            unresolvedCount = metrics.unresolvedCount.get();
+            failedCount = metrics.failedCount.get();
+            inFlight = metrics.inFlight.get();
+            peakInFlight = metrics.peakInFlight.get();
+            latencyP50Millis = metrics.latencies.getPercentileMillis(50);
+            latencyP90Millis = metrics.latencies.getPercentileMillis(90);
+            latencyP99Millis = metrics.latencies.getPercentileMillis(99);
+            latencyMaxMillis = metrics.latencies.getMaxMillis();
+            latencyBucketCounts = metrics.latencies.getBucketCounts();
+            failureCounts = new TreeMap<>();
+            for (final Map.Entry<String, AtomicLong> entry : metrics.failureCounts.entrySet()) {
+                failureCounts.put(entry.getKey(), entry.getValue().get());
+            }
+            lastFailure = metrics.lastFailure;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getResolvedCount() {
+            return resolvedCount;
+        }
+
+        public long getUnresolvedCount() {
+            return unresolvedCount;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * Operations started but not yet ended.
+         */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getPeakInFlight() {
+            return peakInFlight;
+        }
+
+        public long getLatencyP50Millis() {
+            return latencyP50Millis;
+        }
+
+        public long getLatencyP90Millis() {
+            return latencyP90Millis;
+        }
+
+        public long getLatencyP99Millis() {
+            return latencyP99Millis;
+        }
+
+        public long getLatencyMaxMillis() {
+            return latencyMaxMillis;
+        }
+
+        /**
+         * Per bucket; see {@link LatencyHistogram#getBucketBoundsMillis()}.
+         */
+        public long[] getLatencyBucketCounts() {
+            return latencyBucketCounts.clone();
+        }
+
+        /**
+         * Failures (including those of a geocoder that were recovered from by consulting the next), by exception
+         * type.
+         */
+        public Map<String, Long> getFailureCounts() {
+            return failureCounts;
+        }
+
+        public String getLastFailure() {
+            return lastFailure;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requestCount + ", resolved=" + resolvedCount + ", unresolved=" + unresolvedCount
+                    + ", failed=" + failedCount + ", inFlight=" + inFlight + ", peakInFlight=" + peakInFlight
+                    + ", p50=" + latencyP50Millis + "ms, p90=" + latencyP90Millis + "ms, p99=" + latencyP99Millis
+                    + "ms, max=" + latencyMaxMillis + "ms, failures=" + failureCounts;
+        }
+    }
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong resolvedCount = new AtomicLong();
+    private final AtomicLong unresolvedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final ConcurrentMap<String, AtomicLong> failureCounts = new ConcurrentHashMap<>();
+    private volatile String lastFailure;
+
+    /**
+     * @return the start time, to pass when the operation ends.
+     */
+    public long start() {
+        requestCount.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        return System.nanoTime();
+    }
+
+    public void resolved(final long start) {
+        end(start);
+        resolvedCount.incrementAndGet();
+    }
+
+    public void unresolved(final long start) {
+        end(start);
+        unresolvedCount.incrementAndGet();
+    }
+
+    /**
+     * @param failure - recorded as per {@link #recordFailure(Throwable)}, unless <tt>null</tt> (eg because already
+     *                recorded).
+     */
+    public void failed(final long start, final Throwable failure) {
+        end(start);
+        failedCount.incrementAndGet();
+        if(failure != null) {
+            recordFailure(failure);
+        }
+    }
+
+    /**
+     * Counts the failure by type, without ending the operation; also for failures that do not (in themselves) fail
+     * the operation, eg of one geocoder when the next is then consulted.
+     */
+    public void recordFailure(final Throwable failure) {
+        failureCounts.computeIfAbsent(failure.getClass().getName(), type -> new AtomicLong()).incrementAndGet();
+        lastFailure = failure.toString();
+    }
+
+    private void end(final long start) {
+        inFlight.decrementAndGet();
+        latencies.record(System.nanoTime() - start);
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(this);
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Optionally implemented by a {@link Geocoder} that can also resolve a {@link Location} back to an address, as
+ * consulted (in turn) by {@link LocationLookupService#reverseLookup(Location)}.
+ *
+ * <p>
+ *     Implementations must be thread-safe.  There is no need for them to cache results; the service does that.
+ * </p>
+ */
+public interface ReverseGeocoder {
+
+    /**
+     * @return the (human-readable) address, or <tt>null</tt> if the location could not be resolved (so that the next
+     *          geocoder is consulted).
+     * @throws Exception if the lookup itself failed (the next geocoder is still consulted).
+     */
+    String reverseGeocode(Location location) throws Exception;
+
+    /**
+     * As {@link #reverseGeocode(Location)}, but abandoned (throwing) if {@link Cancellation#cancel() cancelled}.
+     *
+     * <p>
+     *     By default, just calls {@link #reverseGeocode(Location)}, which is then left to run its course.
+     * </p>
+     */
+    default String reverseGeocode(Location location, Cancellation cancellation) throws Exception {
+        return reverseGeocode(location);
+    }
+
+}
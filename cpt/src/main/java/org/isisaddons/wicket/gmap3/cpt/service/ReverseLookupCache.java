@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+
+/**
+ * Bounded (LRU) cache of reverse geocoded locations, used by {@link LocationLookupService#reverseLookup(Location)}.
+ *
+ * <p>
+ *     Locations are quantized to a grid of cells (of {@link #ReverseLookupCache(int, long, long, long) a given number}
+ *     of decimal places, eg 4 for cells of about 11m), so that nearby locations share an entry.  It is the centre of
+ *     the cell that is looked up, so that the cached address does not depend on which location in the cell happened
+ *     to be looked up first.
+ * </p>
+ *
+ * <p>
+ *     As for {@link LocationLookupCache}, locations that could not be resolved are cached separately, with their own
+ *     time-to-live, and concurrent misses for the same cell are coalesced.
+ * </p>
+ */
+public class ReverseLookupCache {
+
+    // thrown (and caught) to avoid caching an unresolved location as a positive entry; no stack trace needed
+    private static final Exception UNRESOLVED = new Exception("unresolved", null, false, false) {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private final int cellDecimals;
+    private final double cellsPerDegree;
+    private final Cache<Long, String> addresses;
+    private final Cache<Long, Boolean> unresolved;
+
+    public ReverseLookupCache(
+            final int cellDecimals, final long maximumSize, final long ttlMillis, final long negativeTtlMillis) {
+        this(cellDecimals, maximumSize, ttlMillis, negativeTtlMillis, Ticker.systemTicker());
+    }
+
+    /**
+     * @param cellDecimals - between 0 and 6 (about 1cm, the precision of {@link Location} anyway).
+     */
+    public ReverseLookupCache(
+            final int cellDecimals, final long maximumSize, final long ttlMillis, final long negativeTtlMillis,
+            final Ticker ticker) {
+        if(cellDecimals < 0 || cellDecimals > 6) {
+            throw new IllegalArgumentException("cellDecimals must be between 0 and 6: " + cellDecimals);
+        }
+        this.cellDecimals = cellDecimals;
+        this.cellsPerDegree = Math.pow(10, cellDecimals);
+        addresses = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        unresolved = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize > 0 ? Math.max(maximumSize / 10, 1) : 0)
+                .expireAfterWrite(negativeTtlMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached address for the location's cell, else delegates to the provided lookup (passing the centre
+     * of the cell) and caches its result (including a <tt>null</tt> result, as a negative entry).
+     *
+     * <p>
+     *     An exception thrown by the lookup is not cached, but is rethrown to every caller waiting on it.
+     * </p>
+     */
+    public String get(final Location location, final Function<Location, String> lookup) {
+        final long cell = cellOf(location);
+        if(unresolved.getIfPresent(cell) != null) {
+            return null;
+        }
+        try {
+            // (Guava coalesces concurrent loads of the same key)
+            return addresses.get(cell, () -> {
+                final String address = lookup.apply(centreOf(cell));
+                if(address == null) {
+                    unresolved.put(cell, Boolean.TRUE);
+                    throw UNRESOLVED;
+                }
+                return address;
+            });
+        } catch (ExecutionException ex) {
+            if(ex.getCause() == UNRESOLVED) {
+                return null;
+            }
+            throw new UncheckedExecutionException(ex.getCause());
+        } catch (UncheckedExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        } catch (ExecutionError ex) {
+            throw ex.getCause() instanceof Error ? (Error) ex.getCause() : ex;
+        }
+    }
+
+    public void put(final Location location, final String address) {
+        final long cell = cellOf(location);
+        if(address != null) {
+            addresses.put(cell, address);
+            unresolved.invalidate(cell);
+        } else {
+            unresolved.put(cell, Boolean.TRUE);
+        }
+    }
+
+    public void invalidateAll() {
+        addresses.invalidateAll();
+        unresolved.invalidateAll();
+    }
+
+    /**
+     * The (packed) cell containing the location: the latitude and longitude each rounded to
+     * {@link #getCellDecimals() the cell's decimal places}.
+     */
+    long cellOf(final Location location) {
+        final long latitudeCell = Math.round(location.getLatitude() * cellsPerDegree);
+        final long longitudeCell = Math.round(location.getLongitude() * cellsPerDegree);
+        // each fits in an int (at most 180 * 10^6)
+        return (latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+    }
+
+    Location centreOf(final long cell) {
+        final int latitudeCell = (int) (cell >> 32);
+        final int longitudeCell = (int) cell;
+        return new Location(latitudeCell / cellsPerDegree, longitudeCell / cellsPerDegree);
+    }
+
+    /**
+     * The centre of the cell containing the location (which is what is looked up).
+     */
+    public Location cellCentre(final Location location) {
+        return centreOf(cellOf(location));
+    }
+
+    public int getCellDecimals() {
+        return cellDecimals;
+    }
+
+    public LocationLookupCache.Statistics getStatistics() {
+        final CacheStats stats = addresses.stats();
+        final long loadCount = stats.loadCount();
+        // every caller that waited for another's load is also counted as a miss by Guava
+        final long coalescedCount = Math.max(stats.missCount() - loadCount, 0);
+        return new LocationLookupCache.Statistics(
+                stats.hitCount(), unresolved.stats().hitCount(), loadCount, coalescedCount,
+                stats.evictionCount() + unresolved.stats().evictionCount(),
+                addresses.size() + unresolved.size());
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Token bucket rate limiter, used by {@link GuardedGeocoder} to stay within a geocoding provider's quota.
+ *
+ * <p>
+ *     The bucket holds up to <tt>burst</tt> tokens, refilled at <tt>permitsPerSecond</tt>.  A caller that finds it
+ *     empty reserves the next token (so callers are served in order) and waits for it, unless that would take longer
+ *     than it is prepared to wait, in which case it is rejected immediately.
+ * </p>
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final Ticker ticker;
+
+    // may go negative, representing tokens reserved by waiting callers
+    private double tokens;
+    private long refilledAt;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public TokenBucket(final double permitsPerSecond, final int burst) {
+        this(permitsPerSecond, burst, Ticker.systemTicker());
+    }
+
+    public TokenBucket(final double permitsPerSecond, final int burst, final Ticker ticker) {
+        if(!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(burst, 1);
+        this.ticker = ticker;
+        this.tokens = this.burst;
+        this.refilledAt = ticker.read();
+    }
+
+    /**
+     * Takes a token, waiting up to the timeout for one to become available.
+     *
+     * @return whether a token was taken (else the caller was rejected, without waiting).
+     */
+    public boolean tryAcquire(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long waitNanos = reserve(unit.toNanos(timeout));
+        if(waitNanos < 0) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        if(waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        acquiredCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return how long to wait for the reserved token, or <tt>-1</tt> if that would exceed the timeout (in which
+     *          case nothing is reserved).
+     */
+    private synchronized long reserve(final long timeoutNanos) {
+        refill();
+        if(tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        final long waitNanos = (long) Math.ceil((1 - tokens) / permitsPerNano);
+        if(waitNanos > timeoutNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    private void refill() {
+        final long now = ticker.read();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+
+    /**
+     * Tokens currently available (negative if callers are waiting).
+     */
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "acquired=" + getAcquiredCount() + ", rejected=" + getRejectedCount()
+                + ", available=" + String.format("%.1f", getAvailableTokens());
+    }
+}
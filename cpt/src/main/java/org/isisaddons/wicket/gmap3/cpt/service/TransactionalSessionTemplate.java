@@ -0,0 +1,30 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.cpt.service;
+
+import org.apache.isis.core.runtime.sessiontemplate.AbstractIsisSessionTemplate;
+
+/**
+ * Runs the {@link Runnable} passed as the context from a background thread, in its own Isis session and transaction.
+ */
+class TransactionalSessionTemplate extends AbstractIsisSessionTemplate {
+
+    @Override
+    protected void doExecuteWithTransaction(final Object context) {
+        ((Runnable) context).run();
+    }
+}
@@ -16,32 +16,45 @@
  */
 package org.isisaddons.wicket.gmap3.cpt.ui;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 
-import com.google.common.base.Optional;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-
 import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.Component;
 import org.apache.wicket.Page;
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
 import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.json.JSONObject;
 import org.apache.wicket.behavior.AttributeAppender;
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
+import org.apache.wicket.request.IRequestParameters;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.request.resource.JavaScriptResourceReference;
 import org.apache.wicket.request.resource.ResourceReference;
+import org.apache.wicket.util.string.StringValue;
 import org.wicketstuff.gmap.GMap;
-import org.wicketstuff.gmap.api.GEvent;
-import org.wicketstuff.gmap.api.GEventHandler;
 import org.wicketstuff.gmap.api.GIcon;
 import org.wicketstuff.gmap.api.GLatLng;
 import org.wicketstuff.gmap.api.GMarker;
 import org.wicketstuff.gmap.api.GMarkerOptions;
+import org.wicketstuff.gmap.api.GOverlay;
 
+import org.apache.isis.applib.services.bookmark.Bookmark;
+import org.apache.isis.applib.services.bookmark.BookmarkService;
 import org.apache.isis.core.metamodel.adapter.ObjectAdapter;
 import org.apache.isis.core.runtime.system.context.IsisContext;
+import org.apache.isis.core.runtime.system.persistence.PersistenceSession;
 import org.apache.isis.viewer.wicket.model.models.EntityCollectionModel;
 import org.apache.isis.viewer.wicket.model.models.EntityModel;
 import org.apache.isis.viewer.wicket.model.models.ImageResourceCache;
@@ -51,7 +64,9 @@
 import org.apache.isis.viewer.wicket.ui.panels.PanelUtil;
 
 import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
-import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationBuffer;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationClusterer;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationCodec;
 import org.isisaddons.wicket.gmap3.cpt.applib.LocationDereferencingService;
 
 public class CollectionOfEntitiesAsLocatables extends
@@ -62,29 +77,130 @@ public class CollectionOfEntitiesAsLocatables extends
     private static final String INVISIBLE_CLASS = "collection-contents-as-locatables-invisible";
     private static final String ID_MAP = "map";
 
-    private final String apiKey;
+    private static final JavaScriptResourceReference SCRIPT =
+            new JavaScriptResourceReference(CollectionOfEntitiesAsLocatables.class, "CollectionOfEntitiesAsLocatables.js");
+
+    /**
+     * How the markers are rendered.
+     */
+    public enum Rendering {
+        /**
+         * {@link #CLUSTERED} if there are more locations than the cluster threshold, otherwise {@link #MARKERS}.
+         */
+        AUTO,
+        /**
+         * One marker (overlay) per object.
+         */
+        MARKERS,
+        /**
+         * Clusters within the viewport, requested by the client each time it is panned or zoomed.
+         */
+        CLUSTERED,
+        /**
+         * The map is rendered empty; the (clustered) markers within the viewport are then requested by the client
+         * each time it is panned or zoomed.
+         */
+        VIEWPORT,
+        /**
+         * All markers are written as a single JSON array, and created by the client; no overlay (nor any other
+         * component) is added per object.
+         */
+        JSON
+    }
 
+    private final String apiKey;
+    private final Rendering rendering;
+    private final int clusterThreshold;
+    private final LocationClusterer clusterer;
+    private final int maxMarkers;
+
+    /**
+     * The locations of the collection if {@link Rendering#CLUSTERED clustered}, {@link Rendering#VIEWPORT viewport}
+     * or {@link Rendering#JSON JSON} rendered, read when first needed (and again if the page has since been
+     * deserialized), rather than being held in (every version of) the page.
+     */
+    private transient LocationBuffer cachedLocations;
+
+    /**
+     * @param clusterThreshold - the number of locations above which the markers are clustered by the
+     *                         <tt>clusterer</tt>, if {@link Rendering#AUTO}.
+     * @param maxMarkers - the maximum number of markers (single or clusters) shown at a time within the viewport if
+     *                   clustered or viewport rendered; the largest are shown, and then those nearest its centre.
+     */
     public CollectionOfEntitiesAsLocatables(
             final String id,
             final String apiKey,
+            final Rendering rendering,
+            final int clusterThreshold,
+            final LocationClusterer clusterer,
+            final int maxMarkers,
             final EntityCollectionModel model) {
         super(id, model);
         this.apiKey = apiKey;
+        this.rendering = rendering;
+        this.clusterThreshold = clusterThreshold;
+        this.clusterer = clusterer;
+        this.maxMarkers = maxMarkers;
         buildGui();
     }
 
     private void buildGui() {
 
+        cachedLocations = null;
+
+        if(rendering == Rendering.VIEWPORT) {
+            // nothing is read until the client asks for the markers within its viewport
+            final GMap map = newMap(true);
+            addOrReplace(map);
+            map.add(new MarkersBehavior(Rendering.VIEWPORT));
+            return;
+        }
+
         final EntityCollectionModel model = getModel();
         final List<ObjectAdapter> adapterList = model.getObject();
 
-        final Optional<ObjectAdapter> firstIfAny = Iterables
-                .tryFind(adapterList, input -> {
-                    GLatLng latLng = asGLatLng((Locatable) input.getObject());
-                    return latLng != null;
-                });
+        final LocationBuffer locations = locationsOf(adapterList);
+
+        final boolean visible = !locations.isEmpty();
+        final GMap map = newMap(visible);
+
+        if(visible) {
+
+            // centre the map on the first object that has a location.
+            map.setCenter(new GLatLng(locations.getLatitude(0), locations.getLongitude(0)));
+        }
+
+        addOrReplace(map);
+
+        if(rendering == Rendering.CLUSTERED || rendering == Rendering.AUTO && locations.size() > clusterThreshold) {
+            // the markers (clusters) within the viewport are requested by the client-side script as it is moved
+            cachedLocations = locations;
+            map.add(new MarkersBehavior(Rendering.CLUSTERED));
+        } else if(rendering == Rendering.JSON) {
+            // the markers are written (as JSON) when the behavior renders its head
+            cachedLocations = locations;
+            map.add(new MarkersBehavior(Rendering.JSON));
+        } else {
+            addMarkers(map, adapterList, locations);
+            // a single behavior handles the clicks on all of the markers
+            map.add(new MarkersBehavior(Rendering.MARKERS));
+        }
+
+        fitBounds(map, locations);
+    }
+
+    /**
+     * Reads each location just once, keyed by position in the adapter list.
+     */
+    private static LocationBuffer locationsOf(final List<ObjectAdapter> adapterList) {
+        final LocationBuffer locations = new LocationBuffer(adapterList.size());
+        for (int i = 0; i < adapterList.size(); i++) {
+            locations.append(i, (Locatable) adapterList.get(i).getObject());
+        }
+        return locations;
+    }
 
-        final boolean visible = firstIfAny.isPresent();
+    private GMap newMap(final boolean visible) {
 
         final GMap map = new GMap(ID_MAP, apiKey) {
             @Override
@@ -100,78 +216,365 @@ protected void onComponentTag(final ComponentTag tag) {
         map.setScaleControlEnabled(true);
         map.setPanControlEnabled(true);
         map.setDoubleClickZoomEnabled(true);
+        return map;
+    }
 
-        if(firstIfAny.isPresent()) {
+    private void addMarkers(final GMap map, final List<ObjectAdapter> adapterList, final LocationBuffer locations) {
 
-            // centre the map on the first object that has a location.
-            final ObjectAdapter first = firstIfAny.get();
-            map.setCenter(asGLatLng((Locatable) first.getObject()));
+        final List<ObjectAdapter> dereferencedAdapters = dereferenceAll(adaptersOf(adapterList, locations));
+        final BookmarkService bookmarkService = bookmarkService();
+        for (int i = 0; i < locations.size(); i++) {
+            final ObjectAdapter adapter = adapterList.get(locations.getKey(i));
+
+            ObjectAdapter dereferencedAdapter = dereferencedAdapters.get(i);
+
+            final GLatLng gLatLng = new GLatLng(locations.getLatitude(i), locations.getLongitude(i));
+            final GMarker gMarker = createGMarker(
+                    map, locations.getKey(i), objectIdOf(bookmarkService, adapter), adapter, dereferencedAdapter,
+                    gLatLng);
+            map.addOverlay(gMarker);
         }
+    }
 
-        addOrReplace(map);
+    private static void fitBounds(final GMap map, final LocationBuffer locations) {
+        if(!locations.isEmpty()) {
+            // the corners of the bounding box fit the map just as well as every marker would
+            map.fitMarkers(Arrays.asList(
+                    new GLatLng(locations.getMinLatitude(), locations.getMinLongitude()),
+                    new GLatLng(locations.getMaxLatitude(), locations.getMaxLongitude())));
+        }
+    }
+
+    //region > clustering
+
+    /**
+     * Through which the client-side script (<tt>CollectionOfEntitiesAsLocatables.js</tt>) reports the (single)
+     * marker clicked, for every marker of the map.
+     *
+     * <p>
+     *     Also gives the script the markers (if {@link Rendering#JSON JSON} rendered), or answers its requests for
+     *     the clusters within the viewport (if {@link Rendering#CLUSTERED clustered} or
+     *     {@link Rendering#VIEWPORT viewport} rendered).
+     * </p>
+     */
+    private class MarkersBehavior extends AbstractDefaultAjaxBehavior {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Rendering rendering;
+
+        MarkersBehavior(final Rendering rendering) {
+            this.rendering = rendering;
+        }
+
+        @Override
+        public void renderHead(final Component component, final IHeaderResponse response) {
+            super.renderHead(component, response);
+            response.render(JavaScriptHeaderItem.forReference(SCRIPT));
+            final String mapId = component.getMarkupId();
+            final String script;
+            switch (rendering) {
+                case MARKERS:
+                    script = "Gmap3Locatables.initOverlays('" + mapId + "', '" + getCallbackUrl() + "', "
+                            + overlayKeysJson((GMap) component) + ");";
+                    break;
+                case JSON:
+                    script = "Gmap3Locatables.initMarkers('" + mapId + "', '" + getCallbackUrl() + "', "
+                            + markersJson() + ");";
+                    break;
+                default:
+                    script = "Gmap3Locatables.init('" + mapId + "', '" + getCallbackUrl() + "', "
+                            + (rendering == Rendering.VIEWPORT) + ");";
+                    break;
+            }
+            response.render(OnDomReadyHeaderItem.forScript(script));
+        }
+
+        @Override
+        protected void respond(final AjaxRequestTarget target) {
+            final IRequestParameters parameters = RequestCycle.get().getRequest().getRequestParameters();
+            final StringValue key = parameters.getParameterValue("key");
+            if(!key.isEmpty()) {
+                select(key.toInt(-1), parameters.getParameterValue("id").toString(""));
+                return;
+            }
+            final String mapId = getComponent().getMarkupId();
+            final LocationBuffer locations = cachedLocations();
+            if(!parameters.getParameterValue("fit").isEmpty()) {
+                target.appendJavaScript(
+                        "Gmap3Locatables.fit('" + mapId + "'" + (locations.isEmpty()
+                                ? ""
+                                : ", " + locations.getMinLatitude() + ", " + locations.getMinLongitude()
+                                        + ", " + locations.getMaxLatitude() + ", " + locations.getMaxLongitude())
+                                + ");");
+                return;
+            }
+            final int seq = parameters.getParameterValue("seq").toInt(0);
+            final int zoom = parameters.getParameterValue("zoom").toInt(0);
+            final List<LocationClusterer.Cluster> clusters = clusterer.cluster(
+                    locations, zoom,
+                    degrees(parameters, "s", -90),
+                    degrees(parameters, "w", -180),
+                    degrees(parameters, "n", 90),
+                    degrees(parameters, "e", 180),
+                    maxMarkers);
+            target.appendJavaScript(
+                    "Gmap3Locatables.showClusters('" + mapId + "', " + seq + ", " + clustersJson(clusters) + ");");
+        }
+    }
+
+    /**
+     * The coordinate (as sent by the client-side script) of the given parameter, parsed independently of the default
+     * locale; <tt>StringValue#toDouble</tt> would read it with the locale's decimal separator.
+     */
+    private static double degrees(final IRequestParameters parameters, final String name, final double defaultValue) {
+        return LocationCodec.parseDegrees(parameters.getParameterValue(name).toString(null), defaultValue);
+    }
+
+    /**
+     * The key and id (<tt>[key, id]</tt>) of each {@link LocatableMarker} overlay, by the overlay's (client-side) id,
+     * as a JSON object.
+     */
+    private static String overlayKeysJson(final GMap map) {
+        final StringBuilder buf = new StringBuilder("{");
+        for (final GOverlay overlay : map.getOverlays()) {
+            if(!(overlay instanceof LocatableMarker)) {
+                continue;
+            }
+            if(buf.length() > 1) {
+                buf.append(',');
+            }
+            final LocatableMarker marker = (LocatableMarker) overlay;
+            buf.append(JSONObject.quote(overlay.getId()))
+                    .append(":[").append(marker.getKey()).append(',').append(JSONObject.quote(marker.getObjectId()))
+                    .append(']');
+        }
+        return buf.append('}').toString();
+    }
 
-        addMarkers(map, adapterList);
+    private LocationBuffer cachedLocations() {
+        if(cachedLocations == null) {
+            cachedLocations = locationsOf(getModel().getObject());
+        }
+        return cachedLocations;
     }
 
-    private void addMarkers(final GMap map, List<ObjectAdapter> adapterList) {
+    /**
+     * The icons' URLs and the markers (<tt>[key, lat, lng, title, icon, id]</tt>, <tt>icon</tt> being an index into
+     * the icons) of every location, as a JSON object.
+     */
+    private String markersJson() {
+        final List<ObjectAdapter> adapterList = getModel().getObject();
+        final LocationBuffer locations = cachedLocations();
+        final Map<ResourceReference, Integer> iconIndexByResource = new LinkedHashMap<>();
+        final StringBuilder icons = new StringBuilder("[");
+        final StringBuilder markers = new StringBuilder("[");
+        final List<ObjectAdapter> dereferencedAdapters = dereferenceAll(adaptersOf(adapterList, locations));
+        final BookmarkService bookmarkService = bookmarkService();
+        for (int i = 0; i < locations.size(); i++) {
+            final int key = locations.getKey(i);
+            final ObjectAdapter adapter = adapterList.get(key);
+            final ObjectAdapter dereferencedAdapter = dereferencedAdapters.get(i);
+
+            final ResourceReference imageResource = determineImageResource(adapter);
+            Integer iconIndex = null;
+            if(imageResource != null) {
+                iconIndex = iconIndexByResource.get(imageResource);
+                if(iconIndex == null) {
+                    iconIndex = iconIndexByResource.size();
+                    iconIndexByResource.put(imageResource, iconIndex);
+                    if(icons.length() > 1) {
+                        icons.append(',');
+                    }
+                    icons.append(JSONObject.quote(urlFor(imageResource, new PageParameters()).toString()));
+                }
+            }
 
-        List<GLatLng> glatLngsToShow = Lists.newArrayList();
-        for (ObjectAdapter adapter : adapterList) {
+            if(markers.length() > 1) {
+                markers.append(',');
+            }
+            markers.append('[').append(key)
+                    .append(',').append(locations.getLatitude(i)).append(',').append(locations.getLongitude(i))
+                    .append(',').append(JSONObject.quote(dereferencedAdapter.titleString(null)))
+                    .append(',').append(iconIndex != null ? iconIndex.toString() : "null")
+                    .append(',').append(JSONObject.quote(objectIdOf(bookmarkService, adapter))).append(']');
+        }
+        return "{\"icons\":" + icons.append(']') + ",\"markers\":" + markers.append(']') + "}";
+    }
 
-            ObjectAdapter dereferencedAdapter = dereference(adapter);
+    /**
+     * The single markers (<tt>[lat, lng, key, title, id]</tt>) and the clusters (<tt>[lat, lng, count, south, west,
+     * north, east]</tt>), as two JSON arrays.
+     */
+    private String clustersJson(final List<LocationClusterer.Cluster> clusterList) {
+        final StringBuilder singles = new StringBuilder("[");
+        final StringBuilder clusters = new StringBuilder("[");
+        if(!clusterList.isEmpty()) {
+            final List<ObjectAdapter> adapterList = getModel().getObject();
+            final List<ObjectAdapter> singleAdapters = new ArrayList<>();
+            for (final LocationClusterer.Cluster cluster : clusterList) {
+                if(cluster.isSingle()) {
+                    singleAdapters.add(adapterList.get(cluster.getKey()));
+                }
+            }
+            final Iterator<ObjectAdapter> adapters = singleAdapters.iterator();
+            final Iterator<ObjectAdapter> dereferencedAdapters = dereferenceAll(singleAdapters).iterator();
+            final BookmarkService bookmarkService = bookmarkService();
+            for (final LocationClusterer.Cluster cluster : clusterList) {
+                if(cluster.isSingle()) {
+                    final String objectId = objectIdOf(bookmarkService, adapters.next());
+                    final ObjectAdapter adapter = dereferencedAdapters.next();
+                    if(singles.length() > 1) {
+                        singles.append(',');
+                    }
+                    singles.append('[').append(cluster.getLatitude()).append(',').append(cluster.getLongitude())
+                            .append(',').append(cluster.getKey())
+                            .append(',').append(JSONObject.quote(adapter.titleString(null)))
+                            .append(',').append(JSONObject.quote(objectId)).append(']');
+                } else {
+                    if(clusters.length() > 1) {
+                        clusters.append(',');
+                    }
+                    clusters.append('[').append(cluster.getLatitude()).append(',').append(cluster.getLongitude())
+                            .append(',').append(cluster.getCount())
+                            .append(',').append(cluster.getMinLatitude()).append(',').append(cluster.getMinLongitude())
+                            .append(',').append(cluster.getMaxLatitude()).append(',').append(cluster.getMaxLongitude())
+                            .append(']');
+                }
+            }
+        }
+        return singles.append("], ").append(clusters).append(']').toString();
+    }
 
-            final GMarker gMarker = createGMarker(map, adapter, dereferencedAdapter);
-            if(gMarker != null) {
-                map.addOverlay(gMarker);
-                addClickListener(gMarker, dereferencedAdapter);
-                glatLngsToShow.add(gMarker.getLatLng());
+    /**
+     * Opens the (dereferenced) object of the given key, ie its position within the collection, provided that it is
+     * still the object (of the given id) that was rendered there; otherwise (the collection having changed since), the
+     * object of that id is looked for elsewhere within the collection.
+     */
+    private void select(final int key, final String objectId) {
+        final List<ObjectAdapter> adapterList = getModel().getObject();
+        final BookmarkService bookmarkService = bookmarkService();
+        ObjectAdapter selected = key >= 0 && key < adapterList.size() ? adapterList.get(key) : null;
+        if(selected == null || !objectId.equals(objectIdOf(bookmarkService, selected))) {
+            if(objectId.isEmpty()) {
+                // without an id, can't be told apart from any other such object
+                return;
+            }
+            selected = null;
+            for (final ObjectAdapter adapter : adapterList) {
+                if(objectId.equals(objectIdOf(bookmarkService, adapter))) {
+                    selected = adapter;
+                    break;
+                }
+            }
+            if(selected == null) {
+                // no longer in the collection
+                return;
             }
         }
+        final ObjectAdapter adapter = dereferenceAll(Collections.singletonList(selected)).get(0);
+        final Class<? extends Page> pageClass = pageClassRegistry.getPageClass(PageType.ENTITY);
+        setResponsePage(pageClass, EntityModel.createPageParameters(adapter));
+    }
+
+    //endregion
+
+    /**
+     * The adapters of the locations, in order.
+     */
+    private static List<ObjectAdapter> adaptersOf(final List<ObjectAdapter> adapterList, final LocationBuffer locations) {
+        final List<ObjectAdapter> adapters = new ArrayList<>(locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            adapters.add(adapterList.get(locations.getKey(i)));
+        }
+        return adapters;
+    }
 
-        map.fitMarkers(glatLngsToShow);
+    private static BookmarkService bookmarkService() {
+        return IsisContext.getSessionFactory().getServicesInjector().lookupService(BookmarkService.class);
     }
 
-    private ObjectAdapter dereference(final ObjectAdapter adapterForLocatable) {
+    /**
+     * A stable id of the (undereferenced) object, by which its marker is identified as well as by its key (which
+     * is only its position within the collection); empty if it has none.
+     */
+    private static String objectIdOf(final BookmarkService bookmarkService, final ObjectAdapter adapter) {
+        final Bookmark bookmark = bookmarkService.bookmarkFor(adapter.getObject());
+        return bookmark != null ? bookmark.toString() : "";
+    }
+
+    /**
+     * Dereferences the adapters (in order) through the {@link LocationDereferencingService}, if there is one, with a
+     * single call; those not dereferenced are returned as is.
+     */
+    private static List<ObjectAdapter> dereferenceAll(final List<ObjectAdapter> adaptersForLocatables) {
         final LocationDereferencingService locationDereferencingService =
                 IsisContext.getSessionFactory().getServicesInjector().lookupService(LocationDereferencingService.class);
-        if(locationDereferencingService == null) {
-            return adapterForLocatable;
+        if(locationDereferencingService == null || adaptersForLocatables.isEmpty()) {
+            return adaptersForLocatables;
+        }
+        final List<Object> locatables = new ArrayList<>(adaptersForLocatables.size());
+        for (final ObjectAdapter adapter : adaptersForLocatables) {
+            locatables.add(adapter.getObject());
+        }
+        final List<Object> dereferencedObjects = locationDereferencingService.dereferenceAll(locatables);
+
+        final PersistenceSession persistenceSession =
+                IsisContext.getSessionFactory().getCurrentSession().getPersistenceSession();
+        final List<ObjectAdapter> dereferencedAdapters = new ArrayList<>(adaptersForLocatables.size());
+        for (int i = 0; i < adaptersForLocatables.size(); i++) {
+            final Object dereferencedObject = dereferencedObjects.get(i);
+            dereferencedAdapters.add(dereferencedObject != null
+                    ? persistenceSession.adapterFor(dereferencedObject)
+                    : adaptersForLocatables.get(i));
         }
-        final Object dereferencedObject = locationDereferencingService.dereference(adapterForLocatable.getObject());
-        return IsisContext.getSessionFactory().getCurrentSession().getPersistenceSession().adapterFor(dereferencedObject);
+        return dereferencedAdapters;
     }
 
-    private GMarker createGMarker(GMap map, ObjectAdapter adapter, final ObjectAdapter dereferencedAdapter) {
-        GMarkerOptions markerOptions = buildMarkerOptions(map, adapter, dereferencedAdapter);
-        if(markerOptions == null)
-            return null;
-        return new GMarker(markerOptions);
+    private GMarker createGMarker(GMap map, final int key, final String objectId, ObjectAdapter adapter, final ObjectAdapter dereferencedAdapter, final GLatLng gLatLng) {
+        GMarkerOptions markerOptions = buildMarkerOptions(map, adapter, dereferencedAdapter, gLatLng);
+        return new LocatableMarker(markerOptions, key, objectId);
     }
 
-    private GMarkerOptions buildMarkerOptions(GMap map, ObjectAdapter adapter, final ObjectAdapter dereferencedAdapter) {
-        
-        final Locatable locatable = (Locatable) adapter.getObject();
+    /**
+     * A marker that knows the key (position within the collection) and id of its object, so that clicks on it can be
+     * reported (by the client-side script) to the map's {@link MarkersBehavior}.
+     */
+    private static class LocatableMarker extends GMarker {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int key;
+        private final String objectId;
+
+        LocatableMarker(final GMarkerOptions options, final int key, final String objectId) {
+            super(options);
+            this.key = key;
+            this.objectId = objectId;
+        }
+
+        int getKey() {
+            return key;
+        }
+
+        String getObjectId() {
+            return objectId;
+        }
+    }
+
+    private GMarkerOptions buildMarkerOptions(GMap map, ObjectAdapter adapter, final ObjectAdapter dereferencedAdapter, final GLatLng gLatLng) {
         
         final ResourceReference imageResource = determineImageResource(adapter);
         final String urlFor = (String)urlFor(imageResource, new PageParameters());
         @SuppressWarnings("unused")
         final GIcon gicon = new GIcon(urlFor);
         
-        GLatLng gLatLng = asGLatLng(locatable);
-        if(gLatLng == null) {
-            return null;
-        }
         final GMarkerOptions markerOptions = new GMarkerOptions(
                 map, gLatLng, 
                 dereferencedAdapter.titleString(null)   ).draggable(false);
         return markerOptions;
     }
 
-    private GLatLng asGLatLng(Locatable locatable) {
-        final Location location = locatable.getLocation();
-        return location!=null?new GLatLng(location.getLatitude(), location.getLongitude()):null;
-    }
-
     private ResourceReference determineImageResource(ObjectAdapter adapter) {
         ResourceReference imageResource = null;
         if (adapter != null) {
@@ -180,22 +583,6 @@ private ResourceReference determineImageResource(ObjectAdapter adapter) {
         return imageResource;
     }
 
-    private void addClickListener(final GMarker gMarker, ObjectAdapter adapter) {
-        final Class<? extends Page> pageClass = pageClassRegistry
-                .getPageClass(PageType.ENTITY);
-        final PageParameters pageParameters = EntityModel.createPageParameters(
-                adapter);
-
-        gMarker.addListener(GEvent.click, new GEventHandler() {
-            private static final long serialVersionUID = 1L;
-
-            @Override
-            public void onEvent(AjaxRequestTarget target) {
-                setResponsePage(pageClass, pageParameters);
-            }
-        });
-    }
-
     @Override
     protected void onModelChanged() {
         buildGui();
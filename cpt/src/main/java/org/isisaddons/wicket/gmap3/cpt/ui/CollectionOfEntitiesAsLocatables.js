@@ -0,0 +1,224 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+/*
+ * Client-side markers of the map of a CollectionOfEntitiesAsLocatables.
+ *
+ * Each time the map settles, whether panned or zoomed, asks the server (through the map's Ajax behavior) for the
+ * clusters within the viewport at that zoom level; these are then drawn as markers showing their count.  Clicking a
+ * cluster zooms into it; clicking the marker of a single object reports its key (and id) to the server, which opens
+ * the object.
+ *
+ * If viewport rendered, first asks the server for the bounds to fit the map to.
+ *
+ * If JSON rendered, all of the markers are instead provided up front, as a single payload.
+ *
+ * Otherwise (one overlay per object, created by wicketstuff-gmap3), a single listener is attached to the overlays,
+ * reporting the key (and id) of the one clicked; there is no Ajax behavior per overlay.
+ */
+var Gmap3Locatables = (function() {
+
+    var states = {};
+
+    // how often, and how many times, to check whether the map has been initialized (ie for up to 30 seconds)
+    var WITH_MAP_INTERVAL_MILLIS = 50;
+    var WITH_MAP_MAX_ATTEMPTS = 600;
+
+    function withMap(mapId, callback, attempt) {
+        var wicketMap = Wicket.maps && Wicket.maps[mapId];
+        if(wicketMap && wicketMap.map) {
+            callback(wicketMap.map, wicketMap);
+        } else if((attempt || 0) < WITH_MAP_MAX_ATTEMPTS && document.getElementById(mapId)) {
+            // the map is initialized by wicketstuff-gmap3's own script, which may not have run yet; gives up if it
+            // never does (eg the Google script failed to load), or once the component has been replaced
+            setTimeout(function() { withMap(mapId, callback, (attempt || 0) + 1); }, WITH_MAP_INTERVAL_MILLIS);
+        }
+    }
+
+    function init(mapId, callbackUrl, viewport) {
+        withMap(mapId, function(map) {
+            var state = states[mapId] = {
+                mapId: mapId, map: map, callbackUrl: callbackUrl, viewport: viewport, fitted: !viewport,
+                markers: [], seq: 0
+            };
+            google.maps.event.addListener(map, 'idle', function() { request(state); });
+            if(viewport) {
+                Wicket.Ajax.get({ u: callbackUrl, ep: { fit: true } });
+            } else if(map.getZoom() !== undefined) {
+                // the map may already have settled
+                request(state);
+            }
+        });
+    }
+
+    function initOverlays(mapId, callbackUrl, keysByOverlayId) {
+        withMap(mapId, function(map, wicketMap) {
+            var state = states[mapId] = { mapId: mapId, map: map, callbackUrl: callbackUrl, markers: [] };
+            // [key, id] by overlay id
+            for(var overlayId in keysByOverlayId) {
+                if(keysByOverlayId.hasOwnProperty(overlayId) && wicketMap.overlays[overlayId]) {
+                    var keyAndId = keysByOverlayId[overlayId];
+                    addSelectListener(state, wicketMap.overlays[overlayId], keyAndId[0], keyAndId[1]);
+                }
+            }
+        });
+    }
+
+    function addSelectListener(state, marker, key, id) {
+        google.maps.event.addListener(marker, 'click', function() { select(state, key, id); });
+    }
+
+    function initMarkers(mapId, callbackUrl, payload) {
+        withMap(mapId, function(map) {
+            var state = states[mapId] = { mapId: mapId, map: map, callbackUrl: callbackUrl, markers: [] };
+            var icons = [];
+            for(var i = 0; i < payload.icons.length; i++) {
+                icons.push({ url: payload.icons[i], scaledSize: new google.maps.Size(24, 24) });
+            }
+            for(var j = 0; j < payload.markers.length; j++) {
+                addMarker(state, payload.markers[j], icons);
+            }
+        });
+    }
+
+    function addMarker(state, entry, icons) {
+        // [key, lat, lng, title, icon, id]
+        var marker = new google.maps.Marker({
+            map: state.map,
+            position: new google.maps.LatLng(entry[1], entry[2]),
+            title: entry[3],
+            icon: entry[4] !== null ? icons[entry[4]] : undefined
+        });
+        addSelectListener(state, marker, entry[0], entry[5]);
+        state.markers.push(marker);
+    }
+
+    function request(state) {
+        if(!state.fitted) {
+            return;
+        }
+        var zoom = state.map.getZoom();
+        if(zoom === undefined) {
+            return;
+        }
+        var bounds = state.map.getBounds();
+        if(!bounds) {
+            return;
+        }
+        var parameters = {
+            zoom: zoom,
+            s: bounds.getSouthWest().lat(),
+            w: bounds.getSouthWest().lng(),
+            n: bounds.getNorthEast().lat(),
+            e: bounds.getNorthEast().lng(),
+            seq: ++state.seq
+        };
+        // while one request is outstanding, only the latest of any others is then sent
+        Wicket.Ajax.get({ u: state.callbackUrl, ep: parameters, ch: 'gmap3-' + state.mapId + '|d' });
+    }
+
+    function fit(mapId, south, west, north, east) {
+        var state = states[mapId];
+        if(!state) {
+            return;
+        }
+        state.fitted = true;
+        if(south === undefined) {
+            // nothing to show
+            return;
+        }
+        var bounds = new google.maps.LatLngBounds(
+            new google.maps.LatLng(south, west), new google.maps.LatLng(north, east));
+        if(state.map.getBounds() && state.map.getBounds().equals(bounds)) {
+            request(state);
+        } else {
+            state.map.fitBounds(bounds);
+        }
+    }
+
+    function clear(state) {
+        for(var i = 0; i < state.markers.length; i++) {
+            state.markers[i].setMap(null);
+        }
+        state.markers = [];
+    }
+
+    function select(state, key, id) {
+        // the server checks the id against the object now at that position, in case the collection has changed since
+        Wicket.Ajax.get({ u: state.callbackUrl, ep: { key: key, id: id } });
+    }
+
+    function addSingle(state, single) {
+        // [lat, lng, key, title, id]
+        var marker = new google.maps.Marker({
+            map: state.map,
+            position: new google.maps.LatLng(single[0], single[1]),
+            title: single[3]
+        });
+        addSelectListener(state, marker, single[2], single[4]);
+        state.markers.push(marker);
+    }
+
+    function addCluster(state, cluster) {
+        // [lat, lng, count, south, west, north, east]
+        var count = cluster[2];
+        var marker = new google.maps.Marker({
+            map: state.map,
+            position: new google.maps.LatLng(cluster[0], cluster[1]),
+            title: count + ' objects',
+            label: { text: String(count), color: '#ffffff', fontSize: '11px' },
+            icon: {
+                path: google.maps.SymbolPath.CIRCLE,
+                scale: 12 + 4 * Math.log(count) / Math.LN10,
+                fillColor: '#1f6fb2',
+                fillOpacity: 0.85,
+                strokeColor: '#ffffff',
+                strokeWeight: 2
+            },
+            zIndex: google.maps.Marker.MAX_ZINDEX + count
+        });
+        google.maps.event.addListener(marker, 'click', function() {
+            state.map.fitBounds(new google.maps.LatLngBounds(
+                new google.maps.LatLng(cluster[3], cluster[4]),
+                new google.maps.LatLng(cluster[5], cluster[6])));
+        });
+        state.markers.push(marker);
+    }
+
+    function showClusters(mapId, seq, singles, clusters) {
+        var state = states[mapId];
+        if(!state || seq !== state.seq) {
+            // superseded by a later request
+            return;
+        }
+        clear(state);
+        for(var i = 0; i < singles.length; i++) {
+            addSingle(state, singles[i]);
+        }
+        for(var j = 0; j < clusters.length; j++) {
+            addCluster(state, clusters[j]);
+        }
+    }
+
+    return {
+        init: init,
+        initOverlays: initOverlays,
+        initMarkers: initMarkers,
+        fit: fit,
+        showClusters: showClusters
+    };
+})();
@@ -20,10 +20,13 @@
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.Locale;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.isis.core.commons.config.IsisConfiguration;
 import org.apache.isis.core.metamodel.spec.ObjectSpecification;
@@ -36,11 +39,14 @@
 
 import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
 import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationClusterer;
 
 public class CollectionOfEntitiesAsLocatablesFactory extends ComponentFactoryAbstract implements CollectionContentsAsFactory {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOG = LoggerFactory.getLogger(CollectionOfEntitiesAsLocatablesFactory.class);
+
     private static final String ID_MAP = "map";
 
     private boolean determinedWhetherInternetReachable;
@@ -102,10 +108,34 @@ private static boolean isInternetReachable()
 
     public Component createComponent(String id, IModel<?> model) {
 
-        final String apiKey = getConfiguration().getString(Gmap3ApplibConstants.API_KEY);
+        final IsisConfiguration configuration = getConfiguration();
+        final String apiKey = configuration.getString(Gmap3ApplibConstants.API_KEY);
+        final CollectionOfEntitiesAsLocatables.Rendering rendering =
+                renderingOf(configuration.getString(Gmap3ApplibConstants.RENDERING, "auto"));
+        final int clusterThreshold = configuration.getInteger(
+                Gmap3ApplibConstants.CLUSTER_THRESHOLD, Gmap3ApplibConstants.CLUSTER_THRESHOLD_DEFAULT);
+        final LocationClusterer clusterer = new LocationClusterer(
+                configuration.getInteger(
+                        Gmap3ApplibConstants.CLUSTER_GRID_SIZE_PIXELS, LocationClusterer.DEFAULT_GRID_SIZE_PIXELS),
+                LocationClusterer.DEFAULT_MAX_ZOOM);
+        final int maxMarkers = configuration.getInteger(
+                Gmap3ApplibConstants.MAX_MARKERS, Gmap3ApplibConstants.MAX_MARKERS_DEFAULT);
 
         EntityCollectionModel collectionModel = (EntityCollectionModel) model;
-        return new CollectionOfEntitiesAsLocatables(id, apiKey, collectionModel);
+        return new CollectionOfEntitiesAsLocatables(
+                id, apiKey, rendering, clusterThreshold, clusterer, maxMarkers, collectionModel);
+    }
+
+    /**
+     * The configured rendering, or {@link CollectionOfEntitiesAsLocatables.Rendering#AUTO} if not recognized.
+     */
+    private static CollectionOfEntitiesAsLocatables.Rendering renderingOf(final String value) {
+        try {
+            return CollectionOfEntitiesAsLocatables.Rendering.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown {} '{}'; using 'auto'", Gmap3ApplibConstants.RENDERING, value);
+            return CollectionOfEntitiesAsLocatables.Rendering.AUTO;
+        }
     }
 
     protected SpecificationLoader getSpecificationLoader() {
@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.applib;
+
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationBuffer;
+
+public class LocationBufferTest {
+
+    @Test
+    public void whenEmpty() {
+        final LocationBuffer buffer = new LocationBuffer();
+        assertThat(buffer.isEmpty(), is(true));
+        assertThat(buffer.getSouthWest(), is(nullValue()));
+        assertThat(buffer.getNorthEast(), is(nullValue()));
+    }
+
+    @Test
+    public void appendAndGrow() {
+        final LocationBuffer buffer = new LocationBuffer(1);
+        for (int i = 0; i < 100; i++) {
+            buffer.append(i * 2, i, -i);
+        }
+        assertThat(buffer.size(), is(100));
+        assertThat(buffer.getKey(42), is(84));
+        assertThat(buffer.getLatitude(42), is(42.0));
+        assertThat(buffer.getLongitude(42), is(-42.0));
+        assertThat(buffer.getSouthWest(), is(new Location(0, -99)));
+        assertThat(buffer.getNorthEast(), is(new Location(99, 0)));
+    }
+
+    @Test
+    public void appendAll_locatables_skipsThoseWithoutLocation() {
+        final List<Locatable> locatables = Arrays.asList(
+                locatable(new Location(51.5, -0.1)),
+                locatable(null),
+                locatable(new Location(48.8, 2.3)));
+
+        final LocationBuffer buffer = new LocationBuffer().appendAll(locatables);
+
+        assertThat(buffer.size(), is(2));
+        assertThat(buffer.getKey(0), is(0));
+        assertThat(buffer.getKey(1), is(2));
+        assertThat(buffer.getSouthWest(), is(new Location(48.8, -0.1)));
+        assertThat(buffer.getNorthEast(), is(new Location(51.5, 2.3)));
+    }
+
+    @Test
+    public void append_usesPrimitiveAccessorsIfOverridden() {
+        final LocationBuffer buffer = new LocationBuffer();
+
+        assertThat(buffer.append(0, new PrimitiveLocatable(Double.NaN, Double.NaN)), is(false));
+        assertThat(buffer.append(1, new PrimitiveLocatable(51.5, -0.1)), is(true));
+
+        assertThat(buffer.size(), is(1));
+        assertThat(buffer.getLocation(0), is(new Location(51.5, -0.1)));
+    }
+
+    @Test
+    public void appendAll_arraysAndBuffers() {
+        final LocationBuffer first = new LocationBuffer()
+                .appendAll(10, new double[] { 1, 2, 3 }, new double[] { 4, 5, 6 }, 1, 2);
+        final LocationBuffer buffer = new LocationBuffer().append(0, -1, -1).appendAll(first);
+
+        assertThat(buffer.size(), is(3));
+        assertThat(buffer.getKey(1), is(10));
+        assertThat(buffer.getLocation(2), is(new Location(3, 6)));
+        assertThat(buffer.getSouthWest(), is(new Location(-1, -1)));
+        assertThat(buffer.getNorthEast(), is(new Location(3, 6)));
+    }
+
+    @Test
+    public void forEach() {
+        final LocationBuffer buffer = new LocationBuffer().append(7, 1, 2).append(9, 3, 4);
+        final double[] sum = new double[1];
+        buffer.forEach((key, latitude, longitude) -> sum[0] += key + latitude + longitude);
+        assertThat(sum[0], is(26.0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        new LocationBuffer().append(0, 1, 2).getLatitude(1);
+    }
+
+    private static Locatable locatable(final Location location) {
+        return () -> location;
+    }
+
+    private static class PrimitiveLocatable implements Locatable {
+        private final double latitude;
+        private final double longitude;
+
+        PrimitiveLocatable(final double latitude, final double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        @Override
+        public Location getLocation() {
+            throw new AssertionError("should use primitive accessors");
+        }
+
+        @Override
+        public boolean hasLocation() {
+            return !Double.isNaN(latitude);
+        }
+
+        @Override
+        public double getLatitude() {
+            return latitude;
+        }
+
+        @Override
+        public double getLongitude() {
+            return longitude;
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.applib;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationBuffer;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationClusterer;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationClusterer.Cluster;
+
+public class LocationClustererTest {
+
+    private final LocationClusterer clusterer = new LocationClusterer(60, 17);
+
+    @Test
+    public void nearbyPointsClusterWhenZoomedOut() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 51.50, -0.12)   // london
+                .append(1, 51.51, -0.13)
+                .append(2, 48.85, 2.35);   // paris
+
+        final List<Cluster> atZoom3 = clusterer.cluster(locations, 3);
+        assertThat(atZoom3.size(), is(1));
+        assertThat(atZoom3.get(0).getCount(), is(3));
+        assertThat(atZoom3.get(0).getKey(), is(0));
+
+        final List<Cluster> atZoom8 = clusterer.cluster(locations, 8);
+        assertThat(atZoom8.size(), is(2));
+        final Cluster london = atZoom8.get(0);
+        assertThat(london.getCount(), is(2));
+        assertThat(london.getLatitude(), closeTo(51.505, 1e-9));
+        assertThat(london.getLongitude(), closeTo(-0.125, 1e-9));
+        assertThat(london.getMinLatitude(), is(51.50));
+        assertThat(london.getMaxLongitude(), is(-0.12));
+        final Cluster paris = atZoom8.get(1);
+        assertThat(paris.isSingle(), is(true));
+        assertThat(paris.getKey(), is(2));
+    }
+
+    @Test
+    public void countsAddUpAtEveryZoom() {
+        final LocationBuffer locations = new LocationBuffer();
+        for (int i = 0; i < 10000; i++) {
+            locations.append(i, -80 + (i * 7919 % 16000) / 100.0, -180 + (i * 104729 % 36000) / 100.0);
+        }
+        int previous = 0;
+        for (int zoom = 0; zoom <= 18; zoom++) {
+            final List<Cluster> clusters = clusterer.cluster(locations, zoom);
+            int total = 0;
+            for (final Cluster cluster : clusters) {
+                total += cluster.getCount();
+            }
+            assertThat(total, is(10000));
+            assertThat(clusters.size() >= previous, is(true));
+            previous = clusters.size();
+        }
+        assertThat(previous, is(10000));
+    }
+
+    @Test
+    public void notClusteredBeyondMaxZoom() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 51.5, -0.1)
+                .append(1, 51.5, -0.1);
+
+        assertThat(clusterer.cluster(locations, 17).size(), is(1));
+        assertThat(clusterer.cluster(locations, 18).size(), is(2));
+    }
+
+    @Test
+    public void polesAndAntimeridian() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 90, 180)
+                .append(1, -90, -180);
+
+        final List<Cluster> clusters = clusterer.cluster(locations, 0);
+        assertThat(clusters.size(), is(2));
+    }
+
+    @Test
+    public void withinBounds() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 51.5, -0.1)     // london
+                .append(1, 48.9, 2.3)      // paris
+                .append(2, -36.8, 174.8)   // auckland
+                .append(3, 21.3, -157.9);  // honolulu
+
+        final List<Cluster> europe = clusterer.cluster(locations, 10, 45, -5, 55, 5);
+        assertThat(europe.size(), is(2));
+        assertThat(europe.get(0).getKey(), is(0));
+        assertThat(europe.get(1).getKey(), is(1));
+
+        final List<Cluster> pacific = clusterer.cluster(locations, 2, -60, 150, 30, -150);
+        assertThat(pacific.size(), is(2));
+        assertThat(pacific.get(0).getKey(), is(2));
+        assertThat(pacific.get(1).getKey(), is(3));
+
+        assertThat(clusterer.cluster(locations, 18, 45, -5, 55, 5).size(), is(2));
+    }
+
+    @Test
+    public void cappedToLargestThenNearest() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 51.5, -0.1)     // london
+                .append(1, 51.5, -0.1)
+                .append(2, 48.9, 2.3)      // paris
+                .append(3, 52.5, 13.4)     // berlin
+                .append(4, 40.4, -3.7);    // madrid
+
+        // (not capped)
+        assertThat(clusterer.cluster(locations, 10, 35, -10, 60, 20, 4).size(), is(4));
+
+        // the cluster of 2 first, then the single nearest to the centre (of 47.5, 5)
+        final List<Cluster> capped = clusterer.cluster(locations, 10, 35, -10, 60, 20, 2);
+        assertThat(capped.size(), is(2));
+        assertThat(capped.get(0).getCount(), is(2));
+        assertThat(capped.get(1).getKey(), is(2));
+    }
+
+    @Test
+    public void cappedBeyondMaxZoomToNearestTheCentre() {
+        final LocationBuffer locations = new LocationBuffer();
+        for (int i = 0; i < 1000; i++) {
+            locations.append(i, -50 + i / 10.0, 0);
+        }
+
+        // all singles; without the cap, the first in the buffer would be kept, far from the viewport's centre
+        final List<Cluster> capped = clusterer.cluster(locations, 18, -90, -180, 90, 180, 3);
+        assertThat(capped.size(), is(3));
+        assertThat(capped.get(0).getKey(), is(500));
+    }
+
+    @Test
+    public void cappedAcrossTheAntimeridian() {
+        final LocationBuffer locations = new LocationBuffer()
+                .append(0, 0, 179)
+                .append(1, 0, -179.5)
+                .append(2, 0, 170);
+
+        // centred on the antimeridian
+        final List<Cluster> capped = clusterer.cluster(locations, 18, -10, 170, 10, -170, 1);
+        assertThat(capped.get(0).getKey(), is(1));
+    }
+}
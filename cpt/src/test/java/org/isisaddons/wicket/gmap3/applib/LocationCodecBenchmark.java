@@ -0,0 +1,130 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.applib;
+
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationCodec;
+
+/**
+ * Compares {@link LocationCodec} against the previous <tt>NumberFormat</tt>-based implementation of
+ * {@link Location#fromString(String)} and {@link Location#toString()}.
+ *
+ * <p>
+ *     Not run as part of the build; run from the IDE (or <tt>main</tt>) against the test classpath.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocationCodecBenchmark {
+
+    private final Location location = new Location(51.4777479, -0.0014862);
+    private final String canonical = "51.477748;-0.001486";
+    private final String foreign = "51,477748;-0,001486";
+
+    @Benchmark
+    public String format_numberFormat() {
+        return legacyToString(location);
+    }
+
+    @Benchmark
+    public String format_codec() {
+        return LocationCodec.format(location.getLatitude(), location.getLongitude());
+    }
+
+    @Benchmark
+    public Location parse_numberFormat() {
+        return legacyFromString(canonical);
+    }
+
+    @Benchmark
+    public Location parse_codec() {
+        return LocationCodec.parse(canonical);
+    }
+
+    @Benchmark
+    public Location parse_foreign_numberFormat() {
+        return legacyFromString(foreign);
+    }
+
+    @Benchmark
+    public Location parse_foreign_fromString() {
+        return Location.fromString(foreign);
+    }
+
+    //region > previous implementation (as was)
+
+    private static Location legacyFromString(final String encodedString) {
+        final String[] split = encodedString.split(";");
+        if(split.length != 2) {
+            return null;
+        }
+        for (Locale locale : Arrays.asList(Locale.getDefault(), Locale.ENGLISH, Locale.FRENCH, Locale.JAPANESE, Locale.CHINESE)) {
+            try {
+                final NumberFormat nf = numberFormat(locale);
+                double latitude = (Double) nf.parse(split[0]);
+                double longitude = (Double) nf.parse(split[1]);
+                return new Location(latitude, longitude);
+            } catch (Exception e) {
+                continue;
+            }
+        }
+        return null;
+    }
+
+    private static String legacyToString(final Location location) {
+        final NumberFormat nf = numberFormat(Locale.getDefault());
+        return nf.format(location.getLatitude()) + ";" + nf.format(location.getLongitude());
+    }
+
+    private static NumberFormat numberFormat(final Locale locale) {
+        final NumberFormat nf = NumberFormat.getInstance(locale);
+        nf.setMinimumFractionDigits(6);
+        nf.setMaximumFractionDigits(6);
+        return nf;
+    }
+
+    //endregion
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LocationCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.applib;
+
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationCodec;
+
+public class LocationCodecTest {
+
+    @Test
+    public void format() {
+        assertThat(LocationCodec.format(123.456, -30.415), is("123.456000;-30.415000"));
+        assertThat(LocationCodec.format(0, 0), is("0.000000;0.000000"));
+        assertThat(LocationCodec.format(51.4777479, -0.0000004), is("51.477748;0.000000"));
+        assertThat(LocationCodec.format(-0.5, 179.9999999), is("-0.500000;180.000000"));
+    }
+
+    @Test
+    public void parse() {
+        assertThat(LocationCodec.parse("123.456000;-30.415000"), is(new Location(123.456, -30.415)));
+        assertThat(LocationCodec.parse(" 51.4777479 ; +0.5"), is(new Location(51.4777479, 0.5)));
+        assertThat(LocationCodec.parse("12;-3"), is(new Location(12, -3)));
+        assertThat(LocationCodec.parse(new StringBuilder("1.25;2.5")), is(new Location(1.25, 2.5)));
+    }
+
+    @Test
+    public void parse_exactlyAsDouble() {
+        final String str = "0.1234567890123456789;-12.345678901234567";
+        assertThat(LocationCodec.parse(str),
+                is(new Location(Double.parseDouble("0.1234567890123456789"), Double.parseDouble("-12.345678901234567"))));
+    }
+
+    @Test
+    public void parse_invalid() {
+        assertThat(LocationCodec.parse(null), is(nullValue()));
+        assertThat(LocationCodec.parse(""), is(nullValue()));
+        assertThat(LocationCodec.parse("123"), is(nullValue()));
+        assertThat(LocationCodec.parse("123;456;789"), is(nullValue()));
+        assertThat(LocationCodec.parse("123.123;123.a23"), is(nullValue()));
+        assertThat(LocationCodec.parse("123,456;-30,415"), is(nullValue()));
+        assertThat(LocationCodec.parse("1.2.3;4"), is(nullValue()));
+        assertThat(LocationCodec.parse("-;4"), is(nullValue()));
+        assertThat(LocationCodec.parse(";"), is(nullValue()));
+    }
+
+    @Test
+    public void parseDegrees_whenCommaDecimalLocale() {
+        final Locale currentLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            assertThat(LocationCodec.parseDegrees("51.512345", 90), is(51.512345));
+            assertThat(LocationCodec.parseDegrees("-0.12", 180), is(-0.12));
+        } finally {
+            Locale.setDefault(currentLocale);
+        }
+    }
+
+    @Test
+    public void parseDegrees_invalid() {
+        assertThat(LocationCodec.parseDegrees(null, -90), is(-90.0));
+        assertThat(LocationCodec.parseDegrees("", 90), is(90.0));
+        assertThat(LocationCodec.parseDegrees("51,5", -180), is(-180.0));
+        assertThat(LocationCodec.parseDegrees("NaN", 180), is(180.0));
+    }
+
+    @Test
+    public void compact_roundTrip() {
+        final String compact = LocationCodec.toCompactString(51.4777479, -0.0014862);
+        assertThat(compact, is("~B6u4Yf__8Xy"));
+        assertThat(LocationCodec.parseCompact(compact), is(new Location(51.4777479, -0.0014862)));
+
+        assertThat(LocationCodec.parseCompact(LocationCodec.toCompactString(-90, -180)), is(new Location(-90, -180)));
+        assertThat(LocationCodec.parseCompact(LocationCodec.toCompactString(90, 180)), is(new Location(90, 180)));
+    }
+
+    @Test
+    public void compact_whenOutOfRange() {
+        assertThat(LocationCodec.toCompactString(123.456, -30.415), is("123.456000;-30.415000"));
+    }
+
+    @Test
+    public void parseCompact_invalid() {
+        assertThat(LocationCodec.parseCompact(null), is(nullValue()));
+        assertThat(LocationCodec.parseCompact("123.456000;-30.415000"), is(nullValue()));
+        assertThat(LocationCodec.parseCompact("~B6u4Yf__8X"), is(nullValue()));
+        assertThat(LocationCodec.parseCompact("~B6u4Yf__8X!"), is(nullValue()));
+        assertThat(LocationCodec.parseCompact("~zzzzzzzzzzz"), is(nullValue()));
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.applib;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.LocationDereferencingService;
+
+public class LocationDereferencingServiceTest {
+
+    @Test
+    public void dereferenceAll_defaultsToDereferencingEachInOrder() {
+        final LocationDereferencingService service = new LocationDereferencingService() {
+            @Override
+            public Object dereference(final Object locatable) {
+                return locatable instanceof String ? "owner of " + locatable : null;
+            }
+        };
+
+        final List<Object> dereferenced = service.dereferenceAll(Arrays.<Object>asList("a", 1, "b"));
+
+        assertThat(dereferenced, is(Arrays.<Object>asList("owner of a", null, "owner of b")));
+    }
+}
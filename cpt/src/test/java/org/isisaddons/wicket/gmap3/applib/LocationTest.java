@@ -88,15 +88,26 @@ public void testFromString_invalid() {
 
     @Test
     public void testToString() {
-		final NumberFormat nf = NumberFormat.getInstance();
-		nf.setMinimumFractionDigits(6);
-		nf.setMaximumFractionDigits(6);
+        for(Locale locale: allLocales() ) {
+            Locale.setDefault(locale);
+
+            final Location location = new Location(123.456, -30.415);
+            final String string = location.toString();
+
+            assertThat(string, is("123.456000;-30.415000"));
+        }
+    }
 
-		final String expectedResult = nf.format(123.456) + ";" + nf.format(-30.415);
-        final Location location = new Location(123.456, -30.415);
-        final String string = location.toString();
+    @Test
+    public void testToString_roundTrip() {
+        for(Locale locale: allLocales() ) {
+            Locale.setDefault(locale);
 
-        assertThat(string, is(expectedResult));
+            final Location location = new Location(51.4777479, -0.0014862);
+            final Location roundTripped = Location.fromString(location.toString());
+            assertThat(roundTripped.getLatitude(), is(closeTo(51.477748, 0.0000001)));
+            assertThat(roundTripped.getLongitude(), is(closeTo(-0.001486, 0.0000001)));
+        }
     }
 
 
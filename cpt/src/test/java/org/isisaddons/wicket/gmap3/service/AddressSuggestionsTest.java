@@ -0,0 +1,131 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.AddressSuggestions;
+
+public class AddressSuggestionsTest {
+
+    private static final Location LONDON = new Location(51.5, -0.12);
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    // rebuilt on the calling thread, once a second has passed
+    private final AddressSuggestions suggestions = new AddressSuggestions(3, 1000, Runnable::run, ticker);
+
+    @Test
+    public void suggestsByPrefixMostFrequentFirst() throws Exception {
+        record("10 Downing Street, London", 1);
+        record("10 Dean Street, London", 3);
+        record("221b Baker Street, London", 5);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        assertThat(suggestions.suggest("10 d", 10), is(Arrays.asList(
+                "10 Dean Street, London", "10 Downing Street, London")));
+        assertThat(suggestions.suggest("10  DOWN", 10), is(Arrays.asList("10 Downing Street, London")));
+        assertThat(suggestions.suggest("1", 1), is(Arrays.asList("10 Dean Street, London")));
+        assertThat(suggestions.suggest("nowhere", 10), is(empty()));
+    }
+
+    @Test
+    public void knownAddressesResolveImmediately() throws Exception {
+        // (the first lookup is indexed straight away, later ones once the rebuild interval has passed)
+        record("1 First Street", 1);
+        record("10 Downing Street, London", 1);
+
+        // not yet suggested...
+        assertThat(suggestions.suggest("10", 10), is(empty()));
+        // ... but known
+        assertThat(suggestions.get("10 downing street,london"), is(LONDON));
+        assertThat(suggestions.get("11 Downing Street, London"), is(nullValue()));
+    }
+
+    @Test
+    public void evictsLeastFrequentBeyondMaximum() throws Exception {
+        record("a street", 4);
+        record("b street", 1);
+        record("c street", 3);
+        record("d street", 2);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        assertThat(suggestions.suggest("", 10), is(Arrays.asList("a street", "c street", "d street")));
+        assertThat(suggestions.get("b street"), is(nullValue()));
+        assertThat(suggestions.size(), is(3));
+    }
+
+    @Test
+    public void newlyPopularDisplacesOnceFrequent() throws Exception {
+        record("a street", 100);
+        record("b street", 100);
+        record("c street", 100);
+        // long enough for those counts to have decayed (to 6)
+        ticker.advance(4, TimeUnit.HOURS);
+
+        // (evicted at first, by the rebuild this triggers, but then recorded again)
+        record("d street", 10);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        assertThat(suggestions.suggest("", 1), is(Arrays.asList("d street")));
+        assertThat(suggestions.get("d street"), is(LONDON));
+        assertThat(suggestions.size(), is(3));
+    }
+
+    @Test
+    public void boundsEntriesBetweenRebuilds() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            record("street " + i, 1);
+        }
+        assertThat(suggestions.size(), is(6));
+    }
+
+    @Test
+    public void answersQuickly() throws Exception {
+        final AddressSuggestions large = new AddressSuggestions(10000, 0, Runnable::run, ticker);
+        for (int i = 0; i < 10000; i++) {
+            large.record(i + " High Street, Town " + (i % 100), new Location(50 + i / 10000.0, 0));
+        }
+        ticker.advance(1, TimeUnit.SECONDS);
+        large.suggest("1", 10);
+
+        final int queries = 10000;
+        final long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            large.suggest(Integer.toString(i % 10), 10);
+        }
+        final long averageNanos = (System.nanoTime() - start) / queries;
+        assertThat(averageNanos, is(lessThan(TimeUnit.MILLISECONDS.toNanos(1))));
+    }
+
+    private void record(final String address, final int times) {
+        for (int i = 0; i < times; i++) {
+            suggestions.record(address, LONDON);
+        }
+    }
+
+}
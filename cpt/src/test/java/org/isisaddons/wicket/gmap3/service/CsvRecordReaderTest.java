@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.service.CsvRecordReader;
+
+public class CsvRecordReaderTest {
+
+    @Test
+    public void readsPlainAndQuotedFields() throws Exception {
+        final CsvRecordReader reader = new CsvRecordReader(new StringReader(
+                "Buy milk,\"Tesco, Holborn\"\r\n"
+                        + "\"Say \"\"hi\"\"\",\"10 Downing Street\nLondon\"\n"
+                        + "\n"
+                        + "Trailing,\n"
+                        + "No newline"));
+
+        assertThat(reader.next(), is(Arrays.asList("Buy milk", "Tesco, Holborn")));
+        assertThat(reader.getLineNumber(), is(1L));
+        assertThat(reader.next(), is(Arrays.asList("Say \"hi\"", "10 Downing Street\nLondon")));
+        assertThat(reader.getLineNumber(), is(2L));
+        assertThat(reader.next(), is(Arrays.asList("Trailing", "")));
+        assertThat(reader.getLineNumber(), is(5L));
+        assertThat(reader.next(), is(Arrays.asList("No newline")));
+        assertThat(reader.next(), is(nullValue()));
+    }
+
+    @Test
+    public void handlesCarriageReturnsAlone() throws Exception {
+        final CsvRecordReader reader = new CsvRecordReader(new StringReader("a,b\rc,d\r"));
+
+        assertThat(reader.next(), is(Arrays.asList("a", "b")));
+        assertThat(reader.next(), is(Arrays.asList("c", "d")));
+        assertThat(reader.next(), is((List<String>) null));
+    }
+
+    @Test
+    public void rejectsUnterminatedQuotes() throws Exception {
+        final CsvRecordReader reader = new CsvRecordReader(new StringReader("ok\n\"never closed,x\n"));
+        reader.next();
+        try {
+            reader.next();
+            fail();
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("Unterminated quoted field, starting on line 2"));
+        }
+    }
+
+}
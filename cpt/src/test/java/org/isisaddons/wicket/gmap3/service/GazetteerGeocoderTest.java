@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.GazetteerGeocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.GazetteerIndex;
+
+public class GazetteerGeocoderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exact() {
+        final GazetteerIndex index = GazetteerIndex.builder()
+                .add("London", 51.507, -0.128)
+                .add("Londonderry", 54.997, -7.309)
+                .add("Long Eaton", 52.898, -1.271)
+                .add("SW1A 2AA", 51.503, -0.128)
+                .add("Paris", 48.857, 2.352)
+                .build();
+
+        assertThat(index.get("london"), is(new Location(51.507, -0.128)));
+        assertThat(index.get(" LONDONDERRY "), is(new Location(54.997, -7.309)));
+        assertThat(index.get("sw1a  2aa"), is(new Location(51.503, -0.128)));
+        assertThat(index.get("Paris"), is(new Location(48.857, 2.352)));
+
+        assertThat(index.get("Lon"), is(nullValue()));
+        assertThat(index.get("Londonderry Road"), is(nullValue()));
+        assertThat(index.get("Berlin"), is(nullValue()));
+        assertThat(index.get(""), is(nullValue()));
+    }
+
+    @Test
+    public void withPrefix() {
+        final GazetteerIndex index = GazetteerIndex.builder()
+                .add("Paris", 48.857, 2.352)
+                .add("Londonderry", 54.997, -7.309)
+                .add("London", 51.507, -0.128)
+                .add("Long Eaton", 52.898, -1.271)
+                .build();
+
+        assertThat(names(index, index.withPrefix("lon", 10)), is(Arrays.asList("London", "Londonderry", "Long Eaton")));
+        assertThat(names(index, index.withPrefix("London", 10)), is(Arrays.asList("London", "Londonderry")));
+        assertThat(names(index, index.withPrefix("lon", 2)), is(Arrays.asList("London", "Londonderry")));
+        assertThat(names(index, index.withPrefix("long e", 10)), is(Arrays.asList("Long Eaton")));
+        assertThat(names(index, index.withPrefix("x", 10)), is(Arrays.<String>asList()));
+    }
+
+    @Test
+    public void laterEntryWins() {
+        final GazetteerIndex index = GazetteerIndex.builder()
+                .add("Springfield", 39.799, -89.644)
+                .add("springfield", 42.101, -72.590)
+                .build();
+
+        assertThat(index.size(), is(1));
+        assertThat(index.get("Springfield"), is(new Location(42.101, -72.590)));
+    }
+
+    @Test
+    public void manyEntries() {
+        final GazetteerIndex.Builder builder = GazetteerIndex.builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add("place " + i, i / 100.0, -i / 100.0);
+        }
+        final GazetteerIndex index = builder.build();
+
+        assertThat(index.size(), is(5000));
+        for (int i = 0; i < 5000; i++) {
+            assertThat(index.get("Place " + i), is(new Location(i / 100.0, -i / 100.0)));
+        }
+        assertThat(index.withPrefix("place 12", 1000).length, is(1 + 10 + 100));
+    }
+
+    @Test
+    public void load() throws IOException {
+        final Path file = write(
+                "# name\tlatitude\tlongitude",
+                "London\t51.507\t-0.128",
+                "",
+                "SW1A 2AA\t51.503364\t-0.127625");
+
+        final GazetteerGeocoder geocoder = GazetteerGeocoder.load(file);
+        assertThat(geocoder.geocode("London"), is(new Location(51.507, -0.128)));
+        assertThat(geocoder.geocode("sw1a 2aa"), is(new Location(51.503364, -0.127625)));
+        assertThat(geocoder.geocode("Paris"), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadMalformed() throws IOException {
+        GazetteerGeocoder.load(write("London\t51.507"));
+    }
+
+    @Test(expected = IOException.class)
+    public void loadOutOfRange() throws IOException {
+        GazetteerGeocoder.load(write("Nowhere\t91.0\t0.0"));
+    }
+
+    private Path write(final String... lines) throws IOException {
+        final Path file = folder.newFile("gazetteer.tsv").toPath();
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> names(final GazetteerIndex index, final int[] entries) {
+        final List<String> names = new ArrayList<>();
+        for (final int entry : entries) {
+            names.add(index.getName(entry));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.GeocodeResponseParser;
+
+/**
+ * Compares {@link GeocodeResponseParser} against the previous JDOM-based parsing of geocoding responses (reading the
+ * whole body into a <tt>String</tt>, then building a <tt>Document</tt>).
+ *
+ * <p>
+ *     Not run as part of the build; run from the IDE (or <tt>main</tt>) against the test classpath.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeocodeResponseParserBenchmark {
+
+    @Param({ "geocode-multiple-results.xml", "geocode-zero-results.xml" })
+    public String response;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(response)) {
+            final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            final byte[] chunk = new byte[4096];
+            int read;
+            while((read = in.read(chunk)) != -1) {
+                buf.write(chunk, 0, read);
+            }
+            body = buf.toByteArray();
+        }
+    }
+
+    @Benchmark
+    public Location parse_jdom() throws JDOMException, IOException {
+        return legacyExtractLocation(new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Location parse_stax() throws XMLStreamException, IOException {
+        return GeocodeResponseParser.parse(new ByteArrayInputStream(body));
+    }
+
+    //region > previous implementation (as was)
+
+    private static Location legacyExtractLocation(final String xml) throws JDOMException, IOException {
+        final SAXBuilder builder = new SAXBuilder();
+        Document doc = builder.build(new StringReader(xml));
+        Element root = doc.getRootElement();
+        if(root.getChild("result") == null) {
+            // eg ZERO_RESULTS
+            return null;
+        }
+        String lat = root.getChild("result").getChild("geometry").getChild("location").getChildTextTrim("lat");
+        String lon = root.getChild("result").getChild("geometry").getChild("location").getChildTextTrim("lng");
+        return Location.fromString(lat + ";" + lon);
+    }
+
+    //endregion
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GeocodeResponseParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
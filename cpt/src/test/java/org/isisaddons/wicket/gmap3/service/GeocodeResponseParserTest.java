@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.GeocodeResponseParser;
+import org.isisaddons.wicket.gmap3.cpt.service.GeocoderUnavailableException;
+
+public class GeocodeResponseParserTest {
+
+    @Test
+    public void firstOfMultipleResults() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("geocode-multiple-results.xml")) {
+            assertThat(GeocodeResponseParser.parse(in), is(new Location(51.5033640, -0.1276250)));
+        }
+    }
+
+    @Test
+    public void zeroResults() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("geocode-zero-results.xml")) {
+            assertThat(GeocodeResponseParser.parse(in), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void ignoresViewport() throws Exception {
+        final String xml = "<GeocodeResponse><status>OK</status><result><geometry>"
+                + "<viewport><southwest><lat>1.0</lat><lng>2.0</lng></southwest></viewport>"
+                + "<location><lng> -0.128 </lng><lat> 51.503 </lat></location>"
+                + "</geometry></result></GeocodeResponse>";
+        assertThat(parse(xml), is(new Location(51.503, -0.128)));
+    }
+
+    @Test
+    public void skipsResultWithoutLocation() throws Exception {
+        final String xml = "<GeocodeResponse><status>OK</status>"
+                + "<result><geometry><location><lat>1.0</lat></location></geometry></result>"
+                + "<result><formatted_address>x</formatted_address></result>"
+                + "<result><geometry><location><lat>51.503</lat><lng>-0.128</lng></location></geometry></result>"
+                + "</GeocodeResponse>";
+        assertThat(parse(xml), is(new Location(51.503, -0.128)));
+    }
+
+    @Test
+    public void missingGeometry() throws Exception {
+        final String xml = "<GeocodeResponse><status>OK</status><result><type>route</type></result></GeocodeResponse>";
+        assertThat(parse(xml), is(nullValue()));
+    }
+
+    @Test
+    public void coordinatesElsewhereIgnored() throws Exception {
+        final String xml = "<GeocodeResponse><location><lat>1.0</lat><lng>2.0</lng></location></GeocodeResponse>";
+        assertThat(parse(xml), is(nullValue()));
+    }
+
+    @Test(expected = GeocoderUnavailableException.class)
+    public void overQueryLimit() throws Exception {
+        parse("<GeocodeResponse><status>OVER_QUERY_LIMIT</status><error_message>quota</error_message></GeocodeResponse>");
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void notACoordinate() throws Exception {
+        parse("<GeocodeResponse><result><geometry><location><lat>north</lat><lng>0</lng></location></geometry></result></GeocodeResponse>");
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void notWellFormed() throws Exception {
+        parse("<GeocodeResponse><result>");
+    }
+
+    @Test
+    public void addressOfFirstResult() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("geocode-multiple-results.xml")) {
+            assertThat(GeocodeResponseParser.parseAddress(in), is("10 Downing St, Westminster, London SW1A 2AA, UK"));
+        }
+    }
+
+    @Test
+    public void addressOfZeroResults() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("geocode-zero-results.xml")) {
+            assertThat(GeocodeResponseParser.parseAddress(in), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void addressSkipsResultWithoutAddress() throws Exception {
+        final String xml = "<GeocodeResponse><status>OK</status>"
+                + "<result><type>route</type><address_component><formatted_address>x</formatted_address></address_component></result>"
+                + "<result><formatted_address> Downing St, London </formatted_address></result>"
+                + "</GeocodeResponse>";
+        assertThat(GeocodeResponseParser.parseAddress(stream(xml)), is("Downing St, London"));
+    }
+
+    @Test(expected = GeocoderUnavailableException.class)
+    public void addressOverQueryLimit() throws Exception {
+        GeocodeResponseParser.parseAddress(stream("<GeocodeResponse><status>OVER_QUERY_LIMIT</status></GeocodeResponse>"));
+    }
+
+    private static Location parse(final String xml) throws Exception {
+        return GeocodeResponseParser.parse(stream(xml));
+    }
+
+    private static InputStream stream(final String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
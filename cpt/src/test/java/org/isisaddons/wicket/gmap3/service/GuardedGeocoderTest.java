@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.CircuitBreaker;
+import org.isisaddons.wicket.gmap3.cpt.service.Geocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.GeocoderUnavailableException;
+import org.isisaddons.wicket.gmap3.cpt.service.GuardedGeocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.TokenBucket;
+
+public class GuardedGeocoderTest {
+
+    private static final Location DOWNING_STREET = new Location(51.503, -0.128);
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    // whether the provider is up
+    private volatile boolean up = true;
+
+    private CircuitBreaker circuitBreaker;
+    private TokenBucket rateLimiter;
+    private GuardedGeocoder geocoder;
+
+    @Before
+    public void setUp() {
+        circuitBreaker = new CircuitBreaker(3, TimeUnit.SECONDS.toMillis(30), ticker);
+        rateLimiter = new TokenBucket(10, 5, ticker);
+        geocoder = new GuardedGeocoder(provider(), rateLimiter, 0, circuitBreaker);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() throws Exception {
+        up = false;
+        for (int i = 0; i < 3; i++) {
+            assertFails(SocketTimeoutException.class);
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        // fails fast, without calling the provider
+        assertFails(GeocoderUnavailableException.class);
+        assertThat(calls.get(), is(3));
+        assertThat(circuitBreaker.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void successResetsFailures() throws Exception {
+        up = false;
+        assertFails(SocketTimeoutException.class);
+        assertFails(SocketTimeoutException.class);
+        up = true;
+        geocoder.geocode("10 Downing Street");
+        up = false;
+        assertFails(SocketTimeoutException.class);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void unresolvedIsNotAFailure() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(geocoder.geocode("nowhere"), is(nullValue()));
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void halfOpenProbe() throws Exception {
+        up = false;
+        for (int i = 0; i < 3; i++) {
+            assertFails(SocketTimeoutException.class);
+        }
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        // probe fails, so re-opens
+        assertFails(SocketTimeoutException.class);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertFails(GeocoderUnavailableException.class);
+
+        // probe succeeds, so closes
+        ticker.advance(30, TimeUnit.SECONDS);
+        up = true;
+        assertThat(geocoder.geocode("10 Downing Street"), is(DOWNING_STREET));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getOpenedCount(), is(2L));
+    }
+
+    @Test
+    public void errorDuringProbeIsAFailure() throws Exception {
+        up = false;
+        for (int i = 0; i < 3; i++) {
+            assertFails(SocketTimeoutException.class);
+        }
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        final GuardedGeocoder erroring = new GuardedGeocoder(address -> {
+            throw new StackOverflowError();
+        }, rateLimiter, 0, circuitBreaker);
+        try {
+            erroring.geocode("10 Downing Street");
+            fail("expected StackOverflowError");
+        } catch (StackOverflowError expected) {
+            // the probe's outcome is still recorded
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        // so that, once open long enough, the next probe is let through
+        ticker.advance(30, TimeUnit.SECONDS);
+        up = true;
+        assertThat(geocoder.geocode("10 Downing Street"), is(DOWNING_STREET));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void onlyOneProbeAtATime() {
+        up = false;
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.tryAcquire();
+            circuitBreaker.onFailure();
+        }
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(false));
+
+        circuitBreaker.onCancelled();
+        assertThat(circuitBreaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void rateLimited() throws Exception {
+        // burst of 5
+        for (int i = 0; i < 5; i++) {
+            geocoder.geocode("10 Downing Street");
+        }
+        assertFails(GeocoderUnavailableException.class);
+        assertThat(rateLimiter.getRejectedCount(), is(1L));
+
+        // refills at 10 per second
+        ticker.advance(100, TimeUnit.MILLISECONDS);
+        geocoder.geocode("10 Downing Street");
+        assertFails(GeocoderUnavailableException.class);
+
+        assertThat(calls.get(), is(6));
+        assertThat(rateLimiter.getAcquiredCount(), is(6L));
+        // rate limiting is not the provider failing
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void rateLimitWaits() throws Exception {
+        final TokenBucket bucket = new TokenBucket(100, 1);
+        assertThat(bucket.tryAcquire(0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(bucket.tryAcquire(0, TimeUnit.MILLISECONDS), is(false));
+
+        final long start = System.nanoTime();
+        assertThat(bucket.tryAcquire(1, TimeUnit.SECONDS), is(true));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+    }
+
+    private Geocoder provider() {
+        return address -> {
+            calls.incrementAndGet();
+            if(!up) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return address.startsWith("10 Downing") ? DOWNING_STREET : null;
+        };
+    }
+
+    private void assertFails(final Class<? extends IOException> expected) throws Exception {
+        try {
+            geocoder.geocode("10 Downing Street");
+            fail("expected " + expected.getSimpleName());
+        } catch (IOException ex) {
+            assertThat(ex.getClass().getName(), is(expected.getName()));
+        }
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.CircuitBreaker;
+import org.isisaddons.wicket.gmap3.cpt.service.GoogleGeocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.GuardedGeocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.HedgingGeocoder;
+import org.isisaddons.wicket.gmap3.cpt.service.TokenBucket;
+
+public class HedgingGeocoderTest {
+
+    private static final Location SLOW_ANSWER = new Location(1.0, 1.0);
+    private static final Location FAST_ANSWER = new Location(2.0, 2.0);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private CloseableHttpClient httpClient;
+
+    private StubProvider slow;
+    private StubProvider fast;
+
+    @Before
+    public void setUp() throws IOException {
+        httpClient = HttpClients.createDefault();
+        slow = new StubProvider(SLOW_ANSWER);
+        fast = new StubProvider(FAST_ANSWER);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        slow.stop();
+        fast.stop();
+        httpClient.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void hedgesWhenSlow() throws Exception {
+        slow.delayMillis = 2000;
+        final HedgingGeocoder geocoder = hedging(slow, fast);
+
+        final long start = System.nanoTime();
+        // the slow provider is asked first (neither has been measured yet)...
+        final Location location = geocoder.geocode("10 Downing Street");
+        // ... but the fast one, asked once the hedge delay has passed, answers first
+        assertThat(location, is(FAST_ANSWER));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1500, is(true));
+        assertThat(slow.requests.get(), is(1));
+        assertThat(fast.requests.get(), is(1));
+    }
+
+    @Test
+    public void abortsTheLoser() throws Exception {
+        slow.delayMillis = 2000;
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        httpClient.close();
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        final GuardedGeocoder slowGuarded = guarded(slow);
+        final HedgingGeocoder geocoder = new HedgingGeocoder(
+                Arrays.asList(slowGuarded, guarded(fast)), executor, 95, 100, 5000);
+
+        assertThat(geocoder.geocode("10 Downing Street"), is(FAST_ANSWER));
+
+        // the slow provider's request is aborted, rather than left to hold its connection until answered...
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1000);
+        while(connectionManager.getTotalStats().getLeased() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(connectionManager.getTotalStats().getLeased(), is(0));
+        // ... and that does not count against it
+        assertThat(slowGuarded.getCircuitBreaker().getFailureCount(), is(0L));
+    }
+
+    @Test
+    public void prefersLowestMedianLatency() throws Exception {
+        slow.delayMillis = 300;
+        final HedgingGeocoder geocoder = hedging(slow, fast);
+
+        assertThat(geocoder.geocode("10 Downing Street"), is(FAST_ANSWER));
+        // wait for the slow provider's (losing) request to be aborted; its latency is then known to be at least that
+        Thread.sleep(200);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(geocoder.geocode("10 Downing Street"), is(FAST_ANSWER));
+        }
+        assertThat(slow.requests.get(), is(1));
+        assertThat(fast.requests.get(), is(6));
+    }
+
+    @Test
+    public void hedgesWithinBudgetWhenSaturated() throws Exception {
+        slow.delayMillis = 50;
+        fast.delayMillis = 50;
+        // far fewer threads than concurrent lookups, so that most requests wait for one
+        final ExecutorService saturated = Executors.newFixedThreadPool(2);
+        try {
+            final HedgingGeocoder geocoder = new HedgingGeocoder(
+                    Arrays.asList(
+                            new GoogleGeocoder(httpClient, slow.url()),
+                            new GoogleGeocoder(httpClient, fast.url())),
+                    saturated, 95, 10, 5000, 5);
+
+            final int lookups = 40;
+            final List<Future<Location>> futures = new ArrayList<>();
+            for (int i = 0; i < lookups; i++) {
+                futures.add(executor.submit(() -> geocoder.geocode("10 Downing Street")));
+            }
+            for (final Future<Location> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+            // rather than (almost) every lookup being duplicated, as each would otherwise be while waiting
+            assertThat(geocoder.getHedgeCount() <= 10 + 2, is(true));
+            assertThat(slow.requests.get() + fast.requests.get() <= lookups + 10 + 2, is(true));
+        } finally {
+            saturated.shutdownNow();
+        }
+    }
+
+    @Test
+    public void hedgesReverseLookups() throws Exception {
+        slow.delayMillis = 2000;
+        final HedgingGeocoder geocoder = hedging(slow, fast);
+
+        assertThat(geocoder.reverseGeocode(new Location(51.5034, -0.1276)), is(FAST_ANSWER.toString()));
+    }
+
+    @Test
+    public void failsOver() throws Exception {
+        slow.failing = true;
+        final HedgingGeocoder geocoder = hedging(slow, fast);
+
+        final long start = System.nanoTime();
+        assertThat(geocoder.geocode("10 Downing Street"), is(FAST_ANSWER));
+        // without waiting for the hedge delay
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, is(true));
+    }
+
+    @Test
+    public void allFail() throws Exception {
+        slow.failing = true;
+        fast.failing = true;
+        final HedgingGeocoder geocoder = hedging(slow, fast);
+
+        try {
+            geocoder.geocode("10 Downing Street");
+            fail();
+        } catch (Exception ex) {
+            assertThat(slow.requests.get(), is(1));
+            assertThat(fast.requests.get(), is(1));
+        }
+    }
+
+    private HedgingGeocoder hedging(final StubProvider... providers) {
+        final GoogleGeocoder[] geocoders = new GoogleGeocoder[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            geocoders[i] = new GoogleGeocoder(httpClient, providers[i].url());
+        }
+        return new HedgingGeocoder(Arrays.asList(geocoders), executor, 95, 100, 5000);
+    }
+
+    private GuardedGeocoder guarded(final StubProvider provider) {
+        return new GuardedGeocoder(
+                new GoogleGeocoder(httpClient, provider.url()),
+                new TokenBucket(100, 100),
+                0,
+                new CircuitBreaker(1, TimeUnit.SECONDS.toMillis(30)));
+    }
+
+    /**
+     * Local geocoding endpoint, answering with a fixed location after an (adjustable) delay.
+     */
+    private static class StubProvider {
+
+        private final HttpServer server;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delayMillis;
+        private volatile boolean failing;
+
+        StubProvider(final Location answer) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/xml", exchange -> {
+                requests.incrementAndGet();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final byte[] body = (failing
+                        ? "<html>Internal Server Error</html"
+                        : "<GeocodeResponse><status>OK</status><result>"
+                            + "<formatted_address>" + answer + "</formatted_address><geometry><location>"
+                            + "<lat>" + answer.getLatitude() + "</lat><lng>" + answer.getLongitude() + "</lng>"
+                            + "</location></geometry></result></GeocodeResponse>")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(failing ? 500 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/xml";
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+
+}
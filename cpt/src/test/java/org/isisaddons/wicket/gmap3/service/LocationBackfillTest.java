@@ -0,0 +1,271 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Locatable;
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationBackfill;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationBackfillCheckpoint;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationBackfillService;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationBackfillSource;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupResult;
+import org.isisaddons.wicket.gmap3.cpt.service.TokenBucket;
+
+public class LocationBackfillTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ItemSource source = new ItemSource();
+    private final AtomicInteger transactionCount = new AtomicInteger();
+    private final List<String> lookedUp = new ArrayList<>();
+
+    private Path checkpointFile;
+    private LocationBackfillCheckpoint checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        checkpointFile = temporaryFolder.getRoot().toPath().resolve("backfill.checkpoint");
+        checkpoint = new LocationBackfillCheckpoint(checkpointFile);
+    }
+
+    @Test
+    public void appliesInChunks() throws Exception {
+        source.add(25, "address");
+        final LocationBackfill backfill = newBackfill(10, 4);
+
+        assertThat(backfill.run(() -> true), is(true));
+
+        assertThat(source.missingLocation().size(), is(0));
+        assertThat(backfill.getStatistics().getResolvedCount(), is(25L));
+        // 4 pages read (the last empty), 3 + 3 + 2 chunks written
+        assertThat(transactionCount.get(), is(4 + 8));
+        assertThat(checkpoint.getOffset(backfill.getSourceId()), is(0));
+    }
+
+    @Test
+    public void skipsUnresolved() throws Exception {
+        source.add(3, "unknown");
+        source.add(5, "address");
+        final LocationBackfill backfill = newBackfill(4, 4);
+
+        assertThat(backfill.run(() -> true), is(true));
+
+        assertThat(source.missingLocation().size(), is(3));
+        assertThat(backfill.getStatistics().getUnresolvedCount(), is(3L));
+        assertThat(backfill.getStatistics().getResolvedCount(), is(5L));
+        // each looked up only once
+        assertThat(lookedUp.size(), is(8));
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        source.add(4, "unknown");
+        source.add(4, "address");
+        final AtomicInteger pages = new AtomicInteger();
+        // stopped after the first page
+        assertThat(newBackfill(4, 4).run(() -> pages.incrementAndGet() <= 1), is(false));
+        assertThat(lookedUp.size(), is(4));
+
+        // as if restarted
+        checkpoint = new LocationBackfillCheckpoint(checkpointFile);
+        lookedUp.clear();
+        assertThat(newBackfill(4, 4).run(() -> true), is(true));
+
+        // the unresolved ones were not looked up again
+        assertThat(lookedUp.size(), is(4));
+        assertThat(source.missingLocation().size(), is(4));
+    }
+
+    @Test
+    public void doesNotLookUpUnresolvedAgain() throws Exception {
+        source.add(3, "unknown");
+        source.add(2, "address");
+        assertThat(newBackfill(4, 4).run(() -> true), is(true));
+        assertThat(lookedUp.size(), is(5));
+
+        // the next pass (even after a restart) skips them...
+        checkpoint = new LocationBackfillCheckpoint(checkpointFile);
+        lookedUp.clear();
+        final LocationBackfill backfill = newBackfill(4, 4);
+        assertThat(backfill.run(() -> true), is(true));
+        assertThat(lookedUp.size(), is(0));
+        assertThat(backfill.getStatistics().getSkippedCount(), is(3L));
+
+        // ... unless their address has changed
+        source.items.get(0).address = "unknown again";
+        assertThat(newBackfill(4, 4).run(() -> true), is(true));
+        assertThat(lookedUp, is(Arrays.asList("unknown again")));
+    }
+
+    @Test
+    public void retriesUnresolvedOnceDue() throws Exception {
+        checkpoint = new LocationBackfillCheckpoint(checkpointFile, 0);
+        source.add(3, "unknown");
+        assertThat(newBackfill(4, 4).run(() -> true), is(true));
+        assertThat(newBackfill(4, 4).run(() -> true), is(true));
+
+        assertThat(lookedUp.size(), is(6));
+    }
+
+    @Test
+    public void countsOnlyThoseApplied() throws Exception {
+        source.add(2, "address");
+        // located by some other means while being looked up
+        source.add(2, "located");
+        final LocationBackfill backfill = newBackfill(4, 4);
+
+        assertThat(backfill.run(() -> true), is(true));
+
+        assertThat(source.missingLocation().size(), is(0));
+        assertThat(backfill.getStatistics().getResolvedCount(), is(2L));
+    }
+
+    @Test
+    public void runNowBeforeInit() throws Exception {
+        // does nothing, rather than failing
+        assertThat(new LocationBackfillService().runNow().isDone(), is(true));
+    }
+
+    @Test
+    public void stopsIfAllFail() throws Exception {
+        source.add(4, "fail");
+        final LocationBackfill backfill = newBackfill(4, 4);
+
+        assertThat(backfill.run(() -> true), is(false));
+
+        assertThat(backfill.getStatistics().getFailedCount(), is(4L));
+        // to be retried from the same place
+        assertThat(checkpoint.getOffset(backfill.getSourceId()), is(0));
+    }
+
+    private LocationBackfill newBackfill(final int pageSize, final int chunkSize) {
+        return new LocationBackfill(
+                source, this::lookupAll, new InMemoryTransactions(), checkpoint, new TokenBucket(1000, 1000),
+                pageSize, chunkSize);
+    }
+
+    private Map<String, LocationLookupResult> lookupAll(final Collection<String> addresses) {
+        final Map<String, LocationLookupResult> results = new LinkedHashMap<>();
+        for (final String address : addresses) {
+            lookedUp.add(address);
+            if(address.startsWith("located")) {
+                source.locate(address);
+            }
+            results.put(address,
+                    address.startsWith("unknown") ? LocationLookupResult.unresolved(address)
+                    : address.startsWith("fail") ? LocationLookupResult.failed(address, new IOException("down"))
+                    : LocationLookupResult.resolved(address, new Location(51.5, -0.1)));
+        }
+        return results;
+    }
+
+    private static class Item implements Locatable {
+        private String address;
+        private Location location;
+
+        Item(final String address) {
+            this.address = address;
+        }
+
+        @Override
+        public Location getLocation() {
+            return location;
+        }
+    }
+
+    private static class ItemSource implements LocationBackfillSource<Item> {
+        private final List<Item> items = new ArrayList<>();
+
+        void add(final int count, final String prefix) {
+            for (int i = 0; i < count; i++) {
+                items.add(new Item(prefix + " " + items.size()));
+            }
+        }
+
+        void locate(final String address) {
+            for (final Item item : items) {
+                if(item.address.equals(address)) {
+                    item.location = new Location(48.9, 2.4);
+                }
+            }
+        }
+
+        List<Item> missingLocation() {
+            final List<Item> missing = new ArrayList<>();
+            for (final Item item : items) {
+                if(item.location == null) {
+                    missing.add(item);
+                }
+            }
+            return missing;
+        }
+
+        @Override
+        public List<Item> findMissingLocation(final int start, final int count) {
+            final List<Item> missing = missingLocation();
+            return new ArrayList<>(missing.subList(Math.min(start, missing.size()), Math.min(start + count, missing.size())));
+        }
+
+        @Override
+        public String addressOf(final Item item) {
+            return item.address;
+        }
+
+        @Override
+        public void applyLocation(final Item item, final Location location) {
+            item.location = location;
+        }
+    }
+
+    private class InMemoryTransactions implements LocationBackfill.Transactions {
+        @Override
+        public void execute(final Runnable work) {
+            transactionCount.incrementAndGet();
+            work.run();
+        }
+
+        @Override
+        public Object idOf(final Object entity) {
+            return entity;
+        }
+
+        @Override
+        public Object resolve(final Object id) {
+            return id;
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationImport;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupResult;
+
+public class LocationImportTest {
+
+    private static final Location HOLBORN = new Location(51.517, -0.12);
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final List<LocationImport.Row> persisted = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger transactionCount = new AtomicInteger();
+    private final AtomicInteger lookupCount = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void importsGeocodesAndPersistsInChunks() throws Exception {
+        final LocationImport.Statistics statistics = newImport(row -> persisted.add(row), 2, 2, 10).run(new StringReader(
+                "Description,Address\n"
+                        + "Buy milk,\"Tesco, Holborn\"\n"
+                        + "Buy bread,\"Tesco, Holborn\"\n"
+                        + "buy  MILK,\"tesco,holborn\"\n"
+                        + ",nowhere\n"
+                        + "Post letter,Atlantis\n"
+                        + "Call mum\n"
+                        + "Pay rent,The Moon\n"));
+
+        assertThat(statistics.getReadCount(), is(7L));
+        assertThat(statistics.getInvalidCount(), is(1L));
+        assertThat(statistics.getDuplicateCount(), is(1L));
+        assertThat(statistics.getResolvedCount(), is(2L));
+        assertThat(statistics.getUnresolvedCount(), is(2L));
+        assertThat(statistics.getFailedCount(), is(1L));
+        assertThat(statistics.getPersistedCount(), is(5L));
+
+        assertThat(persisted.size(), is(5));
+        assertThat(persisted.get(0).getDescription(), is("Buy milk"));
+        assertThat(persisted.get(0).getLineNumber(), is(2L));
+        assertThat(persisted.get(0).getLocation(), is(HOLBORN));
+        assertThat(persisted.get(2).getLocation(), is((Location) null));
+        assertThat(persisted.get(3).getAddress(), is((String) null));
+        // chunks of 2
+        assertThat(transactionCount.get(), is(3));
+        // "Tesco, Holborn" looked up once for its batch (of 2 rows)
+        assertThat(lookupCount.get(), is(3));
+    }
+
+    @Test
+    public void startsInBackground() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final LocationImport locationImport = newImport(row -> {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            persisted.add(row);
+        }, 2, 2, 10);
+
+        // returns at once, though nothing can be persisted yet
+        final Future<LocationImport.Statistics> done = locationImport.start(new StringReader(
+                "Buy milk,\"Tesco, Holborn\"\n"
+                        + "Post letter,Atlantis\n"));
+        assertThat(locationImport.isDone(), is(false));
+
+        released.countDown();
+        assertThat(done.get(10, TimeUnit.SECONDS).getPersistedCount(), is(2L));
+        assertThat(locationImport.isDone(), is(true));
+        assertThat(locationImport.getFailure(), is((Throwable) null));
+        assertThat(persisted.size(), is(2));
+    }
+
+    @Test
+    public void boundsRowsInFlightWhateverTheSizeOfTheFile() throws Exception {
+        final int rows = 20000;
+        final GeneratedCsv csv = new GeneratedCsv(rows);
+        final AtomicLong maxInFlight = new AtomicLong();
+        final AtomicLong persistedCount = new AtomicLong();
+
+        newImport(row -> {
+            // the slowest stage, so the others are held back
+            maxInFlight.accumulateAndGet(csv.generated - persistedCount.incrementAndGet(), Math::max);
+        }, 50, 100, 200).run(csv);
+
+        assertThat(persistedCount.get(), is((long) rows));
+        // the two queues, a batch each being parsed and geocoded, and a chunk being persisted
+        assertThat(maxInFlight.get(), is(lessThanOrEqualTo(2 * 200L + 2 * 50 + 100)));
+    }
+
+    @Test
+    public void stopsWhenPersistingFails() throws Exception {
+        final GeneratedCsv csv = new GeneratedCsv(100000);
+        try {
+            newImport(row -> {
+                if(row.getLineNumber() == 500) {
+                    throw new IllegalStateException("constraint violated");
+                }
+            }, 50, 100, 200).run(csv);
+            fail();
+        } catch (ExecutionException expected) {
+            assertThat(expected.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        // gave up reading the file
+        assertThat(csv.generated, is(lessThan(2000L)));
+    }
+
+    private LocationImport newImport(
+            final LocationImport.Sink sink, final int batchSize, final int chunkSize, final int queueCapacity) {
+        return new LocationImport(
+                this::lookupAll,
+                work -> {
+                    transactionCount.incrementAndGet();
+                    work.run();
+                },
+                sink, executor, batchSize, chunkSize, queueCapacity, 1000);
+    }
+
+    private Map<String, LocationLookupResult> lookupAll(final Collection<String> addresses) {
+        final Map<String, LocationLookupResult> results = new LinkedHashMap<>();
+        for (final String address : addresses) {
+            lookupCount.incrementAndGet();
+            if(address.contains("Holborn")) {
+                results.put(address, LocationLookupResult.resolved(address, HOLBORN));
+            } else if(address.equals("The Moon")) {
+                results.put(address, LocationLookupResult.failed(address, new IllegalStateException("too far")));
+            } else if(address.startsWith("Street ")) {
+                results.put(address, LocationLookupResult.resolved(address, HOLBORN));
+            } else {
+                results.put(address, LocationLookupResult.unresolved(address));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A CSV file of distinct rows, generated as it is read (so not held in memory).
+     */
+    private static class GeneratedCsv extends Reader {
+        private final int rows;
+        private volatile long generated;
+        private StringReader current = new StringReader("");
+
+        GeneratedCsv(final int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(final char[] buf, final int off, final int len) {
+            try {
+                int read = current.read(buf, off, len);
+                while(read == -1) {
+                    if(generated == rows) {
+                        return -1;
+                    }
+                    generated++;
+                    current = new StringReader("Item " + generated + ",Street " + generated + "\n");
+                    read = current.read(buf, off, len);
+                }
+                return read;
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
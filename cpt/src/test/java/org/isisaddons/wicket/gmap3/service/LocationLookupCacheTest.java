@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupCache;
+
+public class LocationLookupCacheTest {
+
+    private static final Location DOWNING_STREET = new Location(51.503, -0.128);
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private LocationLookupCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new LocationLookupCache(100, TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(1), ticker);
+    }
+
+    @Test
+    public void hit() {
+        assertThat(cache.get("10 Downing Street, London", resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+        assertThat(cache.get(" 10  downing street ,LONDON ", resolvingTo(null)), is(DOWNING_STREET));
+
+        assertThat(lookups.get(), is(1));
+        assertThat(cache.getStatistics().getHitCount(), is(1L));
+        assertThat(cache.getStatistics().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void expires() {
+        cache.get("10 Downing Street", resolvingTo(DOWNING_STREET));
+        ticker.advance(TimeUnit.HOURS.toNanos(1) + 1, TimeUnit.NANOSECONDS);
+        cache.get("10 Downing Street", resolvingTo(DOWNING_STREET));
+
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void negative() {
+        assertThat(cache.get("nowhere", resolvingTo(null)), is(nullValue()));
+        assertThat(cache.get("nowhere", resolvingTo(DOWNING_STREET)), is(nullValue()));
+        assertThat(lookups.get(), is(1));
+        assertThat(cache.getStatistics().getNegativeHitCount(), is(1L));
+
+        // negative entries expire sooner
+        ticker.advance(TimeUnit.MINUTES.toNanos(1) + 1, TimeUnit.NANOSECONDS);
+        assertThat(cache.get("nowhere", resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void whenMaximumSizeIsZero_cachesNothing() {
+        cache = new LocationLookupCache(0, TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(1), ticker);
+
+        cache.get("10 Downing Street", resolvingTo(DOWNING_STREET));
+        cache.get("10 Downing Street", resolvingTo(DOWNING_STREET));
+        cache.get("nowhere", resolvingTo(null));
+        cache.get("nowhere", resolvingTo(null));
+
+        assertThat(lookups.get(), is(4));
+        assertThat(cache.getStatistics().getSize(), is(0L));
+    }
+
+    @Test
+    public void evicts() {
+        for (int i = 0; i < 200; i++) {
+            cache.get("address " + i, resolvingTo(DOWNING_STREET));
+        }
+        assertThat(cache.getStatistics().getSize() <= 100, is(true));
+        assertThat(cache.getStatistics().getEvictionCount() >= 100, is(true));
+    }
+
+    @Test
+    public void coalescesConcurrentMisses() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Location>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final String address = i % 2 == 0 ? "10 Downing Street" : " 10 downing street ";
+                results.add(threads.submit(() -> cache.get(address, blockingUntil(release, DOWNING_STREET))));
+            }
+            // one thread looks up, the others wait for it
+            awaitCoalesced(7);
+            release.countDown();
+
+            for (final Future<Location> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), is(DOWNING_STREET));
+            }
+            assertThat(lookups.get(), is(1));
+            assertThat(cache.getStatistics().getMissCount(), is(1L));
+            assertThat(cache.getStatistics().getCoalescedCount(), is(7L));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureSharedButNotCached() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final Function<String, Location> failing = address -> {
+                lookups.incrementAndGet();
+                awaitQuietly(release);
+                throw new IllegalStateException("unavailable");
+            };
+            final Future<Location> first = threads.submit(() -> cache.get("10 Downing Street", failing));
+            final Future<Location> second = threads.submit(() -> cache.get("10 Downing Street", failing));
+            awaitCoalesced(1);
+            release.countDown();
+
+            assertThat(failureOf(first), is("unavailable"));
+            assertThat(failureOf(second), is("unavailable"));
+            assertThat(lookups.get(), is(1));
+        } finally {
+            threads.shutdownNow();
+        }
+
+        // not cached as unresolved
+        assertThat(cache.get("10 Downing Street", resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+    }
+
+    @Test
+    public void normalize() {
+        assertThat(LocationLookupCache.normalize(" 10  Downing Street , London"), is("10 downing street,london"));
+        assertThat(LocationLookupCache.normalize("Paris"), is("paris"));
+        assertThat(LocationLookupCache.normalize("   "), is(""));
+    }
+
+    private Function<String, Location> resolvingTo(final Location location) {
+        return address -> {
+            lookups.incrementAndGet();
+            return location;
+        };
+    }
+
+    private Function<String, Location> blockingUntil(final CountDownLatch release, final Location location) {
+        return address -> {
+            lookups.incrementAndGet();
+            awaitQuietly(release);
+            return location;
+        };
+    }
+
+    private void awaitCoalesced(final long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(cache.getStatistics().getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(cache.getStatistics().getCoalescedCount(), is(count));
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String failureOf(final Future<Location> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause().getMessage();
+        }
+    }
+
+}
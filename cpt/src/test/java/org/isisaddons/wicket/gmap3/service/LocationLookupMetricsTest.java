@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.service.LatencyHistogram;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupMetrics;
+import org.isisaddons.wicket.gmap3.cpt.service.OperationMetrics;
+
+public class LocationLookupMetricsTest {
+
+    @Test
+    public void percentilesAreUpperBoundsOfTheirBuckets() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(150));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1200));
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getPercentileMillis(50), is(5L));
+        assertThat(histogram.getPercentileMillis(90), is(5L));
+        assertThat(histogram.getPercentileMillis(99), is(200L));
+        assertThat(histogram.getPercentileMillis(100), is(1200L));
+        assertThat(histogram.getMaxMillis(), is(1200L));
+    }
+
+    @Test
+    public void percentilesWhenNothingRecorded() throws Exception {
+        assertThat(new LatencyHistogram().getPercentileMillis(99), is(0L));
+    }
+
+    @Test
+    public void countsOutcomesAndConcurrency() throws Exception {
+        final OperationMetrics metrics = new OperationMetrics();
+
+        final long first = metrics.start();
+        final long second = metrics.start();
+        final long third = metrics.start();
+        assertThat(metrics.getStatistics().getInFlight(), is(3));
+
+        metrics.resolved(first);
+        metrics.unresolved(second);
+        metrics.recordFailure(new IllegalStateException("recovered"));
+        metrics.failed(third, new java.io.IOException("gave up"));
+        metrics.start();
+
+        final OperationMetrics.Statistics statistics = metrics.getStatistics();
+        assertThat(statistics.getRequestCount(), is(4L));
+        assertThat(statistics.getResolvedCount(), is(1L));
+        assertThat(statistics.getUnresolvedCount(), is(1L));
+        assertThat(statistics.getFailedCount(), is(1L));
+        assertThat(statistics.getInFlight(), is(1));
+        assertThat(statistics.getPeakInFlight(), is(3));
+        assertThat(statistics.getFailureCounts().get("java.lang.IllegalStateException"), is(1L));
+        assertThat(statistics.getFailureCounts().get("java.io.IOException"), is(1L));
+        assertThat(statistics.getLastFailure(), is("java.io.IOException: gave up"));
+    }
+
+    @Test
+    public void readableAsOpenTypesThroughJmx() throws Exception {
+        final LocationLookupMetrics metrics = new LocationLookupMetrics(
+                () -> null, () -> null, () -> new PoolStats(2, 1, 3, 10));
+        final MBeanServer server = MBeanServerFactory.newMBeanServer();
+        final ObjectName name = new ObjectName(LocationLookupMetrics.OBJECT_NAME);
+        server.registerMBean(metrics, name);
+
+        final CompositeData lookups = (CompositeData) server.getAttribute(name, "Lookups");
+        assertThat(lookups.get("requestCount"), is((Object) 0L));
+
+        assertThat(server.getAttribute(name, "ConnectionsLeased"), is((Object) 2));
+        assertThat(server.getAttribute(name, "ConnectionsMax"), is((Object) 10));
+        assertThat(server.getAttribute(name, "Cache"), is(nullValue()));
+    }
+
+}
@@ -20,19 +20,58 @@
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupResult;
 import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupService;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
 import org.isisaddons.wicket.gmap3.cpt.applib.Location;
 
 public class LocationLookupServiceTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private LocationLookupService locationLookupService;
+	private LocationLookupService gazetteerLookupService;
 	
 	@Before
-	public void setup() {
+	public void setup() throws IOException {
 		locationLookupService = new LocationLookupService();
+
+		// resolves from a gazetteer only, so without calling out to Google
+		final Path gazetteer = folder.newFile("gazetteer.tsv").toPath();
+		Files.write(gazetteer, Arrays.asList("10 Downing Street,London,UK\t51.503\t-0.128"), StandardCharsets.UTF_8);
+		final Map<String, String> properties = new HashMap<>();
+		properties.put(Gmap3ApplibConstants.LOOKUP_GAZETTEER_FILE, gazetteer.toString());
+		properties.put(Gmap3ApplibConstants.LOOKUP_GOOGLE_ENABLED, "false");
+		properties.put(Gmap3ApplibConstants.LOOKUP_JMX_ENABLED, "false");
+		gazetteerLookupService = new LocationLookupService();
+		gazetteerLookupService.init(properties);
+	}
+
+	@After
+	public void tearDown() {
+		gazetteerLookupService.shutdown();
 	}
 	
 	@Test
@@ -49,4 +88,57 @@ public void whenInvalid() {
 		assertThat(location, is(nullValue()));
 	}
 
+	@Test
+	public void notStartedAgainOnceShutDown() {
+		gazetteerLookupService.shutdown();
+		try {
+			gazetteerLookupService.lookup("10 Downing Street,London,UK");
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void lookupAll() {
+		final Map<String, LocationLookupResult> results = gazetteerLookupService.lookupAll(
+				Arrays.asList("10 Downing Street,London,UK", "$%$%^Y%^fgnsdlfk glfg", " 10 downing street, london, uk", "10 Downing Street,London,UK"));
+
+		assertThat(new ArrayList<>(results.keySet()), is(Arrays.asList(
+				"10 Downing Street,London,UK", "$%$%^Y%^fgnsdlfk glfg", " 10 downing street, london, uk")));
+
+		final LocationLookupResult downingStreet = results.get("10 Downing Street,London,UK");
+		assertThat(downingStreet.isResolved(), is(true));
+		assertEquals(51.503, downingStreet.getLocation().getLatitude(), 0.01);
+		assertThat(results.get(" 10 downing street, london, uk").getLocation(), is(downingStreet.getLocation()));
+
+		assertThat(results.get("$%$%^Y%^fgnsdlfk glfg").isResolved(), is(false));
+	}
+
+	@Test
+	public void lookupAsync() throws Exception {
+		final Location location = gazetteerLookupService.lookupAsync("10 Downing Street,London,UK").get(30, TimeUnit.SECONDS);
+		assertThat(location, is(not(nullValue())));
+		assertEquals(51.503, location.getLatitude(), 0.01);
+
+		assertThat(gazetteerLookupService.lookupAsync(null).get(), is(nullValue()));
+	}
+
+	@Test
+	public void lookupAsync_consumerNeverOnCallingThreadEvenIfCached() throws Exception {
+		gazetteerLookupService.lookup("10 Downing Street,London,UK");
+
+		final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final List<CompletableFuture<Location>> futures = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			futures.add(gazetteerLookupService.lookupAsync(
+					"10 Downing Street,London,UK", location -> threads.add(Thread.currentThread())));
+		}
+		for (final CompletableFuture<Location> future : futures) {
+			assertThat(future.get(30, TimeUnit.SECONDS), is(not(nullValue())));
+		}
+
+		assertThat(threads.isEmpty(), is(false));
+		assertThat(threads.contains(Thread.currentThread()), is(false));
+	}
+
 }
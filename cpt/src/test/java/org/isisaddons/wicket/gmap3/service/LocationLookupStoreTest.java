@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupStore;
+
+public class LocationLookupStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = temporaryFolder.getRoot().toPath().resolve("geocodes.log");
+    }
+
+    @Test
+    public void survivesReopen() throws Exception {
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            store.put("10 Downing Street, London", new Location(51.503, -0.128));
+            store.put("Paris", new Location(48.8566, 2.3522));
+        }
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            assertThat(store.size(), is(2));
+            assertThat(store.get("10 downing street,london"), is(new Location(51.503, -0.128)));
+            assertThat(store.get("paris"), is(new Location(48.8566, 2.3522)));
+            assertThat(store.get("berlin"), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void laterEntriesWin() throws Exception {
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            store.put("Paris", new Location(1, 1));
+            store.put("Paris", new Location(48.8566, 2.3522));
+        }
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            assertThat(store.get("paris"), is(new Location(48.8566, 2.3522)));
+        }
+    }
+
+    @Test
+    public void cappedAndCompacted() throws Exception {
+        try (LocationLookupStore store = new LocationLookupStore(file, 10)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("address " + i, new Location(i, i));
+            }
+            assertThat(store.size(), is(10));
+            assertThat(store.get("address 0"), is(nullValue()));
+            assertThat(store.get("address 99"), is(new Location(99, 99)));
+        }
+        assertThat(lineCount() <= 20, is(true));
+
+        try (LocationLookupStore store = new LocationLookupStore(file, 10)) {
+            assertThat(store.size(), is(10));
+            assertThat(store.get("address 90"), is(new Location(90, 90)));
+        }
+    }
+
+    @Test
+    public void skipsPartialLastLine() throws Exception {
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            store.put("Paris", new Location(48.8566, 2.3522));
+        }
+        Files.write(file, "berlin\t52.52".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            assertThat(store.get("berlin"), is(nullValue()));
+            store.put("Berlin", new Location(52.52, 13.405));
+        }
+        try (LocationLookupStore store = new LocationLookupStore(file, 100)) {
+            assertThat(store.get("paris"), is(new Location(48.8566, 2.3522)));
+            assertThat(store.get("berlin"), is(new Location(52.52, 13.405)));
+        }
+    }
+
+    private long lineCount() throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).size();
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A {@link Ticker} that only moves when told to, for tests of anything that expires or rebuilds over time.
+ */
+public class ManualTicker extends Ticker {
+
+    private long nanos;
+
+    @Override
+    public long read() {
+        return nanos;
+    }
+
+    public void advance(final long duration, final TimeUnit unit) {
+        nanos += unit.toNanos(duration);
+    }
+
+}
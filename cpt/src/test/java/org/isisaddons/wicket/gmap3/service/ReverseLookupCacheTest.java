@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.ReverseLookupCache;
+
+public class ReverseLookupCacheTest {
+
+    private static final String DOWNING_STREET = "10 Downing St, Westminster, London SW1A 2AA, UK";
+
+    private final ManualTicker ticker = new ManualTicker();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final List<Location> lookedUp = new ArrayList<>();
+
+    private ReverseLookupCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ReverseLookupCache(4, 100, TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(1), ticker);
+    }
+
+    @Test
+    public void nearbyLocationsShareCell() {
+        assertThat(cache.get(new Location(51.50336, -0.12763), resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+        assertThat(cache.get(new Location(51.50338, -0.12758), resolvingTo(null)), is(DOWNING_STREET));
+
+        assertThat(lookups.get(), is(1));
+        // the centre of the cell is looked up
+        assertThat(lookedUp.get(0), is(new Location(51.5034, -0.1276)));
+        assertThat(cache.getStatistics().getHitCount(), is(1L));
+        assertThat(cache.getStatistics().getMissCount(), is(1L));
+    }
+
+    @Test
+    public void neighbouringCellsDoNot() {
+        cache.get(new Location(51.50336, -0.12763), resolvingTo(DOWNING_STREET));
+        cache.get(new Location(51.50346, -0.12763), resolvingTo(DOWNING_STREET));
+        cache.get(new Location(-51.50336, 0.12763), resolvingTo(DOWNING_STREET));
+
+        assertThat(lookups.get(), is(3));
+        assertThat(lookedUp.get(2), is(new Location(-51.5034, 0.1276)));
+    }
+
+    @Test
+    public void negative() {
+        final Location atSea = new Location(0.0, -30.0);
+        assertThat(cache.get(atSea, resolvingTo(null)), is(nullValue()));
+        assertThat(cache.get(atSea, resolvingTo(DOWNING_STREET)), is(nullValue()));
+        assertThat(lookups.get(), is(1));
+        assertThat(cache.getStatistics().getNegativeHitCount(), is(1L));
+
+        // negative entries expire sooner
+        ticker.advance(TimeUnit.MINUTES.toNanos(1) + 1, TimeUnit.NANOSECONDS);
+        assertThat(cache.get(atSea, resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test
+    public void failureNotCached() {
+        final Location location = new Location(51.50336, -0.12763);
+        try {
+            cache.get(location, failingWith(new IllegalStateException("unavailable")));
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("unavailable"));
+        }
+        assertThat(cache.get(location, resolvingTo(DOWNING_STREET)), is(DOWNING_STREET));
+        assertThat(lookups.get(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cellDecimalsOutOfRange() {
+        new ReverseLookupCache(7, 100, 1000, 1000);
+    }
+
+    private Function<Location, String> resolvingTo(final String address) {
+        return location -> {
+            lookups.incrementAndGet();
+            lookedUp.add(location);
+            return address;
+        };
+    }
+
+    private Function<Location, String> failingWith(final RuntimeException ex) {
+        return location -> {
+            lookups.incrementAndGet();
+            throw ex;
+        };
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.isisaddons.wicket.gmap3.fixture.dom;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
@@ -41,6 +42,7 @@
 import org.apache.isis.applib.annotation.MinLength;
 import org.apache.isis.applib.annotation.Optionality;
 import org.apache.isis.applib.annotation.ParameterLayout;
+import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.annotation.Property;
 import org.apache.isis.applib.annotation.PropertyLayout;
 import org.apache.isis.applib.annotation.RenderType;
@@ -88,7 +90,14 @@
             value = "SELECT "
                     + "FROM org.isisaddons.wicket.gmap3.fixture.dom.Gmap3ToDoItem "
                     + "WHERE ownedBy == :ownedBy && "
-                    + "description.indexOf(:description) >= 0")
+                    + "description.indexOf(:description) >= 0"),
+    @javax.jdo.annotations.Query(
+            name = "todo_missingLocation",
+            value = "SELECT "
+                    + "FROM org.isisaddons.wicket.gmap3.fixture.dom.Gmap3ToDoItem "
+                    + "WHERE locationLatitude == null "
+                    // by the (datastore) id, so that the order is unique and new items are added at the end
+                    + "ORDER BY JDOHelper.getObjectId(this) ASC")
 })
 @DomainObject(
         objectType = "TODO",
@@ -214,6 +223,37 @@ public void setLocation(final Location location) {
         locationLatitude = location != null ? location.getLatitude() : null;
     }
 
+    // derived (and cached by the service), so cheap enough to show in tables
+    @Property(
+            editing = Editing.DISABLED
+    )
+    @PropertyLayout(
+            named = "Address",
+            typicalLength = 50
+    )
+    @MemberOrder(sequence="3.1")
+    public String getLocationAddress() {
+        return this.locationLookupService.reverseLookup(getLocation());
+    }
+
+    @Programmatic
+    @Override
+    public boolean hasLocation() {
+        return locationLatitude != null && locationLongitude != null;
+    }
+
+    @Programmatic
+    @Override
+    public double getLatitude() {
+        return hasLocation() ? locationLatitude : Double.NaN;
+    }
+
+    @Programmatic
+    @Override
+    public double getLongitude() {
+        return hasLocation() ? locationLongitude : Double.NaN;
+    }
+
     @MemberOrder(name="location", sequence="1")
     public Gmap3ToDoItem updateLocation(
             @ParameterLayout(named="Address") final String address) {
@@ -222,6 +262,35 @@ public Gmap3ToDoItem updateLocation(
         return this;
     }
 
+    public List<String> autoComplete0UpdateLocation(final @MinLength(3) String search) {
+        return suggestAddresses(search);
+    }
+
+    @MemberOrder(name="location", sequence="2")
+    public Gmap3ToDoItem updateLocationInBackground(
+            @ParameterLayout(named="Address") final String address) {
+        this.locationLookupService.lookupAsync(address, this, Gmap3ToDoItem::setLocation);
+        return this;
+    }
+    public List<String> autoComplete0UpdateLocationInBackground(final @MinLength(3) String search) {
+        return suggestAddresses(search);
+    }
+
+    /**
+     * Addresses looked up before (most often first), after the text as typed so that a new address can still be
+     * entered.
+     */
+    private List<String> suggestAddresses(final String search) {
+        final List<String> suggestions = new ArrayList<>();
+        suggestions.add(search.trim());
+        for (final String address : locationLookupService.suggestAddresses(search, 10)) {
+            if(!address.equalsIgnoreCase(search.trim())) {
+                suggestions.add(address);
+            }
+        }
+        return suggestions;
+    }
+
     //endregion
 
     //region > dependencies (collection), add (action), remove (action)
@@ -0,0 +1,65 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.fixture.dom;
+
+import java.util.List;
+
+import org.apache.isis.applib.annotation.DomainService;
+import org.apache.isis.applib.annotation.NatureOfService;
+import org.apache.isis.applib.query.QueryDefault;
+import org.apache.isis.applib.services.repository.RepositoryService;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationBackfillSource;
+
+/**
+ * Allows the locations of {@link Gmap3ToDoItem}s that have none to be looked up in the background.
+ */
+@DomainService(
+        nature = NatureOfService.DOMAIN
+)
+public class Gmap3ToDoItemLocationBackfillSource implements LocationBackfillSource<Gmap3ToDoItem> {
+
+    @Override
+    public List<Gmap3ToDoItem> findMissingLocation(final int start, final int count) {
+        return repositoryService.allMatches(
+                new QueryDefault<>(Gmap3ToDoItem.class, "todo_missingLocation")
+                        .withStart(start)
+                        .withCount(count));
+    }
+
+    @Override
+    public String addressOf(final Gmap3ToDoItem toDoItem) {
+        // the demo has no address as such, so the description is taken to be one (eg "Buy milk at Tesco, Holborn")
+        return toDoItem.getDescription();
+    }
+
+    @Override
+    public void applyLocation(final Gmap3ToDoItem toDoItem, final Location location) {
+        toDoItem.setLocation(location);
+    }
+
+    //region > injected services
+
+    @javax.inject.Inject
+    RepositoryService repositoryService;
+
+    //endregion
+
+}
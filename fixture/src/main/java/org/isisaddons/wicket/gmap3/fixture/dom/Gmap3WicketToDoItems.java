@@ -18,8 +18,13 @@
  */
 package org.isisaddons.wicket.gmap3.fixture.dom;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.io.CharSource;
 
 import org.apache.isis.applib.annotation.Action;
 import org.apache.isis.applib.annotation.ActionLayout;
@@ -36,8 +41,11 @@
 import org.apache.isis.applib.services.message.MessageService;
 import org.apache.isis.applib.services.repository.RepositoryService;
 import org.apache.isis.applib.services.user.UserService;
+import org.apache.isis.applib.value.Clob;
 
 import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationImport;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationImportService;
 
 @DomainService(menuOrder = "10")
 @DomainServiceLayout(
@@ -122,6 +130,83 @@ public Gmap3ToDoItem newToDo(
 
     //endregion
 
+    //region > importToDos (action), importStatus (action)
+
+    // the most recent import started (by anyone); demo only
+    private volatile LocationImport lastImport;
+
+    @Action(
+            semantics = SemanticsOf.NON_IDEMPOTENT
+    )
+    @MemberOrder(sequence = "45")
+    public void importToDos(
+            @Parameter(fileAccept = ".csv")
+            @ParameterLayout(named = "CSV file (description, address)")
+            final Clob csv) throws IOException {
+        // read from the uploaded chars as they are (rather than copied into a String), after this request has returned
+        lastImport = importToDosInBackground(CharSource.wrap(csv.getChars()).openStream());
+        messageService.informUser("Importing to-do items in the background; see Import Status for progress");
+    }
+
+    @Action(
+            semantics = SemanticsOf.SAFE
+    )
+    @MemberOrder(sequence = "46")
+    public void importStatus() {
+        final LocationImport locationImport = lastImport;
+        if(locationImport == null) {
+            messageService.informUser("No import has been started");
+            return;
+        }
+        final LocationImport.Statistics statistics = locationImport.getStatistics();
+        final String counts = String.format(
+                "%d to-do items (%d located, %d duplicates and %d without a description skipped)",
+                statistics.getPersistedCount(), statistics.getResolvedCount(),
+                statistics.getDuplicateCount(), statistics.getInvalidCount());
+        final Throwable failure = locationImport.getFailure();
+        if(failure != null) {
+            messageService.warnUser("Import failed after " + counts + ": " + failure);
+        } else if(locationImport.isDone()) {
+            messageService.informUser("Imported " + counts);
+        } else {
+            messageService.informUser("Importing; so far " + counts);
+        }
+    }
+
+    /**
+     * Unlike {@link #newToDo(String, String)}, geocodes the addresses in bulk and persists the items in chunked
+     * transactions, so is suitable for very large files.
+     */
+    @Programmatic
+    public LocationImport.Statistics importToDos(final Reader csv)
+            throws IOException, InterruptedException, ExecutionException {
+        return locationImportService.importCsv(csv, newToDoSink());
+    }
+
+    /**
+     * As {@link #importToDos(Reader)}, but returns at once, the import continuing in the background.
+     */
+    @Programmatic
+    public LocationImport importToDosInBackground(final Reader csv) {
+        return locationImportService.importCsvInBackground(csv, newToDoSink());
+    }
+
+    private LocationImport.Sink newToDoSink() {
+        final String ownedBy = currentUserName();
+        return row -> {
+            final Gmap3ToDoItem toDoItem = repositoryService.instantiate(Gmap3ToDoItem.class);
+            // (truncated to fit the column, rather than failing the chunk)
+            final String description = row.getDescription();
+            toDoItem.setDescription(description.length() > 100 ? description.substring(0, 100) : description);
+            toDoItem.setOwnedBy(ownedBy);
+            toDoItem.setLocation(row.getLocation());
+            // (flushed when the chunk's transaction commits)
+            repositoryService.persist(toDoItem);
+        };
+    }
+
+    //endregion
+
     //region > allToDos (action)
 
     @Action(
@@ -193,6 +278,9 @@ private String currentUserName() {
     @javax.inject.Inject
     MessageService messageService;
 
+    @javax.inject.Inject
+    LocationImportService locationImportService;
+
     @SuppressWarnings("unused")
     @javax.inject.Inject
     ClockService clockService;
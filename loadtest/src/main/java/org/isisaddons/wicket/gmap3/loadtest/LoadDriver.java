@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LatencyHistogram;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupService;
+
+/**
+ * Drives {@link LocationLookupService#lookup(String) lookups} from a number of concurrent callers, measuring the
+ * throughput and the latencies seen by those callers.
+ *
+ * <p>
+ *     Each lookup is of a new address (so, unless {@link #withRepeatRate(double) configured} otherwise, none is
+ *     answered from the cache), and is performed on the caller's thread (as it would be in a request of the Wicket
+ *     viewer).  The service should be initialized beforehand, typically to use a {@link StubGeocodingServer}.
+ * </p>
+ */
+public class LoadDriver {
+
+    private final LocationLookupService service;
+    private final AtomicLong addressCount = new AtomicLong();
+
+    private volatile double repeatRate;
+    private volatile int warmupRequests;
+
+    public LoadDriver(final LocationLookupService service) {
+        this.service = service;
+    }
+
+    /**
+     * The proportion (0 to 1) of lookups that are of an address already looked up (so likely answered by the cache).
+     */
+    public LoadDriver withRepeatRate(final double repeatRate) {
+        if(repeatRate < 0 || repeatRate > 1) {
+            throw new IllegalArgumentException("Not a rate: " + repeatRate);
+        }
+        this.repeatRate = repeatRate;
+        return this;
+    }
+
+    /**
+     * Lookups performed (at the same concurrency) before each run, but not measured; eg to fill the HTTP connection
+     * pool.
+     */
+    public LoadDriver withWarmup(final int warmupRequests) {
+        this.warmupRequests = warmupRequests;
+        return this;
+    }
+
+    /**
+     * The (unrecorded, so {@link RecordedResponses#geocode(String, String) relocated}) address used for the n'th lookup.
+     */
+    public static String address(final long n) {
+        return n + " Stub Street, Loadtown";
+    }
+
+    public List<LoadResult> run(final List<Integer> concurrencyLevels, final int requestsPerLevel)
+            throws InterruptedException {
+        final List<LoadResult> results = new ArrayList<>();
+        for (final Integer concurrency : concurrencyLevels) {
+            results.add(run(concurrency, requestsPerLevel));
+        }
+        return results;
+    }
+
+    public LoadResult run(final int concurrency, final int requests) throws InterruptedException {
+        if(concurrency < 1 || requests < 1) {
+            throw new IllegalArgumentException("concurrency and requests must be positive");
+        }
+        final ExecutorService callers = Executors.newFixedThreadPool(
+                concurrency,
+                new ThreadFactoryBuilder().setNameFormat("gmap3-load-%d").setDaemon(true).build());
+        try {
+            if(warmupRequests > 0) {
+                drive(callers, concurrency, warmupRequests, new LatencyHistogram(), new AtomicLong());
+            }
+
+            final long failedBefore = service.getMetrics().getLookups().getFailedCount();
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final AtomicLong resolved = new AtomicLong();
+
+            final long start = System.nanoTime();
+            drive(callers, concurrency, requests, latencies, resolved);
+            final long elapsedNanos = System.nanoTime() - start;
+
+            final long failed = service.getMetrics().getLookups().getFailedCount() - failedBefore;
+            return new LoadResult(
+                    concurrency, resolved.get(), requests - resolved.get() - failed, failed, elapsedNanos, latencies);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private void drive(
+            final ExecutorService callers,
+            final int concurrency,
+            final int requests,
+            final LatencyHistogram latencies,
+            final AtomicLong resolved) throws InterruptedException {
+        final AtomicLong remaining = new AtomicLong(requests);
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            callers.execute(() -> {
+                try {
+                    startGate.await();
+                    while(remaining.getAndDecrement() > 0) {
+                        final String address = nextAddress();
+                        final long start = System.nanoTime();
+                        final Location location = service.lookup(address);
+                        latencies.record(System.nanoTime() - start);
+                        if(location != null) {
+                            resolved.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        startGate.countDown();
+        done.await();
+    }
+
+    private String nextAddress() {
+        final long count = addressCount.get();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if(count > 0 && random.nextDouble() < repeatRate) {
+            return address(random.nextLong(count));
+        }
+        return address(addressCount.getAndIncrement());
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+import org.isisaddons.wicket.gmap3.cpt.service.LatencyHistogram;
+
+/**
+ * The outcome of one level of a {@link LoadDriver load test}.
+ */
+public class LoadResult {
+
+    private final int concurrency;
+    private final long requests;
+    private final long resolved;
+    private final long unresolved;
+    private final long failed;
+    private final long elapsedNanos;
+    private final long latencyP50Millis;
+    private final long latencyP90Millis;
+    private final long latencyP99Millis;
+    private final long latencyMaxMillis;
+
+    LoadResult(
+            final int concurrency,
+            final long resolved,
+            final long unresolved,
+            final long failed,
+            final long elapsedNanos,
+            final LatencyHistogram latencies) {
+        this.concurrency = concurrency;
+        this.requests = latencies.getCount();
+        this.resolved = resolved;
+        this.unresolved = unresolved;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+        this.latencyP50Millis = latencies.getPercentileMillis(50);
+        this.latencyP90Millis = latencies.getPercentileMillis(90);
+        this.latencyP99Millis = latencies.getPercentileMillis(99);
+        this.latencyMaxMillis = latencies.getMaxMillis();
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getResolved() {
+        return resolved;
+    }
+
+    public long getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     * As reported by the service's own metrics (a failed lookup being indistinguishable from an unresolved one to
+     * the caller).
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Lookups per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos > 0 ? requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+    }
+
+    /**
+     * As seen by the caller; percentiles are per the buckets of the {@link LatencyHistogram}.
+     */
+    public long getLatencyP50Millis() {
+        return latencyP50Millis;
+    }
+
+    public long getLatencyP90Millis() {
+        return latencyP90Millis;
+    }
+
+    public long getLatencyP99Millis() {
+        return latencyP99Millis;
+    }
+
+    public long getLatencyMaxMillis() {
+        return latencyMaxMillis;
+    }
+
+    /**
+     * Column headings, matching {@link #toString()}.
+     */
+    public static String header() {
+        return String.format("%11s %9s %9s %10s %7s %10s %8s %8s %8s %8s",
+                "concurrency", "requests", "resolved", "unresolved", "failed", "per second",
+                "p50 ms", "p90 ms", "p99 ms", "max ms");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%11d %9d %9d %10d %7d %10.1f %8d %8d %8d %8d",
+                concurrency, requests, resolved, unresolved, failed, getThroughput(),
+                latencyP50Millis, latencyP90Millis, latencyP99Millis, latencyMaxMillis);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Splitter;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Gmap3ApplibConstants;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupService;
+
+/**
+ * Measures the throughput and latencies of the {@link LocationLookupService} at increasing concurrency, against a
+ * {@link StubGeocodingServer} (so needs no network), printing a line per level.
+ *
+ * <p>
+ *     Configured by system properties:
+ * </p>
+ * <ul>
+ *     <li><tt>loadtest.levels</tt> - concurrency levels, default <tt>1,2,4,8,16,32</tt></li>
+ *     <li><tt>loadtest.requests</tt> - lookups per level, default <tt>1000</tt></li>
+ *     <li><tt>loadtest.warmup</tt> - unmeasured lookups before each level, default <tt>100</tt></li>
+ *     <li><tt>loadtest.repeatRate</tt> - proportion of lookups of an address already looked up, default <tt>0</tt></li>
+ *     <li><tt>loadtest.latency</tt> - of the stub, in millis, as <tt>min..max</tt>; default <tt>20..80</tt></li>
+ *     <li><tt>loadtest.errorRate</tt>, <tt>loadtest.overQueryLimitRate</tt>, <tt>loadtest.unresolvedRate</tt> - of
+ *     the stub; default <tt>0</tt></li>
+ * </ul>
+ * <p>
+ *     Any <tt>isis.viewer.wicket.gmap3.*</tt> system properties configure the service (as they would in
+ *     <tt>isis.properties</tt>); by default its rate limit is lifted, so as to measure the service rather than the
+ *     limit.
+ * </p>
+ */
+public class LoadTest {
+
+    private static final String PREFIX = "loadtest.";
+
+    public static void main(final String[] args) throws Exception {
+        final List<Integer> levels = new ArrayList<>();
+        for (final String level : Splitter.on(',').trimResults().omitEmptyStrings()
+                .split(System.getProperty(PREFIX + "levels", "1,2,4,8,16,32"))) {
+            levels.add(Integer.parseInt(level));
+        }
+        final int requests = Integer.getInteger(PREFIX + "requests", 1000);
+        final int warmup = Integer.getInteger(PREFIX + "warmup", 100);
+
+        final String latency = System.getProperty(PREFIX + "latency", "20..80");
+        final int dots = latency.indexOf("..");
+        final long minLatency = Long.parseLong(dots >= 0 ? latency.substring(0, dots) : latency);
+        final long maxLatency = dots >= 0 ? Long.parseLong(latency.substring(dots + 2)) : minLatency;
+
+        try (StubGeocodingServer stub = new StubGeocodingServer()
+                .withLatency(minLatency, maxLatency)
+                .withErrorRate(doubleProperty("errorRate"))
+                .withOverQueryLimitRate(doubleProperty("overQueryLimitRate"))
+                .withUnresolvedRate(doubleProperty("unresolvedRate"))
+                .start()) {
+
+            final LocationLookupService service = new LocationLookupService();
+            service.init(serviceProperties(stub));
+            try {
+                final LoadDriver driver = new LoadDriver(service)
+                        .withRepeatRate(doubleProperty("repeatRate"))
+                        .withWarmup(warmup);
+
+                System.out.println("stub latency " + minLatency + ".." + maxLatency + "ms, "
+                        + requests + " lookups per level");
+                System.out.println(LoadResult.header());
+                for (final Integer level : levels) {
+                    System.out.println(driver.run(level, requests));
+                }
+                System.out.println();
+                System.out.println(service.getMetrics());
+            } finally {
+                service.shutdown();
+            }
+        }
+    }
+
+    static Map<String, String> serviceProperties(final StubGeocodingServer stub) {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put(Gmap3ApplibConstants.LOOKUP_PROVIDERS, stub.getUrl(RecordedResponses.XML));
+        properties.put(Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_PER_SECOND, "1000000");
+        properties.put(Gmap3ApplibConstants.LOOKUP_RATE_LIMIT_BURST, "1000000");
+        properties.put(Gmap3ApplibConstants.LOOKUP_JMX_ENABLED, "false");
+        for (final String name : System.getProperties().stringPropertyNames()) {
+            if(name.startsWith("isis.viewer.wicket.gmap3.")) {
+                properties.put(name, System.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    private static double doubleProperty(final String name) {
+        return Double.parseDouble(System.getProperty(PREFIX + name, "0"));
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.io.ByteStreams;
+
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupCache;
+
+/**
+ * Geocoding responses recorded from (and in the formats of) Google's geocoding API, as served by the
+ * {@link StubGeocodingServer}.
+ *
+ * <p>
+ *     The addresses listed in <tt>recorded/index.properties</tt> are answered with their own recording.  Any other
+ *     address is answered with the <tt>relocated</tt> recording, at a location derived from (a hash of) the address;
+ *     so that a load test can look up any number of distinct addresses, each always resolving to the same place.
+ * </p>
+ */
+public class RecordedResponses {
+
+    public static final String XML = "xml";
+    public static final String JSON = "json";
+
+    private static final String RELOCATED = "relocated";
+    private static final String REVERSE = "reverse";
+    private static final String ZERO_RESULTS = "zero-results";
+    private static final String OVER_QUERY_LIMIT = "over-query-limit";
+
+    private final Properties index;
+    private final Map<String, String> recordings = new ConcurrentHashMap<>();
+
+    public RecordedResponses() {
+        index = new Properties();
+        try (InputStream in = open("index.properties")) {
+            index.load(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read index of recorded responses", e);
+        }
+    }
+
+    /**
+     * @param format - {@link #XML} or {@link #JSON}.
+     */
+    public String geocode(final String address, final String format) {
+        final String name = index.getProperty(LocationLookupCache.normalize(address));
+        if(name != null) {
+            return recording(name, format);
+        }
+        final int hash = LocationLookupCache.normalize(address).hashCode();
+        // spread over (most of) the inhabited latitudes, and all longitudes
+        final double latitude = -55.0 + 125.0 * ((hash >>> 16) / 65536.0);
+        final double longitude = -180.0 + 360.0 * ((hash & 0xFFFF) / 65536.0);
+        return substitute(recording(RELOCATED, format), address, latitude, longitude);
+    }
+
+    public String reverseGeocode(final double latitude, final double longitude, final String format) {
+        return substitute(recording(REVERSE, format), "Near " + latitude + "," + longitude, latitude, longitude);
+    }
+
+    public String zeroResults(final String format) {
+        return recording(ZERO_RESULTS, format);
+    }
+
+    public String overQueryLimit(final String format) {
+        return recording(OVER_QUERY_LIMIT, format);
+    }
+
+    private static String substitute(
+            final String recording, final String address, final double latitude, final double longitude) {
+        return recording
+                .replace("${address}", escape(address))
+                .replace("${lat}", coordinate(latitude))
+                .replace("${lng}", coordinate(longitude));
+    }
+
+    private static String coordinate(final double value) {
+        return BigDecimal.valueOf(value).setScale(7, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    // (sufficient for both xml and json, since addresses are generated rather than arbitrary text)
+    private static String escape(final String address) {
+        return address.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "'");
+    }
+
+    private String recording(final String name, final String format) {
+        return recordings.computeIfAbsent(name + "." + format, resource -> {
+            try (InputStream in = open(resource)) {
+                return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("No recorded response '" + resource + "'", e);
+            }
+        });
+    }
+
+    private static InputStream open(final String resource) throws IOException {
+        final InputStream in = RecordedResponses.class.getResourceAsStream("recorded/" + resource);
+        if(in == null) {
+            throw new IOException("Not found: recorded/" + resource);
+        }
+        return in;
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupCache;
+
+/**
+ * An HTTP server, on the loopback interface, that stands in for Google's geocoding API (both its <tt>xml</tt> and
+ * <tt>json</tt> modes), answering with {@link RecordedResponses recorded responses}; so that the
+ * <tt>LocationLookupService</tt> can be exercised (and measured) without a network.
+ *
+ * <p>
+ *     Its latency and the proportion of requests that fail (with an HTTP <tt>500</tt>), that are refused
+ *     (<tt>OVER_QUERY_LIMIT</tt>) or that do not resolve (<tt>ZERO_RESULTS</tt>) are configurable, also while
+ *     running.  Whether an address resolves depends only on the address, so is the same each time it is looked up.
+ * </p>
+ */
+public class StubGeocodingServer implements AutoCloseable {
+
+    public static final String PATH = "/maps/api/geocode/";
+
+    private final RecordedResponses responses;
+
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile double overQueryLimitRate;
+    private volatile double unresolvedRate;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public StubGeocodingServer() {
+        this(new RecordedResponses());
+    }
+
+    public StubGeocodingServer(final RecordedResponses responses) {
+        this.responses = responses;
+    }
+
+    //region > configuration
+
+    /**
+     * Each response is delayed by between these (uniformly distributed).
+     */
+    public StubGeocodingServer withLatency(final long minMillis, final long maxMillis) {
+        if(minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("Invalid latency range: " + minMillis + ".." + maxMillis);
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * The proportion (0 to 1) of requests answered with an HTTP <tt>500</tt> (and no body).
+     */
+    public StubGeocodingServer withErrorRate(final double errorRate) {
+        this.errorRate = rate(errorRate);
+        return this;
+    }
+
+    /**
+     * The proportion (0 to 1) of requests refused as <tt>OVER_QUERY_LIMIT</tt>.
+     */
+    public StubGeocodingServer withOverQueryLimitRate(final double overQueryLimitRate) {
+        this.overQueryLimitRate = rate(overQueryLimitRate);
+        return this;
+    }
+
+    /**
+     * The proportion (0 to 1) of (unrecorded) addresses that do not resolve (<tt>ZERO_RESULTS</tt>).
+     */
+    public StubGeocodingServer withUnresolvedRate(final double unresolvedRate) {
+        this.unresolvedRate = rate(unresolvedRate);
+        return this;
+    }
+
+    private static double rate(final double rate) {
+        if(rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Not a rate: " + rate);
+        }
+        return rate;
+    }
+
+    //endregion
+
+    //region > start, close
+
+    /**
+     * Starts listening, on an ephemeral port of the loopback interface.
+     */
+    public synchronized StubGeocodingServer start() throws IOException {
+        if(server != null) {
+            return this;
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, this::handle);
+        // unbounded, so that the (simulated) latency does not limit concurrency
+        executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("gmap3-stub-geocoder-%d").setDaemon(true).build());
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    /**
+     * @param format - {@link RecordedResponses#XML} (as used by the <tt>GoogleGeocoder</tt>) or
+     *                 {@link RecordedResponses#JSON}.
+     */
+    public synchronized String getUrl(final String format) {
+        if(server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH + format;
+    }
+
+    //endregion
+
+    //region > handle
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            final String format = exchange.getRequestURI().getPath().substring(PATH.length());
+            if(!RecordedResponses.XML.equals(format) && !RecordedResponses.JSON.equals(format)) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            delay();
+
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if(random.nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if(random.nextDouble() < overQueryLimitRate) {
+                errorCount.incrementAndGet();
+                respond(exchange, format, responses.overQueryLimit(format));
+                return;
+            }
+
+            final String address = parameter(exchange, "address");
+            final String latlng = parameter(exchange, "latlng");
+            if(address != null) {
+                respond(exchange, format, resolves(address)
+                        ? responses.geocode(address, format)
+                        : responses.zeroResults(format));
+            } else if(latlng != null && latlng.indexOf(',') > 0) {
+                final int comma = latlng.indexOf(',');
+                respond(exchange, format, responses.reverseGeocode(
+                        Double.parseDouble(latlng.substring(0, comma)),
+                        Double.parseDouble(latlng.substring(comma + 1)),
+                        format));
+            } else {
+                exchange.sendResponseHeaders(400, -1);
+            }
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        final long min = minLatencyMillis;
+        final long max = maxLatencyMillis;
+        final long millis = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if(millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean resolves(final String address) {
+        // by address, so that looking an address up again gives the same answer
+        final int hash = LocationLookupCache.normalize(address).hashCode() * 0x9E3779B1;
+        return ((hash >>> 8) & 0xFFFF) >= unresolvedRate * 0x10000;
+    }
+
+    private static void respond(final HttpExchange exchange, final String format, final String body)
+            throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(
+                "Content-Type", (RecordedResponses.XML.equals(format) ? "application/xml" : "application/json")
+                        + "; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String parameter(final HttpExchange exchange, final String name)
+            throws UnsupportedEncodingException {
+        final String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) {
+            return null;
+        }
+        for (final String pair : query.split("&")) {
+            final int equals = pair.indexOf('=');
+            if(equals > 0 && pair.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    //endregion
+
+    //region > counts
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Requests failed or refused (by design).
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    //endregion
+
+}
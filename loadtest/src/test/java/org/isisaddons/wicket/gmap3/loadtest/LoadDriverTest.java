@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2013~2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.wicket.gmap3.loadtest;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.isisaddons.wicket.gmap3.cpt.applib.Location;
+import org.isisaddons.wicket.gmap3.cpt.service.LocationLookupService;
+
+public class LoadDriverTest {
+
+    private StubGeocodingServer stub;
+    private LocationLookupService service;
+
+    @Before
+    public void setUp() throws IOException {
+        stub = new StubGeocodingServer().withLatency(2, 5).start();
+        service = new LocationLookupService();
+        service.init(LoadTest.serviceProperties(stub));
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+        stub.close();
+    }
+
+    @Test
+    public void resolvesRecordedAddress() throws Exception {
+        final Location location = service.lookup("10 Downing Street, London, UK");
+        assertEquals(51.503, location.getLatitude(), 0.01);
+        assertEquals(-0.128, location.getLongitude(), 0.01);
+    }
+
+    @Test
+    public void resolvesAnyOtherAddressConsistently() throws Exception {
+        final Location location = service.lookup(LoadDriver.address(42));
+        assertThat(new RecordedResponses().geocode(LoadDriver.address(42), RecordedResponses.XML),
+                containsString("<lat>" + location.getLatitude()));
+        assertThat(service.lookup("$%$%^Y%^fgnsdlfk glfg"), is((Location) null));
+    }
+
+    @Test
+    public void servesJson() throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+                stub.getUrl(RecordedResponses.JSON) + "?address=10+Downing+Street&sensor=false").openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            final String body = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+            assertThat(body, containsString("\"lat\" : 51.503364"));
+        }
+    }
+
+    @Test
+    public void measuresEachLevel() throws Exception {
+        final List<LoadResult> results = new LoadDriver(service).withWarmup(5).run(Arrays.asList(1, 4), 40);
+
+        assertThat(results.get(0).getConcurrency(), is(1));
+        assertThat(results.get(1).getConcurrency(), is(4));
+        for (final LoadResult result : results) {
+            assertThat(result.getRequests(), is(40L));
+            assertThat(result.getResolved(), is(40L));
+            assertThat(result.getLatencyP50Millis() >= 2, is(true));
+            assertThat(result.getThroughput() > 0, is(true));
+        }
+        // every lookup was of a new address
+        assertThat(stub.getRequestCount(), is(90L));
+    }
+
+    @Test
+    public void distinguishesUnresolvedFromFailed() throws Exception {
+        // (the one driver, so that the addresses looked up the second time are not already cached)
+        final LoadDriver driver = new LoadDriver(service);
+
+        stub.withUnresolvedRate(1.0);
+        final LoadResult unresolved = driver.run(2, 20);
+        assertThat(unresolved.getUnresolved(), is(20L));
+        assertThat(unresolved.getFailed(), is(0L));
+
+        stub.withErrorRate(1.0);
+        final LoadResult failed = driver.run(2, 20);
+        assertThat(failed.getResolved(), is(0L));
+        assertThat(failed.getFailed(), is(20L));
+    }
+
+}